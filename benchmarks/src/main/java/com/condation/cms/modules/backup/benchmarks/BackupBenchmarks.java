@@ -0,0 +1,50 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of {@code benchmarks.jar}. Takes the usual JMH arguments and
+ * always adds the GC profiler, so every result has the allocation rate
+ * ({@code gc.alloc.rate.norm}) next to the MB/s.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PackerBenchmark -p shape=MIXED
+ * </pre>
+ *
+ * @author thmar
+ */
+public class BackupBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		var options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
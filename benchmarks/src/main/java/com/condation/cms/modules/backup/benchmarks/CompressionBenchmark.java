@@ -0,0 +1,127 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.modules.backup.CompressionCodec;
+import com.condation.cms.modules.backup.PackerOptions;
+import com.condation.cms.modules.backup.SourceScanner;
+import com.condation.cms.modules.backup.TarGzPacker;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Speed against ratio of the codecs and levels on the tar of a mixed site.
+ * The ratio is printed after each trial.
+ *
+ * @author thmar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompressionBenchmark {
+
+	@Param({"gzip:1", "gzip:6", "gzip:9", "zstd:1", "zstd:3", "zstd:9", "zstd:19", "lz4:1", "lz4:9", "xz:1", "xz:6"})
+	public String codecLevel;
+
+	private byte[] tar;
+	private PackerOptions options;
+	private long compressedSize;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Path home = Files.createTempDirectory("backup-benchmark");
+		try {
+			Path sources = SiteTreeGenerator.generate(home, SiteTreeGenerator.Shape.MIXED);
+			// the plain tar as input, level 0 gzip only adds the stored blocks
+			var tarOptions = PackerOptions.defaults();
+			tarOptions.setCompressionLevel(0);
+			ByteArrayOutputStream archive = new ByteArrayOutputStream();
+			TarGzPacker.pack(SourceScanner.scan(home, List.of(sources)), Map.of(), archive, tarOptions);
+			try (var in = CompressionCodec.GZIP.decompress(new ByteArrayInputStream(archive.toByteArray()))) {
+				tar = in.readAllBytes();
+			}
+		} finally {
+			SiteTreeGenerator.delete(home);
+		}
+
+		String[] parts = codecLevel.split(":");
+		options = PackerOptions.defaults();
+		options.setCodec(CompressionCodec.of(parts[0]));
+		options.setCompressionLevel(options.getCodec().level(Integer.valueOf(parts[1])));
+	}
+
+	@TearDown(Level.Trial)
+	public void printRatio() {
+		System.out.printf("%n%s: %d -> %d bytes, ratio %.3f%n", codecLevel, tar.length, compressedSize,
+				(double) compressedSize / tar.length);
+	}
+
+	@Benchmark
+	public long compress(Throughput throughput) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream();
+		try (OutputStream out = options.getCodec().compress(counter, options)) {
+			out.write(tar);
+		}
+		compressedSize = counter.count;
+		throughput.add(tar.length);
+		return counter.count;
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
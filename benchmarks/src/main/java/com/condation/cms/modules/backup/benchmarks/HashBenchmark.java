@@ -0,0 +1,141 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.modules.backup.BackupUtil;
+import com.condation.cms.modules.backup.HashAlgorithm;
+import com.condation.cms.modules.backup.HashEngine;
+import com.condation.cms.modules.backup.SourceEntry;
+import com.condation.cms.modules.backup.SourceFingerprint;
+import com.condation.cms.modules.backup.SourceScanner;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing throughput of single files, of the source fingerprint and of the
+ * hex conversion.
+ *
+ * @author thmar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HashBenchmark {
+
+	@Param({"4096", "1048576", "268435456"})
+	public int fileSize;
+
+	private Path home;
+	private Path file;
+	private List<SourceEntry> entries;
+	private long entriesSize;
+	private byte[] digest;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		home = Files.createTempDirectory("backup-benchmark");
+		file = home.resolve("file.bin");
+		Random random = new Random(fileSize);
+		byte[] buffer = new byte[64 * 1024];
+		try (OutputStream out = Files.newOutputStream(file)) {
+			for (int written = 0; written < fileSize; written += buffer.length) {
+				random.nextBytes(buffer);
+				out.write(buffer, 0, Math.min(buffer.length, fileSize - written));
+			}
+		}
+		Path sources = SiteTreeGenerator.generate(home, SiteTreeGenerator.Shape.SMALL_FILES);
+		entries = SourceScanner.scan(home, List.of(sources));
+		entriesSize = entries.stream().mapToLong(SourceEntry::size).sum();
+
+		digest = new byte[32];
+		random.nextBytes(digest);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SiteTreeGenerator.delete(home);
+	}
+
+	@Benchmark
+	public String sha256File(Throughput throughput) throws IOException, NoSuchAlgorithmException {
+		String hash = BackupUtil.calculateSHA256(file);
+		throughput.add(fileSize);
+		return hash;
+	}
+
+	@Benchmark
+	public byte[] sha256TreeFile(Throughput throughput) throws IOException {
+		byte[] hash = HashEngine.of(HashAlgorithm.SHA256, true).hash(file);
+		throughput.add(fileSize);
+		return hash;
+	}
+
+	@Benchmark
+	public byte[] xxhashFile(Throughput throughput) throws IOException {
+		byte[] hash = HashEngine.of(HashAlgorithm.XXHASH64, false).hash(file);
+		throughput.add(fileSize);
+		return hash;
+	}
+
+	/**
+	 * metadata only, independent of the file size parameter
+	 */
+	@Benchmark
+	public SourceFingerprint fingerprint() throws IOException {
+		return SourceFingerprint.compute(entries, false);
+	}
+
+	@Benchmark
+	public SourceFingerprint fingerprintContent(Throughput throughput) throws IOException {
+		var fingerprint = SourceFingerprint.compute(entries, true);
+		throughput.add(entriesSize);
+		return fingerprint;
+	}
+
+	@Benchmark
+	public String bytesToHex() {
+		return BackupUtil.bytesToHex(digest);
+	}
+}
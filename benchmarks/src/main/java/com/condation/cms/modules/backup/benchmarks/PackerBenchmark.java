@@ -0,0 +1,116 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.modules.backup.CompressionCodec;
+import com.condation.cms.modules.backup.PackerOptions;
+import com.condation.cms.modules.backup.SourceEntry;
+import com.condation.cms.modules.backup.SourceScanner;
+import com.condation.cms.modules.backup.TarGzPacker;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Archive throughput of the whole packer: scan, read, tar, compress and
+ * hash. The archive is discarded, so the disk only has to deliver the
+ * sources (which are in the page cache after the warmup).
+ *
+ * @author thmar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PackerBenchmark {
+
+	@Param({"SMALL_FILES", "LARGE_MEDIA", "DEEP_TREE", "MIXED"})
+	public SiteTreeGenerator.Shape shape;
+
+	@Param({"gzip"})
+	public String codec;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	/**
+	 * 0 reads every file on the writer thread
+	 */
+	@Param({"0", "8"})
+	public int prefetchThreads;
+
+	private Path home;
+	private Path sources;
+	private List<SourceEntry> entries;
+	private long size;
+	private PackerOptions options;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		home = Files.createTempDirectory("backup-benchmark");
+		sources = SiteTreeGenerator.generate(home, shape);
+		entries = SourceScanner.scan(home, List.of(sources));
+		size = entries.stream().mapToLong(SourceEntry::size).sum();
+
+		options = PackerOptions.defaults();
+		options.setCodec(CompressionCodec.of(codec));
+		options.setCompressionThreads(threads);
+		options.setPrefetchThreads(prefetchThreads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SiteTreeGenerator.delete(home);
+	}
+
+	@Benchmark
+	public TarGzPacker.Result pack(Throughput throughput) throws IOException {
+		var result = TarGzPacker.pack(entries, Map.of(), OutputStream.nullOutputStream(), options);
+		throughput.add(size);
+		return result;
+	}
+
+	@Benchmark
+	public List<SourceEntry> scan() throws IOException {
+		return SourceScanner.scan(home, List.of(sources));
+	}
+}
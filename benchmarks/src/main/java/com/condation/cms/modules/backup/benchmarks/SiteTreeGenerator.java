@@ -0,0 +1,176 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Creates synthetic server homes that look like real CMS installations. The
+ * content only depends on the shape, so every run packs the same bytes.
+ *
+ * @author thmar
+ */
+public class SiteTreeGenerator {
+
+	public enum Shape {
+		/**
+		 * one site with 5000 markdown files of 1 - 4 KB
+		 */
+		SMALL_FILES,
+		/**
+		 * one site with a few pages and four 32 MB media files
+		 */
+		LARGE_MEDIA,
+		/**
+		 * folders nested 24 levels deep, a few small files in each
+		 */
+		DEEP_TREE,
+		/**
+		 * three sites with pages, templates, some media and a search index
+		 */
+		MIXED
+	}
+
+	private static final String[] WORDS = {
+		"backup", "content", "page", "site", "template", "the", "and", "with",
+		"condation", "cms", "module", "markdown", "image", "section", "title",
+		"navigation", "archive", "server", "release", "configuration", "of", "a"
+	};
+
+	private final Random random;
+
+	private SiteTreeGenerator(Shape shape) {
+		this.random = new Random(shape.ordinal() + 1);
+	}
+
+	/**
+	 * @param home empty server home, {@code hosts/} is created below it
+	 * @return the folders to back up
+	 */
+	public static Path generate(Path home, Shape shape) throws IOException {
+		var generator = new SiteTreeGenerator(shape);
+		Path hosts = Files.createDirectories(home.resolve("hosts"));
+		switch (shape) {
+			case SMALL_FILES -> generator.pages(generator.site(hosts, "small"), 50, 100);
+			case LARGE_MEDIA -> {
+				Path site = generator.site(hosts, "media");
+				generator.pages(site, 2, 10);
+				generator.media(site, 4, 32 * 1024 * 1024);
+			}
+			case DEEP_TREE -> generator.deep(generator.site(hosts, "deep").resolve("content"), 24);
+			case MIXED -> {
+				for (String name : new String[]{"demo", "shop", "blog"}) {
+					Path site = generator.site(hosts, name);
+					generator.pages(site, 20, 40);
+					generator.templates(site, 30);
+					generator.media(site, 3, 4 * 1024 * 1024);
+					// excluded by the SourceScanner
+					generator.media(Files.createDirectories(site.resolve("data")), 2, 1024 * 1024);
+				}
+			}
+		}
+		return hosts;
+	}
+
+	public static long size(Path root) throws IOException {
+		try (Stream<Path> files = Files.walk(root)) {
+			return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		}
+	}
+
+	public static void delete(Path root) throws IOException {
+		if (!Files.exists(root)) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(root)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private Path site(Path hosts, String name) throws IOException {
+		Path site = Files.createDirectories(hosts.resolve(name));
+		Files.writeString(site.resolve("site.yaml"), "id: %s\nhostname: %s.example.com\n".formatted(name, name));
+		return site;
+	}
+
+	private void pages(Path site, int folders, int filesPerFolder) throws IOException {
+		for (int folder = 0; folder < folders; folder++) {
+			Path dir = Files.createDirectories(site.resolve("content/section-%03d".formatted(folder)));
+			for (int file = 0; file < filesPerFolder; file++) {
+				Files.writeString(dir.resolve("page-%03d.md".formatted(file)), markdown(1024 + random.nextInt(3 * 1024)));
+			}
+		}
+	}
+
+	private void templates(Path site, int count) throws IOException {
+		Path dir = Files.createDirectories(site.resolve("templates"));
+		for (int i = 0; i < count; i++) {
+			Files.writeString(dir.resolve("template-%02d.html".formatted(i)),
+					"<html><body><h1>${title}</h1>\n" + markdown(2048) + "\n</body></html>\n");
+		}
+	}
+
+	private void media(Path site, int count, int size) throws IOException {
+		Path dir = Files.createDirectories(site.resolve("assets/media"));
+		byte[] buffer = new byte[64 * 1024];
+		for (int i = 0; i < count; i++) {
+			try (OutputStream out = Files.newOutputStream(dir.resolve("media-%02d.jpg".formatted(i)))) {
+				for (int written = 0; written < size; written += buffer.length) {
+					random.nextBytes(buffer);
+					out.write(buffer, 0, Math.min(buffer.length, size - written));
+				}
+			}
+		}
+	}
+
+	private void deep(Path dir, int depth) throws IOException {
+		Path current = dir;
+		for (int level = 0; level < depth; level++) {
+			Files.createDirectories(current);
+			for (int i = 0; i < 5; i++) {
+				Files.writeString(current.resolve("page-%d.md".formatted(i)), markdown(512 + random.nextInt(2048)));
+			}
+			Path sibling = Files.createDirectories(current.resolve("assets-" + level));
+			Files.writeString(sibling.resolve("index.md"), markdown(256));
+			current = current.resolve("level-" + level);
+		}
+	}
+
+	private String markdown(int length) {
+		StringBuilder text = new StringBuilder(length + 16);
+		text.append("---\ntitle: ").append(WORDS[random.nextInt(WORDS.length)]).append("\n---\n\n# ");
+		while (text.length() < length) {
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+			text.append(random.nextInt(12) == 0 ? ".\n\n" : " ");
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,149 @@
+package com.condation.cms.modules.backup.benchmarks;
+
+/*-
+ * #%L
+ * backup-server-module-benchmarks
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.modules.backup.S3MultipartOutputStream;
+import com.condation.cms.modules.backup.S3MultipartUpload;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+/**
+ * Overhead of the streaming multipart upload: part buffers, worker pool and
+ * request bodies against a client that discards the data. Shows the upper
+ * bound the upload path adds on top of the network.
+ *
+ * @author thmar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UploadBenchmark {
+
+	private static final int ARCHIVE_SIZE = 256 * 1024 * 1024;
+	private static final int WRITE_SIZE = 64 * 1024;
+
+	@Param({"5242880", "16777216"})
+	public long partSize;
+
+	@Param({"1", "4"})
+	public int concurrency;
+
+	private S3MultipartUpload upload;
+	private byte[] block;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		upload = new S3MultipartUpload(new DiscardingS3Client(), "backups", partSize, concurrency, 0);
+		block = new byte[WRITE_SIZE];
+		new Random(1).nextBytes(block);
+	}
+
+	@Benchmark
+	public long stream(Throughput throughput) throws IOException {
+		try (S3MultipartOutputStream out = upload.openStream("benchmark.tar.gz")) {
+			for (int written = 0; written < ARCHIVE_SIZE; written += WRITE_SIZE) {
+				out.write(block);
+			}
+			throughput.add(ARCHIVE_SIZE);
+			return out.getSize();
+		}
+	}
+
+	private static class DiscardingS3Client implements S3Client {
+
+		@Override
+		public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+			return CreateMultipartUploadResponse.builder().uploadId("benchmark").build();
+		}
+
+		@Override
+		public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+			drain(body);
+			return UploadPartResponse.builder().eTag("part-" + request.partNumber()).build();
+		}
+
+		@Override
+		public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+			return CompleteMultipartUploadResponse.builder().build();
+		}
+
+		@Override
+		public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+			return AbortMultipartUploadResponse.builder().build();
+		}
+
+		@Override
+		public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+			drain(body);
+			return PutObjectResponse.builder().build();
+		}
+
+		@Override
+		public String serviceName() {
+			return "s3";
+		}
+
+		@Override
+		public void close() {
+		}
+
+		private static void drain(RequestBody body) {
+			try (InputStream in = body.contentStreamProvider().newStream()) {
+				in.transferTo(OutputStream.nullOutputStream());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
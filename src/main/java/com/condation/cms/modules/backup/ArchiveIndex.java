@@ -0,0 +1,257 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Archives of a backup in the target folder, kept in {@code <name>.index}
+ * so retention does not have to list the folder:
+ *
+ * <pre>
+ * # type=index
+ * 2026-01-01T02:00	FULL	1048576	sites-20260101-020000.tar.gz
+ * </pre>
+ *
+ * Paths are relative to the target folder. A missing index is built once
+ * from the folder.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class ArchiveIndex {
+
+	private static final String EXTENSION = ".index";
+	private static final String HEADER = "# type=index";
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+	/**
+	 * one thread for all backups, deleting is not urgent
+	 */
+	private static final ExecutorService PRUNE_EXECUTOR = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("backup-retention").setDaemon(true).build());
+
+	private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path targetPath;
+	private final String name;
+	private final Path file;
+
+	/**
+	 * @param created start of the run
+	 * @param file path relative to the target folder
+	 */
+	public record Entry(LocalDateTime created, BackupMode mode, long size, String file) {
+	}
+
+	public ArchiveIndex(Path targetPath, String name) {
+		this.targetPath = targetPath;
+		this.name = name;
+		this.file = targetPath.resolve(name + EXTENSION);
+	}
+
+	/**
+	 * @param timestamp of the run, {@code yyyyMMdd-HHmmss}
+	 */
+	public void add(String timestamp, BackupMode mode, Path archive) throws IOException {
+		var entry = new Entry(LocalDateTime.parse(timestamp, TIMESTAMP), mode, ArchiveVolumes.archiveSize(archive),
+				targetPath.relativize(archive).toString());
+		synchronized (lock()) {
+			if (!Files.exists(file)) {
+				// the archive is already in the folder
+				write(scan());
+				return;
+			}
+			try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+				writer.write(format(entry));
+				writer.newLine();
+			}
+		}
+	}
+
+	public List<Entry> entries() throws IOException {
+		synchronized (lock()) {
+			return read();
+		}
+	}
+
+	/**
+	 * Deletes the archives the policy does not keep, on the retention
+	 * thread.
+	 *
+	 * @param busy archives that must not be deleted, like running uploads
+	 */
+	public void pruneAsync(RetentionPolicy policy, Set<String> busy) {
+		PRUNE_EXECUTOR.execute(() -> {
+			try {
+				prune(policy, busy);
+			} catch (IOException | RuntimeException e) {
+				log.error("error pruning archives of {}", name, e);
+			}
+		});
+	}
+
+	/**
+	 * @return the deleted archives
+	 */
+	public List<Entry> prune(RetentionPolicy policy, Set<String> busy) throws IOException {
+		var deleted = delete(policy, busy);
+		// outside the index lock, the garbage collection waits for running snapshots
+		Path repository = targetPath.resolve(ChunkRepository.DEFAULT_DIRECTORY);
+		if (deleted.stream().anyMatch(entry -> targetPath.resolve(entry.file()).startsWith(repository))) {
+			ChunkRepository.open(repository).collectGarbage();
+		}
+		return deleted;
+	}
+
+	private List<Entry> delete(RetentionPolicy policy, Set<String> busy) throws IOException {
+		synchronized (lock()) {
+			var entries = read();
+			var keep = policy.select(entries);
+			List<Entry> remaining = new ArrayList<>();
+			List<Entry> deleted = new ArrayList<>();
+			for (Entry entry : entries) {
+				if (keep.contains(entry) || busy.contains(targetPath.resolve(entry.file()).toString())) {
+					remaining.add(entry);
+					continue;
+				}
+				Path archive = targetPath.resolve(entry.file());
+				SeekableIndex.delete(archive);
+				if (ArchiveVolumes.isDescriptor(archive)) {
+					ArchiveVolumes.delete(archive);
+				} else {
+					Files.deleteIfExists(archive);
+				}
+				deleted.add(entry);
+			}
+			if (!deleted.isEmpty()) {
+				write(remaining);
+				log.info("retention of {} deleted {} archives, {} left", name, deleted.size(), remaining.size());
+			}
+			return deleted;
+		}
+	}
+
+	/**
+	 * one lock per index file for the job and the retention thread
+	 */
+	private Object lock() {
+		return LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new Object());
+	}
+
+	private List<Entry> read() throws IOException {
+		if (!Files.exists(file)) {
+			return scan();
+		}
+		List<Entry> entries = new ArrayList<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			if (line.isBlank() || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\t", 4);
+			if (parts.length != 4) {
+				log.warn("invalid line in {}: {}", file, line);
+				continue;
+			}
+			entries.add(new Entry(LocalDateTime.parse(parts[0]), BackupMode.valueOf(parts[1]), Long.parseLong(parts[2]), parts[3]));
+		}
+		return entries;
+	}
+
+	private void write(List<Entry> entries) throws IOException {
+		Path temp = Files.createTempFile(targetPath, file.getFileName().toString(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Entry entry : entries) {
+				writer.write(format(entry));
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Archives and snapshots of the backup, only used to create a missing
+	 * index.
+	 */
+	private List<Entry> scan() throws IOException {
+		Pattern pattern = Pattern.compile(Pattern.quote(name) + "-(\\d{8}-\\d{6})(?:-(full|incr|diff))?\\.[^/]+");
+		// volumes are listed by their descriptor, sidecars belong to their archive
+		Pattern ignored = Pattern.compile(".*(\\.part\\d{3,}|\\" + SeekableIndex.EXTENSION + ")");
+		List<Path> folders = List.of(targetPath,
+				targetPath.resolve(ChunkRepository.DEFAULT_DIRECTORY).resolve("snapshots"));
+		List<Entry> entries = new ArrayList<>();
+		for (Path folder : folders) {
+			if (!Files.isDirectory(folder)) {
+				continue;
+			}
+			try (Stream<Path> files = Files.list(folder)) {
+				for (Path archive : files.filter(Files::isRegularFile).toList()) {
+					Matcher matcher = pattern.matcher(archive.getFileName().toString());
+					if (!matcher.matches() || archive.getFileName().toString().endsWith(".tmp")
+							|| ignored.matcher(archive.getFileName().toString()).matches()) {
+						continue;
+					}
+					try {
+						entries.add(new Entry(
+								LocalDateTime.parse(matcher.group(1), TIMESTAMP),
+								matcher.group(2) != null ? BackupMode.of(matcher.group(2)) : BackupMode.FULL,
+								ArchiveVolumes.archiveSize(archive),
+								targetPath.relativize(archive).toString()));
+					} catch (DateTimeParseException e) {
+						log.debug("no archive: {}", archive);
+					}
+				}
+			}
+		}
+		entries.sort((a, b) -> a.created().compareTo(b.created()));
+		log.debug("created index of {} with {} archives", name, entries.size());
+		return entries;
+	}
+
+	private static String format(Entry entry) {
+		return "%s\t%s\t%d\t%s".formatted(entry.created(), entry.mode().name(), entry.size(), entry.file());
+	}
+}
@@ -0,0 +1,412 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Extracts archives of the {@link TarGzPacker}, all entries or only the
+ * selected paths. The archive is decompressed on the calling thread while
+ * the files are written on a worker pool; files bigger than a quarter of
+ * the write buffer are written by the calling thread.
+ * <p>
+ * Every restored file is hashed while it is written and compared with
+ * {@link TarGzPacker#CHECKSUMS_ENTRY} at the end of the archive, archives
+ * without checksums are only compared with the archive SHA-256 if it is
+ * known.
+ * <p>
+ * Selected paths of a seekable archive are read through its
+ * {@link SeekableIndex}, only the frames of the selected entries are
+ * decompressed.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class ArchiveRestorer {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final String META_PREFIX = ".backup/";
+
+	/**
+	 * @param files restored files
+	 * @param bytes restored bytes
+	 * @param verified files compared with a checksum
+	 * @param mismatches files whose checksum does not match
+	 */
+	public record Result(int files, long bytes, int verified, List<String> mismatches) {
+
+		public boolean isValid() {
+			return mismatches.isEmpty();
+		}
+	}
+
+	/**
+	 * @param archive archive file or {@code .volumes} descriptor of a split
+	 * archive
+	 * @param target folder the entries are restored into
+	 * @throws IOException if the archive can not be read or its SHA-256 does
+	 * not match
+	 */
+	public static Result restore(Path archive, Path target, RestoreOptions options) throws IOException {
+		if (!options.getPaths().isEmpty()) {
+			var index = SeekableIndex.find(archive);
+			if (index.isPresent()) {
+				return restore(archive, target, options, index.get());
+			}
+		}
+		String archiveName = archive.getFileName().toString();
+		String expectedSha256 = options.getArchiveSha256();
+		InputStream raw;
+		if (ArchiveVolumes.isDescriptor(archive)) {
+			var volumes = ArchiveVolumes.load(archive);
+			archiveName = volumes.archive();
+			if (expectedSha256 == null) {
+				expectedSha256 = volumes.sha256();
+			}
+			raw = ArchiveVolumes.open(archive);
+		} else {
+			raw = Files.newInputStream(archive);
+		}
+		final String name = archiveName;
+		var codec = CompressionCodec.forFileName(archiveName)
+				.orElseThrow(() -> new IOException("unknown archive format: " + name));
+
+		MessageDigest archiveDigest = expectedSha256 != null ? newDigest() : null;
+		Path root = target.toAbsolutePath().normalize();
+		Files.createDirectories(root);
+
+		// the digest below the buffer, decompressors reset the buffer after reading ahead
+		try (InputStream in = new BufferedInputStream(archiveDigest != null ? new DigestInputStream(raw, archiveDigest) : raw, BUFFER_SIZE);
+				Extraction extraction = new Extraction(root, options)) {
+			TarArchiveInputStream tar = new TarArchiveInputStream(codec.decompress(in));
+			Map<String, String> checksums = Map.of();
+			TarArchiveEntry entry;
+			while ((entry = tar.getNextEntry()) != null) {
+				if (TarGzPacker.CHECKSUMS_ENTRY.equals(entry.getName())) {
+					checksums = parseChecksums(tar.readAllBytes());
+				} else if (!entry.getName().startsWith(META_PREFIX) && extraction.selected(entry.getName())) {
+					extraction.extract(entry, tar);
+				}
+			}
+			if (archiveDigest != null) {
+				// the compressed stream may end after the tar, hash up to the end of the file
+				in.transferTo(OutputStream.nullOutputStream());
+			}
+			var result = extraction.finish(options.isVerify() ? checksums : Map.of());
+			warnUnverified(result, archiveName, options, checksums);
+			if (archiveDigest != null) {
+				String actual = BackupUtil.bytesToHex(archiveDigest.digest());
+				if (!actual.equals(expectedSha256)) {
+					throw new IOException("sha256 of %s is %s, expected %s".formatted(archiveName, actual, expectedSha256));
+				}
+			}
+			log(result, archiveName, root);
+			return result;
+		}
+	}
+
+	/**
+	 * Restores the selected entries of a seekable archive, only the frames
+	 * of the entries are decompressed. The archive SHA-256 is not checked,
+	 * the archive is not read as a whole.
+	 */
+	private static Result restore(Path archive, Path target, RestoreOptions options, SeekableIndex index) throws IOException {
+		Path root = target.toAbsolutePath().normalize();
+		Files.createDirectories(root);
+		try (Extraction extraction = new Extraction(root, options)) {
+			Map<String, String> checksums = Map.of();
+			for (var entry : index.entries()) {
+				if (TarGzPacker.CHECKSUMS_ENTRY.equals(entry.name())) {
+					if (options.isVerify()) {
+						checksums = parseChecksums(index.read(archive, entry));
+					}
+				} else if (!entry.name().startsWith(META_PREFIX) && extraction.selected(entry.name())) {
+					try (TarArchiveInputStream tar = index.open(archive, entry)) {
+						TarArchiveEntry tarEntry = tar.getNextEntry();
+						if (tarEntry == null || !tarEntry.getName().equals(entry.name())) {
+							throw new IOException("%s not found at its offset, the index does not match the archive".formatted(entry.name()));
+						}
+						extraction.extract(tarEntry, tar);
+					}
+				}
+			}
+			var result = extraction.finish(options.isVerify() ? checksums : Map.of());
+			warnUnverified(result, archive.getFileName().toString(), options, checksums);
+			log(result, archive.getFileName().toString(), root);
+			return result;
+		}
+	}
+
+	/**
+	 * Names of the entries, read from the {@link SeekableIndex} if there is
+	 * one, otherwise from the tar headers.
+	 */
+	public static List<String> list(Path archive) throws IOException {
+		var index = SeekableIndex.find(archive);
+		if (index.isPresent()) {
+			return index.get().entries().stream().map(SeekableIndex.Entry::name).toList();
+		}
+		String archiveName = ArchiveVolumes.isDescriptor(archive) ? ArchiveVolumes.load(archive).archive() : archive.getFileName().toString();
+		var codec = CompressionCodec.forFileName(archiveName)
+				.orElseThrow(() -> new IOException("unknown archive format: " + archiveName));
+		List<String> names = new ArrayList<>();
+		try (InputStream raw = ArchiveVolumes.isDescriptor(archive) ? ArchiveVolumes.open(archive) : Files.newInputStream(archive);
+				TarArchiveInputStream tar = new TarArchiveInputStream(codec.decompress(new BufferedInputStream(raw, BUFFER_SIZE)))) {
+			TarArchiveEntry entry;
+			while ((entry = tar.getNextEntry()) != null) {
+				names.add(entry.getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * archives packed with {@code checksums: false} have nothing to compare
+	 * the restored files with
+	 */
+	private static void warnUnverified(Result result, String archiveName, RestoreOptions options, Map<String, String> checksums) {
+		if (options.isVerify() && checksums.isEmpty() && result.files() > 0) {
+			log.warn("{} has no {}, the {} restored files are not verified", archiveName, TarGzPacker.CHECKSUMS_ENTRY, result.files());
+		}
+	}
+
+	private static void log(Result result, String archiveName, Path root) {
+		if (!result.isValid()) {
+			log.error("restore of {} has {} files with wrong checksum: {}", archiveName, result.mismatches().size(), result.mismatches());
+		}
+		log.info("restored {} files ({} bytes) of {} into {}, {} verified", result.files(), result.bytes(), archiveName, root, result.verified());
+	}
+
+	/**
+	 * Lines of {@code sha256sum}: {@code <sha256>  <name>}.
+	 */
+	static Map<String, String> parseChecksums(byte[] content) {
+		Map<String, String> checksums = new HashMap<>();
+		for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+			int separator = line.indexOf("  ");
+			if (separator > 0) {
+				checksums.put(line.substring(separator + 2), line.substring(0, separator));
+			}
+		}
+		return checksums;
+	}
+
+	/**
+	 * State of one restore: the selection, the writers and the hashes of the
+	 * written files.
+	 */
+	private static class Extraction implements AutoCloseable {
+
+		private final Path root;
+		private final RestoreOptions options;
+		private final List<PathMatcher> globs = new ArrayList<>();
+		private final List<String> prefixes = new ArrayList<>();
+		private final ExecutorService writers;
+		private final Semaphore budget;
+		private final long maxBufferedFile;
+		private final List<Future<?>> writes = new ArrayList<>();
+		private final Map<String, String> hashes = new ConcurrentHashMap<>();
+		private final AtomicInteger files = new AtomicInteger();
+		private final AtomicLong bytes = new AtomicLong();
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		Extraction(Path root, RestoreOptions options) {
+			this.root = root;
+			this.options = options;
+			for (String path : options.getPaths()) {
+				if (path.contains("*") || path.contains("?") || path.contains("[") || path.contains("{")) {
+					globs.add(FileSystems.getDefault().getPathMatcher("glob:" + path));
+				} else {
+					prefixes.add(trimSlashes(path));
+				}
+			}
+			int threads = Math.max(1, options.getThreads());
+			this.writers = Executors.newFixedThreadPool(threads,
+					new ThreadFactoryBuilder().setNameFormat("backup-restore-%d").setDaemon(true).build());
+			this.budget = new Semaphore(Math.max(0, options.getWriteBuffer()));
+			this.maxBufferedFile = options.getWriteBuffer() / 4;
+		}
+
+		/**
+		 * A path selects itself and everything below it, a glob is matched
+		 * against the whole entry name.
+		 */
+		boolean selected(String entryName) {
+			if (globs.isEmpty() && prefixes.isEmpty()) {
+				return true;
+			}
+			String name = trimSlashes(entryName);
+			for (String prefix : prefixes) {
+				if (name.equals(prefix) || name.startsWith(prefix + "/")) {
+					return true;
+				}
+			}
+			Path path = Path.of(name);
+			return globs.stream().anyMatch(glob -> glob.matches(path));
+		}
+
+		void extract(TarArchiveEntry entry, InputStream tar) throws IOException {
+			String name = trimSlashes(entry.getName());
+			Path file = root.resolve(name).normalize();
+			if (!file.startsWith(root) || file.equals(root)) {
+				throw new IOException("entry %s is outside of the target".formatted(entry.getName()));
+			}
+			if (entry.isDirectory()) {
+				Files.createDirectories(file);
+				return;
+			}
+			if (!entry.isFile()) {
+				log.debug("skipping {}, no regular file", entry.getName());
+				return;
+			}
+			long size = entry.getSize();
+			if (size > maxBufferedFile) {
+				// too big for the buffer, the reader writes it and waits
+				write(file, name, tar, size, buffer);
+				return;
+			}
+			byte[] content = tar.readNBytes((int) size);
+			try {
+				budget.acquire(content.length);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("restore of %s interrupted".formatted(name), e);
+			}
+			writes.add(writers.submit(() -> {
+				try {
+					write(file, name, new ByteArrayInputStream(content), content.length, new byte[Math.max(1, Math.min(BUFFER_SIZE, content.length))]);
+				} finally {
+					budget.release(content.length);
+				}
+				return null;
+			}));
+		}
+
+		private void write(Path file, String name, InputStream in, long size, byte[] buffer) throws IOException {
+			Files.createDirectories(file.getParent());
+			MessageDigest digest = options.isVerify() ? newDigest() : null;
+			try (OutputStream out = options.getWriteThrottle().wrap(Files.newOutputStream(file))) {
+				long remaining = size;
+				while (remaining > 0) {
+					int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+					if (read == -1) {
+						throw new IOException("unexpected end of %s".formatted(name));
+					}
+					if (digest != null) {
+						digest.update(buffer, 0, read);
+					}
+					out.write(buffer, 0, read);
+					remaining -= read;
+				}
+			}
+			files.incrementAndGet();
+			bytes.addAndGet(size);
+			if (digest != null) {
+				hashes.put(name, BackupUtil.bytesToHex(digest.digest()));
+			}
+		}
+
+		/**
+		 * Waits for the writers and compares the hashes.
+		 */
+		Result finish(Map<String, String> checksums) throws IOException {
+			for (Future<?> write : writes) {
+				try {
+					write.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("restore interrupted", e);
+				} catch (ExecutionException e) {
+					throw new IOException("error writing restored file", e.getCause());
+				}
+			}
+			int verified = 0;
+			List<String> mismatches = new ArrayList<>();
+			for (var hash : hashes.entrySet()) {
+				String expected = checksums.get(hash.getKey());
+				if (expected == null) {
+					continue;
+				}
+				verified++;
+				if (!expected.equals(hash.getValue())) {
+					mismatches.add(hash.getKey());
+				}
+			}
+			mismatches.sort(null);
+			return new Result(files.get(), bytes.get(), verified, List.copyOf(mismatches));
+		}
+
+		@Override
+		public void close() {
+			writers.shutdownNow();
+		}
+	}
+
+	private static String trimSlashes(String name) {
+		int start = 0;
+		int end = name.length();
+		while (start < end && name.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && name.charAt(end - 1) == '/') {
+			end--;
+		}
+		return name.substring(start, end);
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("error creating hash", ex);
+		}
+	}
+}
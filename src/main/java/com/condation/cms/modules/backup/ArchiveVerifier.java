@@ -0,0 +1,197 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Reads a finished archive once as a stream and compares every file with
+ * the SHA-256 calculated while it was packed, and the archive with its
+ * SHA-256. A corrupt archive is found when it is written, not when it is
+ * restored.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class ArchiveVerifier {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final String META_PREFIX = ".backup/";
+
+	/**
+	 * verifications of all backups, next to the uploads of earlier runs
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2,
+			new ThreadFactoryBuilder().setNameFormat("backup-verify-%d").setDaemon(true).build());
+
+	/**
+	 * @param entries files compared with their checksum
+	 * @param failures wrong checksums, missing files and read errors
+	 */
+	public record Report(int entries, List<String> failures) {
+
+		public boolean isValid() {
+			return failures.isEmpty();
+		}
+	}
+
+	/**
+	 * Verifies on the verification threads, {@code onSuccess} only runs if
+	 * the archive is valid and {@code onFailure} otherwise.
+	 */
+	public static void verifyAsync(String name, Path archive, Map<String, String> entryHashes, String archiveSha256,
+			Runnable onSuccess, Runnable onFailure) {
+		EXECUTOR.execute(() -> {
+			long start = System.nanoTime();
+			var report = verify(archive, entryHashes, archiveSha256);
+			long nanos = System.nanoTime() - start;
+			BackupMetrics.phase(name, BackupMetrics.Phase.VERIFY, nanos, 0);
+			if (!report.isValid()) {
+				log.error("verification of backup {} failed, {}: {}", name, archive.getFileName(), report.failures());
+				try {
+					onFailure.run();
+				} catch (RuntimeException e) {
+					log.error("error after failed verification of backup {}", name, e);
+				}
+				return;
+			}
+			log.debug("verified {} files of backup {} in {}ms", report.entries(), name, TimeUnit.NANOSECONDS.toMillis(nanos));
+			try {
+				onSuccess.run();
+			} catch (RuntimeException e) {
+				log.error("error in post processing of backup {}", name, e);
+			}
+		});
+	}
+
+	/**
+	 * @param archive archive file or {@code .volumes} descriptor
+	 * @param entryHashes SHA-256 of every file by entry name, see
+	 * {@link TarGzPacker.Result#entryHashes()}
+	 * @param archiveSha256 SHA-256 of the archive file, null if unknown
+	 */
+	public static Report verify(Path archive, Map<String, String> entryHashes, String archiveSha256) {
+		List<String> failures = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		int verified = 0;
+		try {
+			String archiveName = ArchiveVolumes.isDescriptor(archive) ? ArchiveVolumes.load(archive).archive() : archive.getFileName().toString();
+			var codec = CompressionCodec.forFileName(archiveName)
+					.orElseThrow(() -> new IOException("unknown archive format: " + archiveName));
+			MessageDigest archiveDigest = newDigest();
+			MessageDigest entryDigest = newDigest();
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			InputStream raw = ArchiveVolumes.isDescriptor(archive) ? ArchiveVolumes.open(archive) : Files.newInputStream(archive);
+			// the digest below the buffer, decompressors reset the buffer after reading ahead
+			try (InputStream in = new BufferedInputStream(new DigestInputStream(raw, archiveDigest), BUFFER_SIZE)) {
+				TarArchiveInputStream tar = new TarArchiveInputStream(codec.decompress(in));
+				TarArchiveEntry entry;
+				while ((entry = tar.getNextEntry()) != null) {
+					if (!entry.isFile() || entry.getName().startsWith(META_PREFIX)) {
+						continue;
+					}
+					seen.add(entry.getName());
+					entryDigest.reset();
+					long size = 0;
+					int read;
+					while ((read = tar.read(buffer)) != -1) {
+						entryDigest.update(buffer, 0, read);
+						size += read;
+					}
+					if (size != entry.getSize()) {
+						failures.add("%s: %d of %d bytes".formatted(entry.getName(), size, entry.getSize()));
+						continue;
+					}
+					String expected = entryHashes.get(entry.getName());
+					if (expected == null) {
+						continue;
+					}
+					verified++;
+					if (!expected.equals(BackupUtil.bytesToHex(entryDigest.digest()))) {
+						failures.add(entry.getName() + ": wrong checksum");
+					}
+				}
+				in.transferTo(OutputStream.nullOutputStream());
+			}
+			for (String name : entryHashes.keySet()) {
+				if (!seen.contains(name)) {
+					failures.add(name + ": missing");
+				}
+			}
+			if (archiveSha256 != null) {
+				String actual = BackupUtil.bytesToHex(archiveDigest.digest());
+				if (!actual.equals(archiveSha256)) {
+					failures.add("%s: sha256 is %s, expected %s".formatted(archiveName, actual, archiveSha256));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			log.debug("error reading {}", archive, e);
+			failures.add("%s: %s".formatted(archive.getFileName(), e.getMessage()));
+		}
+		return new Report(verified, List.copyOf(failures));
+	}
+
+	/**
+	 * Waits for running verifications, called when the server stops.
+	 */
+	public static void shutdown() {
+		EXECUTOR.shutdown();
+		try {
+			if (!EXECUTOR.awaitTermination(30, TimeUnit.SECONDS)) {
+				EXECUTOR.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			EXECUTOR.shutdownNow();
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("error creating hash", ex);
+		}
+	}
+}
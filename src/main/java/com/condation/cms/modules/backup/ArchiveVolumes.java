@@ -0,0 +1,355 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An archive split into volumes of a fixed size, written next to each other
+ * as {@code <archive>.part001}, {@code <archive>.part002} ... and described
+ * by {@code <archive>.volumes}:
+ *
+ * <pre>
+ * # type=volumes
+ * archive	sites-20260101-020000.tar.gz	2621440	&lt;sha256&gt;
+ * volume	sites-20260101-020000.tar.gz.part001	1048576	&lt;sha256&gt;
+ * </pre>
+ *
+ * The volumes are plain byte ranges of the archive, {@code cat} joins them.
+ *
+ * @author thmar
+ */
+@Slf4j
+public record ArchiveVolumes(String archive, long size, String sha256, List<Volume> volumes) {
+
+	public static final String EXTENSION = ".volumes";
+	private static final String HEADER = "# type=volumes";
+
+	public record Volume(String file, long size, String sha256) {
+	}
+
+	/**
+	 * Uploads a single file, retried by the caller's target.
+	 */
+	@FunctionalInterface
+	public interface Uploader {
+
+		void upload(Path file) throws IOException;
+	}
+
+	/**
+	 * @return size of the archive, also when it is split into volumes
+	 */
+	public static long archiveSize(Path file) throws IOException {
+		return isDescriptor(file) ? load(file).size() : Files.size(file);
+	}
+
+	public static Path descriptor(Path archive) {
+		return archive.resolveSibling(archive.getFileName() + EXTENSION);
+	}
+
+	public static boolean isDescriptor(Path file) {
+		return file.getFileName().toString().endsWith(EXTENSION);
+	}
+
+	static String volumeName(String archive, int number) {
+		return "%s.part%03d".formatted(archive, number);
+	}
+
+	public static ArchiveVolumes load(Path descriptor) throws IOException {
+		String archive = null;
+		long size = 0;
+		String sha256 = null;
+		List<Volume> volumes = new ArrayList<>();
+		for (String line : Files.readAllLines(descriptor, StandardCharsets.UTF_8)) {
+			if (line.isBlank() || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\t");
+			if (parts.length != 4) {
+				throw new IOException("invalid line in %s: %s".formatted(descriptor, line));
+			}
+			switch (parts[0]) {
+				case "archive" -> {
+					archive = parts[1];
+					size = Long.parseLong(parts[2]);
+					sha256 = parts[3];
+				}
+				case "volume" ->
+					volumes.add(new Volume(parts[1], Long.parseLong(parts[2]), parts[3]));
+				default ->
+					throw new IOException("invalid line in %s: %s".formatted(descriptor, line));
+			}
+		}
+		if (archive == null) {
+			throw new IOException("no archive in " + descriptor);
+		}
+		return new ArchiveVolumes(archive, size, sha256, volumes);
+	}
+
+	public void save(Path descriptor) throws IOException {
+		Path temp = Files.createTempFile(descriptor.getParent(), descriptor.getFileName().toString(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.write("archive\t%s\t%d\t%s".formatted(archive, size, sha256));
+			writer.newLine();
+			for (Volume volume : volumes) {
+				writer.write("volume\t%s\t%d\t%s".formatted(volume.file(), volume.size(), volume.sha256()));
+				writer.newLine();
+			}
+		}
+		Files.move(temp, descriptor, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the volume files, in the folder of the descriptor
+	 */
+	public List<Path> files(Path folder) {
+		return volumes.stream().map(volume -> folder.resolve(volume.file())).toList();
+	}
+
+	/**
+	 * Reads the volumes one after the other as the archive, a volume is
+	 * opened when the one before is read.
+	 */
+	public static InputStream open(Path descriptor) throws IOException {
+		return open(descriptor, 0);
+	}
+
+	/**
+	 * Reads the archive from the offset on, volumes before the offset are not
+	 * opened.
+	 */
+	public static InputStream open(Path descriptor, long offset) throws IOException {
+		var volumes = load(descriptor);
+		Path folder = descriptor.getParent();
+		int first = 0;
+		while (first < volumes.volumes().size() && offset >= volumes.volumes().get(first).size()) {
+			offset -= volumes.volumes().get(first).size();
+			first++;
+		}
+		final long skip = offset;
+		Iterator<Volume> files = volumes.volumes().subList(first, volumes.volumes().size()).iterator();
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			private boolean firstVolume = true;
+
+			@Override
+			public boolean hasMoreElements() {
+				return files.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				Path file = folder.resolve(files.next().file());
+				try {
+					InputStream in = Files.newInputStream(file);
+					if (firstVolume) {
+						firstVolume = false;
+						in.skipNBytes(skip);
+					}
+					return in;
+				} catch (IOException e) {
+					throw new UncheckedIOException("error opening volume " + file, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes the volumes and the descriptor.
+	 */
+	public static void delete(Path descriptor) throws IOException {
+		if (!Files.exists(descriptor)) {
+			return;
+		}
+		for (Path volume : load(descriptor).files(descriptor.getParent())) {
+			Files.deleteIfExists(volume);
+		}
+		Files.delete(descriptor);
+	}
+
+	/**
+	 * Uploads the volumes on {@code threads} threads, each volume on its own
+	 * so a failed volume does not stop the others. The descriptor is uploaded
+	 * last, only when all volumes are complete.
+	 *
+	 * @throws IOException of the first failed volume, the others are
+	 * suppressed
+	 */
+	public static void upload(Path descriptor, int threads, Uploader uploader) throws IOException {
+		var volumes = load(descriptor).files(descriptor.getParent());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, volumes.size())),
+				new ThreadFactoryBuilder().setNameFormat("backup-volume-%d").setDaemon(true).build());
+		try {
+			List<Future<?>> uploads = new ArrayList<>(volumes.size());
+			for (Path volume : volumes) {
+				uploads.add(executor.submit(() -> {
+					uploader.upload(volume);
+					return null;
+				}));
+			}
+			IOException failure = null;
+			for (int i = 0; i < uploads.size(); i++) {
+				try {
+					uploads.get(i).get();
+				} catch (ExecutionException e) {
+					var error = new IOException("upload of volume %s failed".formatted(volumes.get(i).getFileName()), e.getCause());
+					if (failure == null) {
+						failure = error;
+					} else {
+						failure.addSuppressed(error);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("upload of %s interrupted".formatted(descriptor.getFileName()), e);
+		} finally {
+			executor.shutdownNow();
+		}
+		uploader.upload(descriptor);
+		log.debug("uploaded {} volumes of {}", volumes.size(), descriptor.getFileName());
+	}
+
+	/**
+	 * Writes to volumes of {@code maxSize} bytes, a new volume is opened when
+	 * the current one is full. {@link #close()} writes the descriptor.
+	 */
+	static class Output extends OutputStream {
+
+		private final Path archive;
+		private final long maxSize;
+		private final Throttle throttle;
+		private final MessageDigest archiveDigest;
+		private final List<Volume> volumes = new ArrayList<>();
+
+		private OutputStream current;
+		private MessageDigest volumeDigest;
+		private long volumeSize;
+		private long size;
+		private boolean closed;
+
+		Output(Path archive, long maxSize, Throttle throttle) throws IOException {
+			this.archive = archive;
+			this.maxSize = maxSize;
+			this.throttle = throttle;
+			this.archiveDigest = newDigest();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (current == null || volumeSize == maxSize) {
+					next();
+				}
+				int n = (int) Math.min(len, maxSize - volumeSize);
+				current.write(b, off, n);
+				volumeDigest.update(b, off, n);
+				archiveDigest.update(b, off, n);
+				volumeSize += n;
+				size += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (current != null) {
+				current.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (current == null) {
+				// an empty archive still has one volume
+				next();
+			}
+			finish();
+			new ArchiveVolumes(archive.getFileName().toString(), size, BackupUtil.bytesToHex(archiveDigest.digest()),
+					List.copyOf(volumes)).save(descriptor(archive));
+		}
+
+		private void next() throws IOException {
+			finish();
+			String name = volumeName(archive.getFileName().toString(), volumes.size() + 1);
+			current = throttle.wrap(Files.newOutputStream(archive.resolveSibling(name)));
+			volumeDigest = newDigest();
+			volumeSize = 0;
+			volumes.add(new Volume(name, 0, null));
+		}
+
+		private void finish() throws IOException {
+			if (current == null) {
+				return;
+			}
+			current.close();
+			current = null;
+			int last = volumes.size() - 1;
+			volumes.set(last, new Volume(volumes.get(last).file(), volumeSize, BackupUtil.bytesToHex(volumeDigest.digest())));
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("error creating hash", ex);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Every backup job goes through the coordinator:
+ * <ul>
+ * <li>a backup runs at most once at a time, a second trigger is skipped</li>
+ * <li>at most {@code max_parallel_backups} archives are built at once</li>
+ * <li>at most {@code max_backups_per_volume} backups read the same volume,
+ * by default as many as may run at all</li>
+ * </ul>
+ * Waiting jobs are served in arrival order.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class BackupCoordinator {
+
+	public static final int DEFAULT_MAX_PARALLEL = 2;
+
+	private static volatile BackupCoordinator shared = new BackupCoordinator(DEFAULT_MAX_PARALLEL);
+
+	private final Set<String> running = ConcurrentHashMap.newKeySet();
+	private final Semaphore builds;
+	private final int maxParallel;
+	private final int perVolume;
+	private final Map<FileStore, Semaphore> volumes = new ConcurrentHashMap<>();
+	private final Map<FileStore, String> volumeOwners = new ConcurrentHashMap<>();
+
+	BackupCoordinator(int maxParallel) {
+		this(maxParallel, 0);
+	}
+
+	/**
+	 * @param perVolume backups reading a volume at once, max parallel if less
+	 * than 1
+	 */
+	BackupCoordinator(int maxParallel, int perVolume) {
+		this.maxParallel = Math.max(1, maxParallel);
+		this.perVolume = perVolume > 0 ? perVolume : this.maxParallel;
+		this.builds = new Semaphore(this.maxParallel, true);
+	}
+
+	public static BackupCoordinator shared() {
+		return shared;
+	}
+
+	/**
+	 * Replaces the shared coordinator, called when the jobs are scheduled.
+	 *
+	 * @param maxParallel archives built at once, the default if less than 1
+	 * @param perVolume backups reading a volume at once, max parallel if less
+	 * than 1
+	 */
+	public static void configure(int maxParallel, int perVolume) {
+		shared = new BackupCoordinator(maxParallel > 0 ? maxParallel : DEFAULT_MAX_PARALLEL, perVolume);
+	}
+
+	/**
+	 * @return false if the backup is already running, the run has to be
+	 * skipped
+	 */
+	public boolean start(String name) {
+		if (!running.add(name)) {
+			log.info("backup {} skipped: the last run is still going", name);
+			return false;
+		}
+		return true;
+	}
+
+	public void finish(String name) {
+		running.remove(name);
+	}
+
+	/**
+	 * Waits for a build slot, then until the volumes of the sources are free.
+	 * A job waiting for a slot does not hold any volume.
+	 *
+	 * @param sources folders and files of the backup
+	 * @return to be closed when the archive is written
+	 */
+	public Permit acquire(String name, Collection<Path> sources) throws InterruptedException {
+		// fixed order, two jobs on the same volumes cannot deadlock
+		List<FileStore> stores = new ArrayList<>(volumes(sources));
+		stores.sort(Comparator.comparing(FileStore::toString));
+
+		// tryAcquire() without timeout would barge ahead of waiting jobs
+		if (!builds.tryAcquire(0, TimeUnit.SECONDS)) {
+			log.info("backup {} queued: {} backups are running", name, maxParallel);
+			builds.acquire();
+		}
+		List<FileStore> locked = new ArrayList<>(stores.size());
+		try {
+			for (FileStore store : stores) {
+				var volume = volumes.computeIfAbsent(store, key -> new Semaphore(perVolume, true));
+				if (!volume.tryAcquire(0, TimeUnit.SECONDS)) {
+					log.info("backup {} queued: volume {} is read by backup {}", name, store, volumeOwners.get(store));
+					volume.acquire();
+				}
+				volumeOwners.put(store, name);
+				locked.add(store);
+			}
+		} catch (InterruptedException | RuntimeException e) {
+			unlock(locked);
+			builds.release();
+			throw e;
+		}
+		return new Permit(locked);
+	}
+
+	private Set<FileStore> volumes(Collection<Path> sources) {
+		Set<FileStore> stores = new LinkedHashSet<>();
+		for (Path source : sources) {
+			try {
+				stores.add(Files.getFileStore(source));
+			} catch (IOException e) {
+				log.debug("no volume for {}, not serialized", source, e);
+			}
+		}
+		return stores;
+	}
+
+	private void unlock(List<FileStore> stores) {
+		for (FileStore store : stores) {
+			volumeOwners.remove(store);
+			volumes.get(store).release();
+		}
+	}
+
+	public final class Permit implements AutoCloseable {
+
+		private final List<FileStore> stores;
+		private boolean closed;
+
+		private Permit(List<FileStore> stores) {
+			this.stores = stores;
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			builds.release();
+			unlock(stores);
+		}
+	}
+}
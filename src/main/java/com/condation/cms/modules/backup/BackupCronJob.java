@@ -30,8 +30,13 @@ import com.condation.cms.api.scheduler.CronJob;
 import com.condation.cms.api.scheduler.CronJobContext;
 import com.condation.cms.api.utils.PathUtil;
 import com.condation.cms.api.utils.ServerUtil;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -41,6 +46,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
+ * Runs one backup. The settings of the backup are looked up by name on
+ * every run, so a reloaded config applies to the next run; cron and target
+ * are fixed when the job is scheduled.
  *
  * @author thmar
  */
@@ -48,19 +56,30 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class BackupCronJob implements CronJob {
 
-	private boolean running = false;
-	
+	private static final String MANIFEST = ".manifest";
+	private static final String FULL_MANIFEST = ".full.manifest";
+	private static final String FINGERPRINT = ".fingerprint";
+
 	private final Path targetPath;
 	private final ServerModuleContext serverModuleContext;
-	private final Configuration.Backup backup;
+	/**
+	 * the backup as it was scheduled, used if the config can not be read
+	 */
+	private final Configuration.Backup scheduled;
 
 	@Override
 	public void accept(CronJobContext context) {
-		if (running) {
-			log.debug("backug {} already running", backup.getName());
+		var backup = current();
+		if (backup == null) {
+			return;
+		}
+		var coordinator = BackupCoordinator.shared();
+		if (!coordinator.start(backup.getName())) {
 			return;
 		}
-		running = true;
+		BackupCoordinator.Permit permit = null;
+		boolean verifying = false;
+		BackupMetrics.Run run = BackupMetrics.start(backup.getName());
 		try {
 			
 			log.debug("start backup {}", backup.getName());
@@ -70,8 +89,7 @@ public class BackupCronJob implements CronJob {
 
 			var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
 			log.debug("start backup at {}", timestamp);
-			var backupFilename = "%s-%s.tar.gz".formatted(name, timestamp);
-			final Path targetFile = targetPath.resolve(backupFilename);
+			var packerOptions = PackerOptions.of(backup);
 
 			List<Path> sources = new ArrayList<>();
 			if (backup.getInclude_files() != null) {
@@ -100,37 +118,342 @@ public class BackupCronJob implements CronJob {
 				});
 			}
 
-			log.debug("creating backup {} into {}", name, targetFile.getFileName().toString());
-			TarGzPacker.createTarGz(ServerUtil.getHome(), targetFile.toFile(), sources);
+			permit = coordinator.acquire(name, sources);
 
-			if (backup.isProcessOnlyOnChange()) {
+			long scanStart = System.nanoTime();
+			var entries = SourceScanner.scan(ServerUtil.getHome(), sources);
+			run.phase(BackupMetrics.Phase.SCAN, System.nanoTime() - scanStart, 0);
+
+			SourceFingerprint fingerprint = null;
+			final Path fingerprintFile = targetPath.resolve(name + FINGERPRINT);
+			var changeDetection = ChangeDetection.of(backup.getChange_detection());
+			if (backup.isProcessOnlyOnChange() && changeDetection != ChangeDetection.ARCHIVE) {
+				long hashStart = System.nanoTime();
+				fingerprint = SourceFingerprint.compute(entries, changeDetection == ChangeDetection.CONTENT,
+						HashAlgorithm.of(backup.getChange_hash())).withSettings(archiveSettings(backup));
+				run.phase(BackupMetrics.Phase.HASH, System.nanoTime() - hashStart, 0);
+				var lastFingerprint = SourceFingerprint.load(fingerprintFile);
+				if (lastFingerprint.isPresent()) {
+					if (lastFingerprint.get().equals(fingerprint)) {
+						log.debug("sources of backup {} have not changed, skipping", name);
+						return;
+					}
+					log.debug("sources of backup {} changed: {}", name, fingerprint.changedSources(lastFingerprint.get()));
+				}
+			}
+
+			final PackerType packer = PackerType.of(backup.getPacker());
+			if (packer == PackerType.CHUNKS && !Strings.isNullOrEmpty(backup.getMode())) {
+				log.warn("mode of backup {} is ignored, every snapshot in the chunk repository is complete", name);
+			}
+			final BackupMode mode = packer == PackerType.CHUNKS ? BackupMode.FULL : BackupMode.of(backup.getMode());
+			final BackupManifest base = mode != BackupMode.FULL ? baseManifest(backup, mode) : null;
+			final BackupMode runMode = base != null ? mode : BackupMode.FULL;
+
+			List<SourceEntry> archiveEntries = entries;
+			Map<String, byte[]> generated = Map.of();
+			if (base != null) {
+				var changes = base.changes(entries);
+				if (changes.isEmpty()) {
+					log.debug("backup {} has no changes since {}, skipping", name, base.getCreated());
+					return;
+				}
+				archiveEntries = changes.changed();
+				if (!changes.deleted().isEmpty()) {
+					generated = Map.of(BackupManifest.DELETIONS_ENTRY,
+							String.join("\n", changes.deleted()).getBytes(StandardCharsets.UTF_8));
+				}
+				log.debug("{} backup {}: {} changed, {} deleted", runMode, name, changes.changed().size(), changes.deleted().size());
+			}
+
+			S3MultipartUpload streamUpload = null;
+			if (!Strings.isNullOrEmpty(backup.getStream())) {
+				if (packer == PackerType.CHUNKS) {
+					log.warn("stream of backup {} is ignored, the chunk repository is always local", name);
+				} else {
+					streamUpload = S3Upload.streamingUpload(backup).orElse(null);
+					if (streamUpload == null) {
+						log.warn("no enabled {} post processing for streaming backup {}, writing a local archive", backup.getStream(), name);
+					}
+				}
+			}
+
+			final Path targetFile;
+			String newChecksum;
+			TarGzPacker.Result verifiable = null;
+			var packStats = new PackStats();
+			packerOptions.setStats(packStats);
+			Map<String, String> entryHashes = Map.of();
+			if (packer == PackerType.CHUNKS) {
+				var repository = ChunkRepository.open(targetPath.resolve(ChunkRepository.DEFAULT_DIRECTORY));
+				targetFile = repository.snapshotFile(name, timestamp);
+
+				log.debug("creating snapshot {} in {}", targetFile.getFileName().toString(), repository.getDirectory());
+				long packStart = System.nanoTime();
+				newChecksum = ChunkPacker.pack(entries, repository, targetFile, packerOptions).snapshotHash();
+				// the chunk packer has no phases, only new chunks are written
+				entries.stream().filter(entry -> !entry.directory()).forEach(entry -> packStats.file(entry.size()));
+				packStats.finish(System.nanoTime() - packStart, 0);
+			} else {
+				var extension = packerOptions.getCodec().getExtension();
+				var backupFilename = mode == BackupMode.FULL
+						? "%s-%s.%s".formatted(name, timestamp, extension)
+						: "%s-%s-%s.%s".formatted(name, timestamp, runMode.getSuffix(), extension);
+				final Path archiveFile = targetPath.resolve(backupFilename);
+
+				// the verification compares every file with its hash
+				packerOptions.setEntryHashes(mode != BackupMode.FULL || backup.isVerify());
+				if (packerOptions.isEntryHashes()) {
+					// the hashes are calculated anyway, restores can verify against them
+					packerOptions.setChecksums(true);
+				}
+
+				TarGzPacker.Result packResult;
+				if (streamUpload != null) {
+					log.debug("streaming backup {} to {}", name, backupFilename);
+					if (packerOptions.getMaxVolumeSize() > 0) {
+						log.warn("max_volume_size of backup {} is ignored, the archive is streamed", name);
+						packerOptions.setMaxVolumeSize(0);
+					}
+					var out = streamUpload.openStream(backupFilename);
+					try {
+						packResult = TarGzPacker.pack(archiveEntries, generated, out, packerOptions);
+						out.close();
+					} catch (IOException | RuntimeException e) {
+						out.abort();
+						throw e;
+					}
+				} else {
+					log.debug("creating backup {} into {}", name, backupFilename);
+					packResult = TarGzPacker.pack(archiveEntries, generated, archiveFile.toFile(), packerOptions);
+				}
+				// the post processing gets the descriptor of the volumes
+				targetFile = packerOptions.getMaxVolumeSize() > 0 ? ArchiveVolumes.descriptor(archiveFile) : archiveFile;
+				newChecksum = packResult.archiveHash();
+				entryHashes = packResult.entryHashes();
+				if (backup.isVerify() && streamUpload == null) {
+					verifiable = packResult;
+				}
+			}
+			run.packed(packStats);
+
+			if (backup.isProcessOnlyOnChange() && newChecksum == null && changeDetection == ChangeDetection.ARCHIVE) {
+				// zero copy archives are not hashed while written, the compare needs the checksum
+				newChecksum = HashEngine.sha256().hashHex(targetFile);
+			}
+
+			if (backup.isProcessOnlyOnChange() && newChecksum == null) {
+				// uncompressed zero copy archives have no checksum, only the fingerprint applies
+				log.debug("backup {} has no archive checksum, changes are detected by the fingerprint only", name);
+				if (fingerprint != null) {
+					fingerprint.save(fingerprintFile);
+				}
+			} else if (backup.isProcessOnlyOnChange()) {
 				Path checksumFile = targetPath.resolve(name + ".sha256");
-				String newChecksum = BackupUtil.calculateSHA256(targetFile);
 
 				if (Files.exists(checksumFile)) {
 					String oldChecksum = Files.readString(checksumFile);
 					if (oldChecksum.equals(newChecksum)) {
 						log.debug("backup {} has not changed, skipping post-processing and deleting new backup.", name);
-						Files.delete(targetFile);
+						if (streamUpload != null) {
+							streamUpload.delete(targetFile.getFileName().toString());
+						} else {
+							deleteArchive(targetFile);
+						}
+						if (fingerprint != null) {
+							fingerprint.save(fingerprintFile);
+						}
 						return; // Skip post-processing
 					}
 				}
 				Path tempChecksumFile = Files.createTempFile(targetPath, name, ".sha256.tmp");
 				Files.writeString(tempChecksumFile, newChecksum);
 				Files.move(tempChecksumFile, checksumFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+				if (fingerprint != null) {
+					fingerprint.save(fingerprintFile);
+				}
 			}
 
-			var hookSystem = serverModuleContext.get(ServerHookSystemFeature.class).hookSystem();
-			hookSystem.execute("module/backup/postprocess", Map.of(
-					"file", targetFile.toString(),
-					"name", name
-			));
+			if (mode != BackupMode.FULL) {
+				var manifest = BackupManifest.create(runMode, targetFile.getFileName().toString(), entries, entryHashes, base);
+				manifest.save(targetPath.resolve(name + MANIFEST));
+				if (runMode == BackupMode.FULL) {
+					manifest.save(targetPath.resolve(name + FULL_MANIFEST));
+				}
+			}
+
+			// the index is only kept with a retention, a missing index is built from the target folder
+			var retention = RetentionPolicy.of(backup.getRetention());
+			final ArchiveIndex retentionIndex = streamUpload == null && retention != null
+					? new ArchiveIndex(targetPath, name) : null;
+
+			final boolean streamed = streamUpload != null;
+			Runnable postProcess = () -> {
+				if (retentionIndex != null) {
+					try {
+						// only verified archives are restore points
+						retentionIndex.add(timestamp, runMode, targetFile);
+					} catch (IOException e) {
+						log.error("error adding {} to the index of backup {}", targetFile.getFileName(), name, e);
+					}
+				}
+				var hookSystem = serverModuleContext.get(ServerHookSystemFeature.class).hookSystem();
+				hookSystem.execute("module/backup/postprocess", Map.of(
+						"file", targetFile.toString(),
+						"name", name,
+						"streamed", streamed,
+						// uploads run on the post processing executor, the next run does not wait for them
+						"async", true
+				));
+
+				if (retentionIndex != null) {
+					// after the hook, so the queued uploads are protected
+					retentionIndex.pruneAsync(retention, PostProcessingExecutor.activeFiles());
+				}
+			};
+			if (verifiable != null) {
+				// the job does not wait, the post processing starts once the archive is verified.
+				// The backup counts as running until then, the next run must not overlap the cleanup,
+				// and the run is reported with the result of the verification
+				ArchiveVerifier.verifyAsync(name, targetFile, verifiable.entryHashes(), verifiable.archiveHash(),
+						() -> {
+							try {
+								postProcess.run();
+							} finally {
+								run.close();
+								coordinator.finish(name);
+							}
+						},
+						() -> {
+							try {
+								discardRun(name, runMode, fingerprintFile, targetFile);
+							} finally {
+								run.failed(new IOException("archive %s failed the verification".formatted(targetFile.getFileName())));
+								run.close();
+								coordinator.finish(name);
+							}
+						});
+				verifying = true;
+			} else {
+				postProcess.run();
+			}
 			log.debug("backup {} finished after {}ms", backup.getName(), (System.currentTimeMillis() - start));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			run.failed(e);
+			log.warn("backup {} interrupted while waiting", backup.getName());
 		} catch (Exception e) {
+			run.failed(e);
 			log.error("error creating backup", e);
 		} finally {
-			running = false;
+			// the build slot and the volumes are free for other backups while verifying
+			if (permit != null) {
+				permit.close();
+			}
+			if (!verifying) {
+				run.close();
+				coordinator.finish(backup.getName());
+			}
+		}
+	}
+
+	/**
+	 * Settings that change the archive, a run with other settings is not
+	 * skipped although the sources are unchanged. Threads and buffers only
+	 * change the speed.
+	 */
+	static String[] archiveSettings(Configuration.Backup backup) {
+		return new String[]{
+			"packer=" + backup.getPacker(),
+			"mode=" + backup.getMode(),
+			"full_interval=" + backup.getFull_interval(),
+			"compression=" + backup.getCompression(),
+			"compression_level=" + backup.getCompression_level(),
+			"compression_block_size=" + backup.getCompression_block_size(),
+			"chunk_size=" + backup.getChunk_size(),
+			"max_volume_size=" + backup.getMax_volume_size(),
+			"checksums=" + backup.isChecksums(),
+			"seekable=" + backup.isSeekable(),
+			"frame_size=" + backup.getFrame_size(),
+			"verify=" + backup.isVerify(),
+			"stream=" + backup.getStream()
+		};
+	}
+
+	/**
+	 * After a failed verification the broken archive is deleted, the next run
+	 * must neither be skipped as unchanged nor build on it.
+	 */
+	private void discardRun(String name, BackupMode runMode, Path fingerprintFile, Path archive) {
+		try {
+			deleteArchive(archive);
+			Files.deleteIfExists(targetPath.resolve(name + ".sha256"));
+			Files.deleteIfExists(fingerprintFile);
+			// an incremental run is compared with the full run again
+			Files.deleteIfExists(targetPath.resolve(name + MANIFEST));
+			if (runMode == BackupMode.FULL) {
+				Files.deleteIfExists(targetPath.resolve(name + FULL_MANIFEST));
+			}
+		} catch (IOException e) {
+			log.error("error deleting archive and checksums of backup {}", name, e);
+		}
+	}
+
+	/**
+	 * Deletes the archive with its volumes and seekable index.
+	 */
+	private static void deleteArchive(Path archive) throws IOException {
+		SeekableIndex.delete(archive);
+		if (ArchiveVolumes.isDescriptor(archive)) {
+			ArchiveVolumes.delete(archive);
+		} else {
+			Files.deleteIfExists(archive);
+		}
+	}
+
+	/**
+	 * The current settings of the backup, null if it was removed from the
+	 * config or disabled.
+	 */
+	private Configuration.Backup current() {
+		try {
+			var config = ConfigLoader.load();
+			if (config.isEmpty()) {
+				return scheduled;
+			}
+			var backup = config.get().getBackup(scheduled.getName());
+			if (backup.isEmpty() || !backup.get().isEnabled()) {
+				log.info("backup {} skipped: removed from the config or disabled", scheduled.getName());
+				return null;
+			}
+			return backup.get();
+		} catch (IOException e) {
+			log.warn("error reading the backup config, backup {} runs with the settings it was scheduled with", scheduled.getName(), e);
+			return scheduled;
+		}
+	}
+
+	/**
+	 * Manifest an incremental or differential run is compared against, null
+	 * if the next run has to be a full backup.
+	 */
+	private BackupManifest baseManifest(Configuration.Backup backup, BackupMode mode) throws IOException {
+		String name = backup.getName();
+		var full = BackupManifest.load(targetPath.resolve(name + FULL_MANIFEST));
+		if (full.isEmpty()) {
+			log.debug("no full backup found for {}", name);
+			return null;
+		}
+		if (!Strings.isNullOrEmpty(backup.getFull_interval())
+				&& full.get().getCreated().plus(Duration.parse(backup.getFull_interval())).isBefore(Instant.now())) {
+			log.debug("full backup for {} is due, last one from {}", name, full.get().getCreated());
+			return null;
+		}
+		if (mode == BackupMode.DIFFERENTIAL) {
+			return full.get();
 		}
+		var last = BackupManifest.load(targetPath.resolve(name + MANIFEST));
+		return last.orElse(full.get());
 	}
 
 }
@@ -53,7 +53,13 @@ public class BackupLifecycleExtension extends ServerLifecycleExtensionPoint {
 
 	@Override
 	public void stopped() {
-
+		// verified archives still go to the post processing
+		ArchiveVerifier.shutdown();
+		PostProcessingExecutor.shutdown();
+		S3Upload.closeClients();
+		FTPClientPool.closeAll();
+		ConfigLoader.close();
+		JmxMetrics.shared().unregisterAll();
 	}
 
 	@Override
@@ -68,6 +74,7 @@ public class BackupLifecycleExtension extends ServerLifecycleExtensionPoint {
 			}
 
 			var backupConig = loadedConfig.get();
+			BackupCoordinator.configure(backupConig.getMax_parallel_backups(), backupConig.getMax_backups_per_volume());
 
 			backupConig.getBackups().forEach(backup -> {
 				var name = backup.getName();
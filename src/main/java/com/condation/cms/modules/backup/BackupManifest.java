@@ -0,0 +1,208 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * State of the backup sources after a run: path, size, modification time
+ * and content hash of every file. Incremental and differential runs compare
+ * the current sources against it.
+ *
+ * <pre>
+ * # type=incremental
+ * # created=2026-01-01T02:00:00Z
+ * # archive=sites-20260101-020000-incr.tar.gz
+ * &lt;sha256&gt;	&lt;size&gt;	&lt;lastModified&gt;	&lt;path&gt;
+ * </pre>
+ *
+ * Directories are stored with a trailing slash and {@code -} as hash.
+ *
+ * @author thmar
+ */
+@Getter
+@RequiredArgsConstructor
+public class BackupManifest {
+
+	public static final String DELETIONS_ENTRY = ".backup/deletions.txt";
+
+	private static final String NO_HASH = "-";
+
+	private final BackupMode type;
+	private final Instant created;
+	private final String archive;
+	private final Map<String, Entry> entries;
+
+	public record Entry(String name, boolean directory, long size, long lastModified, String hash) {
+
+		boolean isUnchanged(SourceEntry source) {
+			return directory == source.directory()
+					&& size == source.size()
+					&& lastModified == source.lastModified();
+		}
+	}
+
+	/**
+	 * @param changed added or modified entries in archive order
+	 * @param deleted names of entries which no longer exist
+	 */
+	public record Changes(List<SourceEntry> changed, List<String> deleted) {
+
+		public boolean isEmpty() {
+			return changed.isEmpty() && deleted.isEmpty();
+		}
+	}
+
+	/**
+	 * Compares the scanned sources against this manifest. Directories are only
+	 * reported if they are new, files if they are new or size or
+	 * modification time differ.
+	 */
+	public Changes changes(List<SourceEntry> sources) {
+		List<SourceEntry> changed = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		for (SourceEntry source : sources) {
+			seen.add(source.name());
+			Entry known = entries.get(source.name());
+			if (known == null || (!source.directory() && !known.isUnchanged(source))) {
+				changed.add(source);
+			}
+		}
+		List<String> deleted = new ArrayList<>();
+		for (String name : entries.keySet()) {
+			if (!seen.contains(name)) {
+				deleted.add(name);
+			}
+		}
+		return new Changes(changed, deleted);
+	}
+
+	/**
+	 * Creates the manifest for a finished run.
+	 *
+	 * @param hashes hashes of the files written into the archive
+	 * @param base manifest the run was compared against, supplies the hashes
+	 * of unchanged files; null for full runs
+	 */
+	public static BackupManifest create(BackupMode type, String archive, List<SourceEntry> sources,
+			Map<String, String> hashes, BackupManifest base) {
+		Map<String, Entry> entries = new TreeMap<>();
+		for (SourceEntry source : sources) {
+			String hash = NO_HASH;
+			if (!source.directory()) {
+				hash = hashes.get(source.name());
+				if (hash == null && base != null) {
+					Entry known = base.entries.get(source.name());
+					hash = known != null ? known.hash() : null;
+				}
+				if (hash == null) {
+					hash = NO_HASH;
+				}
+			}
+			entries.put(source.name(), new Entry(source.name(), source.directory(), source.size(), source.lastModified(), hash));
+		}
+		return new BackupManifest(type, Instant.now(), archive, Collections.unmodifiableMap(entries));
+	}
+
+	public static Optional<BackupManifest> load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		BackupMode type = BackupMode.FULL;
+		Instant created = Instant.EPOCH;
+		String archive = null;
+		Map<String, Entry> entries = new TreeMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+				if (line.startsWith("# ")) {
+					String[] header = line.substring(2).split("=", 2);
+					if (header.length == 2) {
+						switch (header[0]) {
+							case "type" -> type = BackupMode.of(header[1]);
+							case "created" -> created = Instant.parse(header[1]);
+							case "archive" -> archive = header[1];
+							default -> {
+							}
+						}
+					}
+					continue;
+				}
+				String[] parts = line.split("\t", 4);
+				if (parts.length != 4) {
+					throw new IOException("invalid manifest line in %s: %s".formatted(file, line));
+				}
+				boolean directory = parts[3].endsWith("/");
+				String name = directory ? parts[3].substring(0, parts[3].length() - 1) : parts[3];
+				entries.put(name, new Entry(name, directory, Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+			}
+		}
+		return Optional.of(new BackupManifest(type, created, archive, Collections.unmodifiableMap(entries)));
+	}
+
+	public void save(Path file) throws IOException {
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write("# type=" + type.name().toLowerCase(Locale.ROOT));
+			writer.newLine();
+			writer.write("# created=" + created);
+			writer.newLine();
+			if (archive != null) {
+				writer.write("# archive=" + archive);
+				writer.newLine();
+			}
+			for (Entry entry : entries.values()) {
+				writer.write(entry.hash());
+				writer.write('\t');
+				writer.write(Long.toString(entry.size()));
+				writer.write('\t');
+				writer.write(Long.toString(entry.lastModified()));
+				writer.write('\t');
+				writer.write(entry.directory() ? entry.name() + "/" : entry.name());
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,212 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands the timings of the backup phases, runs and uploads to the
+ * registered {@link MetricsSink}s. {@link JmxMetrics} is always registered,
+ * other sinks are loaded with the {@link ServiceLoader} or registered by
+ * other modules.
+ *
+ * @author thmar
+ */
+@Slf4j
+public final class BackupMetrics {
+
+	public enum Phase {
+		/**
+		 * listing the sources
+		 */
+		SCAN,
+		/**
+		 * reading files, the time the archive writer waits for them
+		 */
+		READ,
+		/**
+		 * tar headers and padding, everything not in the other phases
+		 */
+		TAR,
+		COMPRESS,
+		/**
+		 * SHA-256 of files, tar and archive, also the fingerprint
+		 */
+		HASH,
+		/**
+		 * writing the archive to the target folder
+		 */
+		WRITE,
+		VERIFY
+	}
+
+	/**
+	 * @param finished end of the run
+	 * @param nanos duration of the run
+	 * @param archived false if the run was skipped because nothing changed
+	 * @param files files in the archive
+	 * @param bytesIn bytes of the files in the archive
+	 * @param bytesOut bytes of the archive
+	 * @param phases time per phase
+	 * @param error null if the run was successful
+	 */
+	public record RunSummary(Instant finished, long nanos, boolean archived, long files, long bytesIn, long bytesOut,
+			Map<Phase, Long> phases, Throwable error) {
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		/**
+		 * @return bytes in per byte out, 0 without archive
+		 */
+		public double compressionRatio() {
+			return bytesOut > 0 ? (double) bytesIn / bytesOut : 0;
+		}
+
+		/**
+		 * @return bytes in per second of the whole run
+		 */
+		public double throughput() {
+			return nanos > 0 ? bytesIn * 1_000_000_000d / nanos : 0;
+		}
+	}
+
+	private static final List<MetricsSink> SINKS = new CopyOnWriteArrayList<>();
+
+	static {
+		SINKS.add(JmxMetrics.shared());
+		try {
+			ServiceLoader.load(MetricsSink.class).forEach(SINKS::add);
+		} catch (RuntimeException | ServiceConfigurationError e) {
+			log.warn("error loading metrics sinks", e);
+		}
+	}
+
+	private BackupMetrics() {
+	}
+
+	public static void register(MetricsSink sink) {
+		SINKS.add(sink);
+	}
+
+	public static void unregister(MetricsSink sink) {
+		SINKS.remove(sink);
+	}
+
+	public static void phase(String backup, Phase phase, long nanos, long bytes) {
+		for (MetricsSink sink : SINKS) {
+			try {
+				sink.phase(backup, phase, nanos, bytes);
+			} catch (RuntimeException e) {
+				log.warn("error in metrics sink {}", sink, e);
+			}
+		}
+	}
+
+	public static void upload(String backup, String target, long nanos, long bytes, boolean success) {
+		for (MetricsSink sink : SINKS) {
+			try {
+				sink.upload(backup, target, nanos, bytes, success);
+			} catch (RuntimeException e) {
+				log.warn("error in metrics sink {}", sink, e);
+			}
+		}
+	}
+
+	public static void status(PostProcessingExecutor.Status status) {
+		for (MetricsSink sink : SINKS) {
+			try {
+				sink.status(status);
+			} catch (RuntimeException e) {
+				log.warn("error in metrics sink {}", sink, e);
+			}
+		}
+	}
+
+	/**
+	 * Starts collecting the metrics of a run, {@link Run#close()} reports it.
+	 */
+	public static Run start(String backup) {
+		return new Run(backup);
+	}
+
+	/**
+	 * Metrics of one run, phases are reported when they end.
+	 */
+	public static class Run implements AutoCloseable {
+
+		private final String backup;
+		private final long start = System.nanoTime();
+		private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+		private boolean archived;
+		private long files;
+		private long bytesIn;
+		private long bytesOut;
+		private Throwable error;
+
+		private Run(String backup) {
+			this.backup = backup;
+		}
+
+		public void phase(Phase phase, long nanos, long bytes) {
+			phases.merge(phase, nanos, Long::sum);
+			BackupMetrics.phase(backup, phase, nanos, bytes);
+		}
+
+		/**
+		 * Reports the phases of the packer.
+		 */
+		public void packed(PackStats stats) {
+			archived = true;
+			files = stats.getFiles();
+			bytesIn = stats.getBytesIn();
+			bytesOut = stats.getBytesOut();
+			stats.phases().forEach((phase, nanos) -> phase(phase, nanos, phase == Phase.WRITE ? bytesOut : bytesIn));
+		}
+
+		public void failed(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public void close() {
+			var summary = new RunSummary(Instant.now(), System.nanoTime() - start, archived, files, bytesIn, bytesOut,
+					Map.copyOf(phases), error);
+			for (MetricsSink sink : SINKS) {
+				try {
+					sink.run(backup, summary);
+				} catch (RuntimeException e) {
+					log.warn("error in metrics sink {}", sink, e);
+				}
+			}
+		}
+	}
+}
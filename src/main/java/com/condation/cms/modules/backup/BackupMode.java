@@ -0,0 +1,70 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Locale;
+
+/**
+ * What a backup run archives.
+ *
+ * @author thmar
+ */
+public enum BackupMode {
+	/**
+	 * every file
+	 */
+	FULL("full"),
+	/**
+	 * files added or changed since the last run
+	 */
+	INCREMENTAL("incr"),
+	/**
+	 * files added or changed since the last full run
+	 */
+	DIFFERENTIAL("diff");
+
+	private final String suffix;
+
+	BackupMode(String suffix) {
+		this.suffix = suffix;
+	}
+
+	/**
+	 * @return short name used in archive file names
+	 */
+	public String getSuffix() {
+		return suffix;
+	}
+
+	public static BackupMode of(String mode) {
+		if (mode == null || mode.isBlank()) {
+			return FULL;
+		}
+		return switch (mode.trim().toLowerCase(Locale.ROOT)) {
+			case "full" -> FULL;
+			case "incremental", "incr" -> INCREMENTAL;
+			case "differential", "diff" -> DIFFERENTIAL;
+			default -> throw new IllegalArgumentException("unknown backup mode: " + mode);
+		};
+	}
+}
@@ -0,0 +1,82 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Metrics of one backup, registered as
+ * {@code com.condation.cms.modules.backup:type=Backup,name=<backup>}.
+ * Counters and phase times add up over all runs, {@code Last*} values are
+ * from the last run with archive. Timestamps are epoch milliseconds, 0 if
+ * there was none. A run with verification is reported once the archive is
+ * verified; {@code LastFailure} and {@code LastError} also report failed
+ * uploads of the backup.
+ *
+ * @author thmar
+ */
+public interface BackupStatsMXBean {
+
+	long getRuns();
+
+	long getFailures();
+
+	long getLastSuccess();
+
+	long getLastFailure();
+
+	String getLastError();
+
+	long getLastDurationMillis();
+
+	long getLastFiles();
+
+	long getLastBytesIn();
+
+	long getLastBytesOut();
+
+	double getLastCompressionRatio();
+
+	/**
+	 * @return MB of sources per second of the last run
+	 */
+	double getLastThroughputMBps();
+
+	long getFiles();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	long getScanMillis();
+
+	long getReadMillis();
+
+	long getTarMillis();
+
+	long getCompressMillis();
+
+	long getHashMillis();
+
+	long getWriteMillis();
+
+	long getVerifyMillis();
+}
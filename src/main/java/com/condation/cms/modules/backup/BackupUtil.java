@@ -22,36 +22,61 @@
 package com.condation.cms.modules.backup;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
 
 public class BackupUtil {
 
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Plain SHA-256 of the file, see {@link HashEngine#sha256()}.
+     */
     public static String calculateSHA256(Path file) throws IOException, NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        try (InputStream is = Files.newInputStream(file)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-            }
+        return HashEngine.sha256().hashHex(file);
+    }
+
+    /**
+     * Parses sizes like {@code 4096}, {@code "128KB"}, {@code "16MB"} or
+     * {@code "1G"} into bytes.
+     */
+    public static long parseSize(Object value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        String size = value.toString().trim().toUpperCase(Locale.ROOT);
+        if (size.isEmpty()) {
+            return defaultValue;
+        }
+        if (size.endsWith("B")) {
+            size = size.substring(0, size.length() - 1);
+        }
+        long factor = 1;
+        if (size.endsWith("K")) {
+            factor = 1024L;
+        } else if (size.endsWith("M")) {
+            factor = 1024L * 1024;
+        } else if (size.endsWith("G")) {
+            factor = 1024L * 1024 * 1024;
+        } else if (size.endsWith("T")) {
+            factor = 1024L * 1024 * 1024 * 1024;
+        }
+        if (factor > 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+        try {
+            return Long.parseLong(size.trim()) * factor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid size: " + value, e);
         }
-        byte[] encodedhash = digest.digest();
-        return bytesToHex(encodedhash);
     }
 
     public static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (int i = 0; i < hash.length; i++) {
-            String hex = Integer.toHexString(0xff & hash[i]);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
-        }
-        return hexString.toString();
+        return HEX.formatHex(hash);
     }
 }
@@ -0,0 +1,58 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Locale;
+
+/**
+ * How {@code processOnlyOnChange} finds out that nothing has changed.
+ *
+ * @author thmar
+ */
+public enum ChangeDetection {
+	/**
+	 * fingerprint over path, size and modification time, no archive is built
+	 * if it matches the last run
+	 */
+	METADATA,
+	/**
+	 * like metadata, but includes the content hash of every file
+	 */
+	CONTENT,
+	/**
+	 * only compare the hash of the finished archive
+	 */
+	ARCHIVE;
+
+	public static ChangeDetection of(String value) {
+		if (value == null || value.isBlank()) {
+			return METADATA;
+		}
+		return switch (value.trim().toLowerCase(Locale.ROOT)) {
+			case "metadata" -> METADATA;
+			case "content", "strict" -> CONTENT;
+			case "archive" -> ARCHIVE;
+			default -> throw new IllegalArgumentException("unknown change detection: " + value);
+		};
+	}
+}
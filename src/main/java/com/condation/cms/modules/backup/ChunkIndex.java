@@ -0,0 +1,155 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set of the chunk digests stored in a {@link ChunkRepository}.
+ * <p>
+ * Known digests are kept as one sorted byte array (32 bytes per chunk, no
+ * object per entry) and looked up with a binary search; digests added since
+ * the last {@link #save(Path)} are kept in a small hash set. On disk the
+ * index is the sorted array as is.
+ *
+ * @author thmar
+ */
+class ChunkIndex {
+
+	static final int DIGEST_LENGTH = 32;
+
+	private byte[] sorted;
+	private int count;
+	private final Set<ByteBuffer> added = new HashSet<>();
+
+	ChunkIndex() {
+		this(new byte[0]);
+	}
+
+	private ChunkIndex(byte[] sorted) {
+		this.sorted = sorted;
+		this.count = sorted.length / DIGEST_LENGTH;
+	}
+
+	public boolean contains(byte[] digest) {
+		return added.contains(ByteBuffer.wrap(digest)) || search(digest) >= 0;
+	}
+
+	/**
+	 * @return false if the digest was already known
+	 */
+	public boolean add(byte[] digest) {
+		if (digest.length != DIGEST_LENGTH) {
+			throw new IllegalArgumentException("invalid digest length " + digest.length);
+		}
+		if (search(digest) >= 0) {
+			return false;
+		}
+		return added.add(ByteBuffer.wrap(digest.clone()));
+	}
+
+	public int size() {
+		return count + added.size();
+	}
+
+	public boolean isDirty() {
+		return !added.isEmpty();
+	}
+
+	/**
+	 * Merges the added digests into the sorted array and writes it.
+	 */
+	public void save(Path file) throws IOException {
+		merge();
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		Files.write(temp, sorted);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static ChunkIndex load(Path file) throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		if (data.length % DIGEST_LENGTH != 0) {
+			throw new IOException("corrupt chunk index " + file);
+		}
+		for (int i = DIGEST_LENGTH; i < data.length; i += DIGEST_LENGTH) {
+			if (Arrays.compareUnsigned(data, i - DIGEST_LENGTH, i, data, i, i + DIGEST_LENGTH) >= 0) {
+				throw new IOException("chunk index %s is not sorted".formatted(file));
+			}
+		}
+		return new ChunkIndex(data);
+	}
+
+	private void merge() {
+		if (added.isEmpty()) {
+			return;
+		}
+		List<byte[]> digests = new ArrayList<>(added.size());
+		added.forEach(buffer -> digests.add(buffer.array()));
+		digests.sort(Arrays::compareUnsigned);
+
+		byte[] merged = new byte[(count + digests.size()) * DIGEST_LENGTH];
+		int i = 0;
+		int j = 0;
+		int target = 0;
+		while (i < count || j < digests.size()) {
+			if (j == digests.size()
+					|| (i < count && Arrays.compareUnsigned(sorted, i * DIGEST_LENGTH, (i + 1) * DIGEST_LENGTH,
+							digests.get(j), 0, DIGEST_LENGTH) < 0)) {
+				System.arraycopy(sorted, i++ * DIGEST_LENGTH, merged, target, DIGEST_LENGTH);
+			} else {
+				System.arraycopy(digests.get(j++), 0, merged, target, DIGEST_LENGTH);
+			}
+			target += DIGEST_LENGTH;
+		}
+		sorted = merged;
+		count = merged.length / DIGEST_LENGTH;
+		added.clear();
+	}
+
+	private int search(byte[] digest) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = Arrays.compareUnsigned(sorted, mid * DIGEST_LENGTH, (mid + 1) * DIGEST_LENGTH,
+					digest, 0, DIGEST_LENGTH);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,197 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Second packer next to {@link TarGzPacker}: splits the files into content
+ * defined chunks, stores new chunks in a {@link ChunkRepository} and writes
+ * a snapshot which lists the chunks of every file.
+ *
+ * <pre>
+ * # type=snapshot
+ * # created=2026-01-01T02:00:00Z
+ * D	0	&lt;lastModified&gt;	content/	-
+ * F	&lt;size&gt;	&lt;lastModified&gt;	content/index.md	&lt;sha256&gt;,&lt;sha256&gt;
+ * </pre>
+ *
+ * @author thmar
+ */
+@Slf4j
+public class ChunkPacker {
+
+	private static final HexFormat HEX = HexFormat.of();
+	static final String NO_CHUNKS = "-";
+
+	/**
+	 * @param snapshotHash SHA-256 over the names and chunks of all entries,
+	 * same sources give the same hash
+	 * @param chunks number of chunks in the snapshot
+	 * @param newChunks number of chunks written to the repository
+	 * @param size bytes in the snapshot
+	 * @param newSize uncompressed bytes of the new chunks
+	 */
+	public record Result(String snapshotHash, long chunks, long newChunks, long size, long newSize) {
+	}
+
+	public static Result pack(List<SourceEntry> entries, ChunkRepository repository, Path snapshot, PackerOptions options) throws IOException {
+		// new chunks are not referenced until the snapshot is written
+		Lock writing = repository.writing();
+		writing.lock();
+		try {
+			return write(entries, repository, snapshot, options);
+		} finally {
+			writing.unlock();
+		}
+	}
+
+	private static Result write(List<SourceEntry> entries, ChunkRepository repository, Path snapshot, PackerOptions options) throws IOException {
+		FastCdcChunker chunker = new FastCdcChunker(options.getChunkSize());
+		MessageDigest snapshotDigest = newDigest();
+		long[] stats = new long[4];
+
+		Path temp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write("# type=snapshot");
+			writer.newLine();
+			writer.write("# created=" + Instant.now());
+			writer.newLine();
+
+			for (SourceEntry entry : entries) {
+				String chunks = NO_CHUNKS;
+				if (!entry.directory()) {
+					List<String> digests = new ArrayList<>();
+					try (InputStream in = options.getReadThrottle().wrap(Files.newInputStream(entry.path()))) {
+						chunker.split(in, (data, offset, length) -> {
+							byte[] digest = ChunkRepository.sha256(data, offset, length);
+							if (repository.write(digest, data, offset, length, options)) {
+								stats[1]++;
+								stats[3] += length;
+							}
+							stats[0]++;
+							stats[2] += length;
+							digests.add(HEX.formatHex(digest));
+						});
+					}
+					if (!digests.isEmpty()) {
+						chunks = String.join(",", digests);
+					}
+				}
+				String name = entry.directory() ? entry.name() + "/" : entry.name();
+				snapshotDigest.update((name + "\t" + chunks + "\n").getBytes(StandardCharsets.UTF_8));
+
+				writer.write(entry.directory() ? 'D' : 'F');
+				writer.write('\t');
+				writer.write(Long.toString(entry.size()));
+				writer.write('\t');
+				writer.write(Long.toString(entry.lastModified()));
+				writer.write('\t');
+				writer.write(name);
+				writer.write('\t');
+				writer.write(chunks);
+				writer.newLine();
+			}
+		}
+		// index first, a snapshot must never reference chunks the index does not know
+		repository.flush();
+		Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		log.debug("snapshot {}: {} chunks, {} new ({} of {} bytes)",
+				snapshot.getFileName(), stats[0], stats[1], stats[3], stats[2]);
+		return new Result(HEX.formatHex(snapshotDigest.digest()), stats[0], stats[1], stats[2], stats[3]);
+	}
+
+	/**
+	 * Restores all entries of a snapshot below the destination directory.
+	 */
+	public static void restore(ChunkRepository repository, Path snapshot, Path destination) throws IOException {
+		Path root = destination.toAbsolutePath().normalize();
+		// set after the files, writing a file changes the time of its directory
+		Map<Path, FileTime> directories = new LinkedHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank() || line.startsWith("# ")) {
+					continue;
+				}
+				String[] parts = line.split("\t", 5);
+				if (parts.length != 5) {
+					throw new IOException("invalid snapshot line in %s: %s".formatted(snapshot, line));
+				}
+				Path target = root.resolve(parts[3]).normalize();
+				if (!target.startsWith(root)) {
+					throw new IOException("entry outside of destination: " + parts[3]);
+				}
+				FileTime lastModified = FileTime.fromMillis(Long.parseLong(parts[2]));
+				if ("D".equals(parts[0])) {
+					Files.createDirectories(target);
+					directories.put(target, lastModified);
+					continue;
+				}
+				Files.createDirectories(target.getParent());
+				try (OutputStream out = Files.newOutputStream(target)) {
+					if (!NO_CHUNKS.equals(parts[4])) {
+						for (String digest : parts[4].split(",")) {
+							out.write(repository.read(digest));
+						}
+					}
+				}
+				if (Files.size(target) != Long.parseLong(parts[1])) {
+					throw new IOException("size of restored file %s does not match".formatted(target));
+				}
+				Files.setLastModifiedTime(target, lastModified);
+			}
+		}
+		for (var directory : directories.entrySet()) {
+			Files.setLastModifiedTime(directory.getKey(), directory.getValue());
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("error creating hash", ex);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content addressed store for file chunks, shared by all backups with the
+ * same target.
+ *
+ * <pre>
+ * repository/
+ *   index                      sorted sha256 digests of all chunks
+ *   chunks/ab/abcdef...0.zst   chunk, compressed with the codec of the run
+ *                              (no extension without compression)
+ *   snapshots/sites-20260101-020000.snapshot
+ * </pre>
+ *
+ * A chunk is written only once, no matter how many snapshots or sites
+ * contain it. Chunks no snapshot references any more are removed by
+ * {@link #collectGarbage()} once retention deleted snapshots.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class ChunkRepository {
+
+	public static final String DEFAULT_DIRECTORY = "repository";
+
+	private static final String INDEX = "index";
+	private static final String CHUNKS = "chunks";
+	private static final String SNAPSHOTS = "snapshots";
+	private static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static final Map<Path, ChunkRepository> REPOSITORIES = new ConcurrentHashMap<>();
+
+	@Getter
+	private final Path directory;
+
+	private ChunkIndex index;
+
+	/**
+	 * read lock while a snapshot is written, the garbage collection takes the
+	 * write lock, so it never sees chunks of an unfinished snapshot
+	 */
+	private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock(true);
+
+	private ChunkRepository(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Backups running in parallel into the same directory share one
+	 * instance, so they see the chunks written by each other.
+	 */
+	public static ChunkRepository open(Path directory) throws IOException {
+		Path normalized = directory.toAbsolutePath().normalize();
+		Files.createDirectories(normalized.resolve(CHUNKS));
+		Files.createDirectories(normalized.resolve(SNAPSHOTS));
+		return REPOSITORIES.computeIfAbsent(normalized, ChunkRepository::new);
+	}
+
+	public Path snapshotFile(String name, String timestamp) {
+		return directory.resolve(SNAPSHOTS).resolve(name + "-" + timestamp + SNAPSHOT_EXTENSION);
+	}
+
+	/**
+	 * Stores the chunk unless the repository already contains it.
+	 *
+	 * @return true if the chunk was new and has been written
+	 */
+	public boolean write(byte[] digest, byte[] data, int offset, int length, PackerOptions options) throws IOException {
+		synchronized (this) {
+			if (index().contains(digest)) {
+				return false;
+			}
+		}
+		var codec = options.getCodec();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+		try (OutputStream out = codec.compress(compressed, chunkOptions(options))) {
+			out.write(data, offset, length);
+		}
+		Path file = chunkFile(HEX.formatHex(digest), codec);
+		Files.createDirectories(file.getParent());
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		options.getWriteThrottle().acquire(compressed.size());
+		Files.write(temp, compressed.toByteArray());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		synchronized (this) {
+			return index().add(digest);
+		}
+	}
+
+	public boolean contains(byte[] digest) throws IOException {
+		synchronized (this) {
+			return index().contains(digest);
+		}
+	}
+
+	/**
+	 * Reads and verifies a chunk.
+	 */
+	public byte[] read(String digest) throws IOException {
+		for (CompressionCodec codec : CompressionCodec.values()) {
+			Path file = chunkFile(digest, codec);
+			if (Files.exists(file)) {
+				byte[] data;
+				try (InputStream in = codec.decompress(Files.newInputStream(file))) {
+					data = in.readAllBytes();
+				}
+				if (!HEX.formatHex(sha256(data)).equals(digest)) {
+					throw new IOException("chunk %s is corrupt".formatted(file));
+				}
+				return data;
+			}
+		}
+		throw new IOException("chunk %s not found in %s".formatted(digest, directory));
+	}
+
+	/**
+	 * Writes the index, called after a snapshot is complete.
+	 */
+	public synchronized void flush() throws IOException {
+		if (index != null && index.isDirty()) {
+			index.save(directory.resolve(INDEX));
+		}
+	}
+
+	/**
+	 * Held by the packer while it writes a snapshot.
+	 */
+	Lock writing() {
+		return snapshotLock.readLock();
+	}
+
+	/**
+	 * Mark and sweep: deletes the chunks no snapshot references, waits for
+	 * snapshots being written.
+	 *
+	 * @return number of deleted chunks
+	 */
+	public int collectGarbage() throws IOException {
+		snapshotLock.writeLock().lock();
+		try {
+			Set<String> referenced = referencedChunks();
+			int deleted = 0;
+			try (Stream<Path> files = Files.walk(directory.resolve(CHUNKS))) {
+				for (Path file : files.filter(Files::isRegularFile).toList()) {
+					String fileName = file.getFileName().toString();
+					String digest = fileName.indexOf('.') > 0 ? fileName.substring(0, fileName.indexOf('.')) : fileName;
+					// left over temp files of an aborted write are garbage as well
+					if (fileName.endsWith(".tmp") || !referenced.contains(digest)) {
+						Files.deleteIfExists(file);
+						deleted++;
+					}
+				}
+			}
+			if (deleted > 0) {
+				synchronized (this) {
+					index = rebuild();
+				}
+				log.info("deleted {} chunks of {}, {} left", deleted, directory, referenced.size());
+			}
+			return deleted;
+		} finally {
+			snapshotLock.writeLock().unlock();
+		}
+	}
+
+	private Set<String> referencedChunks() throws IOException {
+		Set<String> referenced = new HashSet<>();
+		try (Stream<Path> files = Files.list(directory.resolve(SNAPSHOTS))) {
+			for (Path snapshot : files.filter(file -> file.getFileName().toString().endsWith(SNAPSHOT_EXTENSION)).toList()) {
+				for (String line : Files.readAllLines(snapshot, StandardCharsets.UTF_8)) {
+					if (line.isBlank() || line.startsWith("# ")) {
+						continue;
+					}
+					String[] parts = line.split("\t", 5);
+					if (parts.length != 5) {
+						// better keep everything than delete chunks of a snapshot
+						throw new IOException("invalid snapshot line in %s: %s".formatted(snapshot, line));
+					}
+					if (!ChunkPacker.NO_CHUNKS.equals(parts[4])) {
+						referenced.addAll(Arrays.asList(parts[4].split(",")));
+					}
+				}
+			}
+		}
+		return referenced;
+	}
+
+	public synchronized int chunkCount() throws IOException {
+		return index().size();
+	}
+
+	private ChunkIndex index() throws IOException {
+		if (index == null) {
+			Path file = directory.resolve(INDEX);
+			if (Files.exists(file)) {
+				try {
+					index = ChunkIndex.load(file);
+					return index;
+				} catch (IOException e) {
+					log.warn("rebuilding chunk index of {}", directory, e);
+				}
+			}
+			index = rebuild();
+		}
+		return index;
+	}
+
+	private ChunkIndex rebuild() throws IOException {
+		ChunkIndex rebuilt = new ChunkIndex();
+		try (Stream<Path> files = Files.walk(directory.resolve(CHUNKS))) {
+			files.filter(Files::isRegularFile)
+					.map(file -> file.getFileName().toString())
+					.filter(file -> !file.endsWith(".tmp"))
+					.map(file -> file.substring(0, file.indexOf('.') > 0 ? file.indexOf('.') : file.length()))
+					.filter(digest -> digest.length() == ChunkIndex.DIGEST_LENGTH * 2)
+					.forEach(digest -> rebuilt.add(HEX.parseHex(digest)));
+		}
+		rebuilt.save(directory.resolve(INDEX));
+		return rebuilt;
+	}
+
+	private Path chunkFile(String digest, CompressionCodec codec) {
+		Path folder = directory.resolve(CHUNKS).resolve(digest.substring(0, 2));
+		if (codec == CompressionCodec.NONE) {
+			return folder.resolve(digest);
+		}
+		String extension = codec.getExtension().substring(codec.getExtension().indexOf('.') + 1);
+		return folder.resolve(digest + "." + extension);
+	}
+
+	/**
+	 * Chunks are small, compress them on the calling thread.
+	 */
+	private static PackerOptions chunkOptions(PackerOptions options) {
+		var chunkOptions = new PackerOptions();
+		chunkOptions.setCodec(options.getCodec());
+		chunkOptions.setCompressionLevel(options.getCompressionLevel());
+		return chunkOptions;
+	}
+
+	static byte[] sha256(byte[] data) throws IOException {
+		return sha256(data, 0, data.length);
+	}
+
+	static byte[] sha256(byte[] data, int offset, int length) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data, offset, length);
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("error creating hash", e);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Optional;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+
+/**
+ * Compression formats for backup archives.
+ *
+ * @author thmar
+ */
+public enum CompressionCodec {
+
+	GZIP("tar.gz", 0, 9, 6) {
+		@Override
+		OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) throws IOException {
+			if (options.getCompressionThreads() > 1) {
+				return new ParallelGzipOutputStream(out,
+						options.getCompressionThreads(),
+						options.getCompressionBlockSize(),
+						level);
+			}
+			GzipParameters parameters = new GzipParameters();
+			parameters.setCompressionLevel(level);
+			return new GzipCompressorOutputStream(out, parameters);
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			// concatenated members, seekable archives are written as one member per frame
+			return GzipCompressorInputStream.builder()
+					.setInputStream(in)
+					.setDecompressConcatenated(true)
+					.get();
+		}
+	},
+	ZSTD("tar.zst", 1, 22, 3) {
+		@Override
+		OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) throws IOException {
+			var builder = ZstdCompressorOutputStream.builder()
+					.setOutputStream(out)
+					.setLevel(level)
+					.setChecksum(true);
+			if (options.getCompressionThreads() > 1) {
+				builder.setWorkers(options.getCompressionThreads());
+			}
+			return builder.get();
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new ZstdCompressorInputStream(in);
+		}
+	},
+	/**
+	 * level 1 and 2 use the fast lz4 compressor, 3 to 17 lz4 hc.
+	 */
+	LZ4("tar.lz4", 1, 17, 1) {
+		@Override
+		OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) throws IOException {
+			var factory = LZ4Factory.fastestInstance();
+			var compressor = level <= 2 ? factory.fastCompressor() : factory.highCompressor(level);
+			return new LZ4FrameOutputStream(out,
+					LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB,
+					-1L,
+					compressor,
+					XXHashFactory.fastestInstance().hash32(),
+					LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE,
+					LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return new LZ4FrameInputStream(in);
+		}
+	},
+	XZ("tar.xz", 0, 9, 6) {
+		@Override
+		OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) throws IOException {
+			return XZCompressorOutputStream.builder()
+					.setOutputStream(out)
+					.setLzma2Options(new LZMA2Options(level))
+					.get();
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) throws IOException {
+			return XZCompressorInputStream.builder()
+					.setInputStream(in)
+					.setDecompressConcatenated(true)
+					.get();
+		}
+	},
+	/**
+	 * plain tar for targets which compress on their own, written with
+	 * {@link ZeroCopyTarWriter} if possible.
+	 */
+	NONE("tar", 0, 0, 0) {
+		@Override
+		OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) {
+			return new FilterOutputStream(out) {
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+				}
+			};
+		}
+
+		@Override
+		public InputStream decompress(InputStream in) {
+			return in;
+		}
+	};
+
+	private final String extension;
+	private final int minLevel;
+	private final int maxLevel;
+	private final int defaultLevel;
+
+	CompressionCodec(String extension, int minLevel, int maxLevel, int defaultLevel) {
+		this.extension = extension;
+		this.minLevel = minLevel;
+		this.maxLevel = maxLevel;
+		this.defaultLevel = defaultLevel;
+	}
+
+	/**
+	 * @return the file extension without leading dot, e.g. {@code tar.gz}
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	public int getDefaultLevel() {
+		return defaultLevel;
+	}
+
+	public int level(Integer level) {
+		if (level == null) {
+			return defaultLevel;
+		}
+		if (level < minLevel || level > maxLevel) {
+			throw new IllegalArgumentException("compression level for %s must be between %d and %d"
+					.formatted(name().toLowerCase(Locale.ROOT), minLevel, maxLevel));
+		}
+		return level;
+	}
+
+	public OutputStream compress(OutputStream out, PackerOptions options) throws IOException {
+		return createOutputStream(out, level(options.getCompressionLevel()), options);
+	}
+
+	abstract OutputStream createOutputStream(OutputStream out, int level, PackerOptions options) throws IOException;
+
+	public abstract InputStream decompress(InputStream in) throws IOException;
+
+	/**
+	 * Resolves the codec configured in backup.yaml, gzip if nothing is
+	 * configured.
+	 */
+	public static CompressionCodec of(String name) {
+		if (name == null || name.isBlank()) {
+			return GZIP;
+		}
+		return switch (name.trim().toLowerCase(Locale.ROOT)) {
+			case "gzip", "gz" -> GZIP;
+			case "zstd", "zst", "zstandard" -> ZSTD;
+			case "lz4" -> LZ4;
+			case "xz" -> XZ;
+			case "none", "tar", "uncompressed" -> NONE;
+			default -> throw new IllegalArgumentException("unknown compression: " + name);
+		};
+	}
+
+	public static Optional<CompressionCodec> forFileName(String fileName) {
+		for (CompressionCodec codec : values()) {
+			if (fileName.endsWith("." + codec.extension)) {
+				return Optional.of(codec);
+			}
+		}
+		return Optional.empty();
+	}
+}
@@ -23,24 +23,197 @@ package com.condation.cms.modules.backup;
  */
 
 import com.condation.cms.api.utils.ServerUtil;
+import com.google.common.base.Strings;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
 import org.yaml.snakeyaml.Yaml;
 
 /**
+ * Loads {@code config/backup.yaml} once and keeps the validated
+ * configuration. A watch service on the config folder replaces it when the
+ * file changes; an invalid file is logged and the last good configuration
+ * stays active.
  *
  * @author thmar
  */
+@Slf4j
 public class ConfigLoader {
 
+	private static final String CONFIG_FILE = "config/backup.yaml";
+	private static final long RELOAD_DELAY_MILLIS = 200;
+
+	private static final AtomicReference<Snapshot> SNAPSHOT = new AtomicReference<>();
+
+	private static WatchService watchService;
+
+	private record Snapshot(Path file, Configuration configuration) {
+	}
+
 	public static Optional<Configuration> load () throws IOException {
-		var configFile = ServerUtil.getHome().resolve("config/backup.yaml");
+		var configFile = ServerUtil.getHome().resolve(CONFIG_FILE);
+		var snapshot = SNAPSHOT.get();
+		if (snapshot == null || !snapshot.file().equals(configFile)) {
+			snapshot = init(configFile);
+		}
+		return Optional.ofNullable(snapshot.configuration());
+	}
+
+	/**
+	 * Stops watching the config file, the next {@link #load()} reads it again.
+	 */
+	public static synchronized void close() {
+		SNAPSHOT.set(null);
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn("error closing config watch service", e);
+			}
+			watchService = null;
+		}
+	}
+
+	private static synchronized Snapshot init(Path configFile) throws IOException {
+		var snapshot = SNAPSHOT.get();
+		if (snapshot != null && snapshot.file().equals(configFile)) {
+			return snapshot;
+		}
+		close();
+		snapshot = new Snapshot(configFile, read(configFile));
+		if (snapshot.configuration() != null) {
+			Throttle.configure(snapshot.configuration());
+		}
+		if (Files.isDirectory(configFile.getParent())) {
+			watch(configFile);
+			SNAPSHOT.set(snapshot);
+		}
+		// without a config folder there is nothing to watch, read again next time
+		return snapshot;
+	}
+
+	private static void watch(Path configFile) throws IOException {
+		var service = FileSystems.getDefault().newWatchService();
+		configFile.getParent().register(service,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		watchService = service;
+
+		Thread.ofPlatform().name("backup-config-watch").daemon().start(() -> {
+			try {
+				while (true) {
+					boolean changed = false;
+					// editors truncate and write in several steps, wait until the folder is quiet
+					for (WatchKey key = service.take(); key != null; key = service.poll(RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS)) {
+						changed |= key.pollEvents().stream()
+								.anyMatch(event -> configFile.getFileName().equals(event.context()));
+						if (!key.reset()) {
+							log.warn("config folder {} is no longer watched", configFile.getParent());
+							return;
+						}
+					}
+					if (changed) {
+						reload(configFile);
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// closed
+			}
+		});
+	}
+
+	private static void reload(Path configFile) {
+		try {
+			var configuration = read(configFile);
+			var snapshot = new Snapshot(configFile, configuration);
+			// a closed loader or another home keeps its snapshot
+			if (SNAPSHOT.updateAndGet(current -> current != null && current.file().equals(configFile) ? snapshot : current) == snapshot
+					&& configuration != null) {
+				Throttle.configure(configuration);
+			}
+			log.info("backup config {}", configuration != null ? "reloaded" : "removed");
+		} catch (IOException | RuntimeException e) {
+			log.error("invalid backup config, keeping the last one", e);
+		}
+	}
+
+	private static Configuration read(Path configFile) throws IOException {
 		if (!Files.exists(configFile)) {
-			return Optional.empty();
+			return null;
 		}
+		Configuration configuration;
 		try (var input = Files.newInputStream(configFile)) {
-			return Optional.of(new Yaml().loadAs(input, Configuration.class));
+			configuration = new Yaml().loadAs(input, Configuration.class);
+		}
+		if (configuration == null) {
+			configuration = new Configuration();
+		}
+		try {
+			validate(configuration);
+		} catch (RuntimeException e) {
+			throw new IOException("invalid %s: %s".formatted(configFile, e.getMessage()), e);
+		}
+		return configuration;
+	}
+
+	/**
+	 * Parses every setting once, so a typo fails when the file is loaded and
+	 * not in the middle of the night when the backup runs.
+	 */
+	static void validate(Configuration configuration) {
+		if (configuration.getBackups() == null) {
+			configuration.setBackups(new ArrayList<>());
+		}
+		Throttle.rates(configuration.getLimits(), "");
+		Set<String> names = new HashSet<>();
+		List<Configuration.Backup> backups = new ArrayList<>();
+		for (var backup : configuration.getBackups()) {
+			if (Strings.isNullOrEmpty(backup.getName())) {
+				throw new IllegalArgumentException("backup without name");
+			}
+			if (!names.add(backup.getName())) {
+				// older configs with duplicates kept working, the first one was used
+				log.warn("duplicate backup {} is ignored, only the first one with the name runs", backup.getName());
+				continue;
+			}
+			backups.add(backup);
+			ChangeDetection.of(backup.getChange_detection());
+			HashAlgorithm.of(backup.getChange_hash());
+			BackupMode.of(backup.getMode());
+			PackerType.of(backup.getPacker());
+			PackerOptions.of(backup);
+			Throttle.rates(backup.getLimits(), "");
+			if (!Strings.isNullOrEmpty(backup.getFull_interval())) {
+				Duration.parse(backup.getFull_interval());
+			}
+			if (backup.getPost_processing() == null) {
+				backup.setPost_processing(new ArrayList<>());
+			}
+			for (var processing : backup.getPost_processing()) {
+				if (Strings.isNullOrEmpty(processing.getType())) {
+					throw new IllegalArgumentException("post processing without type in backup " + backup.getName());
+				}
+				if (processing.getConfig() == null) {
+					processing.setConfig(Map.of());
+				}
+			}
 		}
+		configuration.setBackups(backups);
 	}
 }
@@ -22,9 +22,17 @@ package com.condation.cms.modules.backup;
  * #L%
  */
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 /**
  *
@@ -36,6 +44,40 @@ public class Configuration {
 	private List<Backup> backups;
 	private String target;
 	private String cron;
+	private int max_parallel_backups;
+	private int max_backups_per_volume;
+	private Map<String, Object> limits;
+
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private transient volatile Map<String, Backup> backupsByName;
+
+	public void setBackups(List<Backup> backups) {
+		this.backups = backups;
+		this.backupsByName = null;
+	}
+
+	/**
+	 * @return the first backup with the name, {@link ConfigLoader} drops
+	 * later backups with the same name
+	 */
+	public Optional<Backup> getBackup(String name) {
+		var index = backupsByName;
+		if (index == null) {
+			index = new HashMap<>();
+			if (backups != null) {
+				for (var backup : backups) {
+					index.putIfAbsent(backup.getName(), backup);
+				}
+			}
+			// shared by all threads through the config snapshot, published complete
+			index = Collections.unmodifiableMap(index);
+			backupsByName = index;
+		}
+		return Optional.ofNullable(index.get(name));
+	}
 
 	@Data
 	public static class Backup {
@@ -43,12 +85,78 @@ public class Configuration {
 		private String name;
 		private boolean enabled = false;
 		private boolean processOnlyOnChange = false;
+		private String change_detection;
+		private String change_hash;
 		private List<String> include_files;
 		private List<String> include_dirs;
 		private List<PostProcessing> post_processing;
 		
 		private String target;
 		private String cron;
+		private String stream;
+
+		private String mode;
+		private String full_interval;
+
+		private String compression;
+		private Integer compression_level;
+		private int compression_threads = 1;
+		private String compression_block_size;
+		private Integer prefetch_threads;
+		private String prefetch_buffer;
+
+		private String packer;
+		private String chunk_size;
+		private String max_volume_size;
+		private boolean checksums = false;
+		private boolean seekable = false;
+		private String frame_size;
+		private boolean verify = false;
+		private Map<String, Object> limits;
+		private Retention retention;
+
+		@Getter(AccessLevel.NONE)
+		@Setter(AccessLevel.NONE)
+		@EqualsAndHashCode.Exclude
+		@ToString.Exclude
+		private transient volatile Map<String, PostProcessing> postProcessingByType;
+
+		public void setPost_processing(List<PostProcessing> post_processing) {
+			this.post_processing = post_processing;
+			this.postProcessingByType = null;
+		}
+
+		/**
+		 * @return the first post processing of the type, enabled or not
+		 */
+		public Optional<PostProcessing> getPostProcessing(String type) {
+			var index = postProcessingByType;
+			if (index == null) {
+				index = new HashMap<>();
+				if (post_processing != null) {
+					for (var processing : post_processing) {
+						index.putIfAbsent(processing.getType(), processing);
+					}
+				}
+				index = Collections.unmodifiableMap(index);
+				postProcessingByType = index;
+			}
+			return Optional.ofNullable(index.get(type));
+		}
+	}
+
+	/**
+	 * Archives kept in the target folder, 0 disables a rule. An archive is
+	 * kept if any rule keeps it.
+	 */
+	@Data
+	public static class Retention {
+
+		private int keep_last;
+		private int hourly;
+		private int daily;
+		private int weekly;
+		private int monthly;
 	}
 
 	@Data
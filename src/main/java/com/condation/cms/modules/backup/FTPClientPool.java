@@ -0,0 +1,257 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+/**
+ * Logged in ftp connections per host and user. Idle connections are kept
+ * alive with {@code NOOP} and closed after {@link #MAX_IDLE}; the number of
+ * connections per server is limited by {@code connections}. When password,
+ * buffers or connections change with a config reload the pool is replaced,
+ * connections of the old pool are closed when they are released.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class FTPClientPool {
+
+	public static final int DEFAULT_CONNECTIONS = 2;
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	static final Duration KEEP_ALIVE = Duration.ofSeconds(30);
+	static final Duration MAX_IDLE = Duration.ofMinutes(5);
+
+	private static final Map<PoolKey, FTPClientPool> POOLS = new ConcurrentHashMap<>();
+	private static final ScheduledExecutorService KEEP_ALIVE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("backup-ftp-keepalive").setDaemon(true).build());
+
+	static {
+		KEEP_ALIVE_EXECUTOR.scheduleWithFixedDelay(() -> POOLS.values().forEach(FTPClientPool::keepAlive),
+				KEEP_ALIVE.toSeconds(), KEEP_ALIVE.toSeconds(), TimeUnit.SECONDS);
+	}
+
+	private final PoolKey key;
+	private final Settings settings;
+	private final Supplier<FTPClient> factory;
+	private final Semaphore connections;
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private volatile boolean closed;
+
+	private record PoolKey(String host, int port, String username) {
+	}
+
+	private record Settings(String password, int bufferSize, int sendBufferSize, int connections) {
+
+		static Settings of(Map<String, Object> config) {
+			return new Settings(
+					(String) config.getOrDefault("password", null),
+					(int) BackupUtil.parseSize(config.get("buffer_size"), DEFAULT_BUFFER_SIZE),
+					(int) BackupUtil.parseSize(config.get("send_buffer_size"), 0),
+					FTPClientPool.connections(config));
+		}
+	}
+
+	/**
+	 * A logged in client, returned with {@link FTPClientPool#release}.
+	 *
+	 * @param home working directory after the login
+	 */
+	public record Connection(FTPClient client, String home, long lastUsed) {
+	}
+
+	private FTPClientPool(PoolKey key, Settings settings, Supplier<FTPClient> factory) {
+		this.key = key;
+		this.settings = settings;
+		this.factory = factory;
+		this.connections = new Semaphore(settings.connections(), true);
+	}
+
+	/**
+	 * The pool of the server and user of the ftp config, the factory is used
+	 * when the pool is created. A pool with other settings is replaced.
+	 */
+	public static FTPClientPool of(Map<String, Object> config, Supplier<FTPClient> factory) {
+		var key = new PoolKey(
+				(String) config.getOrDefault("host", null),
+				(int) config.getOrDefault("port", FTP.DEFAULT_PORT),
+				(String) config.getOrDefault("username", null));
+		var settings = Settings.of(config);
+		return POOLS.compute(key, (k, pool) -> {
+			if (pool != null && pool.settings.equals(settings)) {
+				return pool;
+			}
+			if (pool != null) {
+				log.debug("ftp config of {} at {} changed, replacing the pool", k.username(), k.host());
+				pool.close();
+			}
+			return new FTPClientPool(k, settings, factory);
+		});
+	}
+
+	public static int connections(Map<String, Object> config) {
+		return Math.max(1, (int) BackupUtil.parseSize(config.get("connections"), DEFAULT_CONNECTIONS));
+	}
+
+	/**
+	 * Closes all idle connections, called when the server stops.
+	 */
+	public static void closeAll() {
+		POOLS.keySet().forEach(key -> {
+			var pool = POOLS.remove(key);
+			if (pool != null) {
+				pool.close();
+			}
+		});
+	}
+
+	/**
+	 * Waits for a free connection, reuses an idle one if it still answers.
+	 */
+	public Connection borrow() throws IOException {
+		try {
+			connections.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for a connection to " + key.host(), e);
+		}
+		try {
+			Connection connection;
+			while ((connection = poll()) != null) {
+				if (isAlive(connection.client())) {
+					return connection;
+				}
+				disconnect(connection.client());
+			}
+			return connect();
+		} catch (IOException | RuntimeException e) {
+			connections.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param broken the connection failed and is closed instead of reused
+	 */
+	public void release(Connection connection, boolean broken) {
+		try {
+			if (broken || closed) {
+				disconnect(connection.client());
+			} else {
+				synchronized (idle) {
+					idle.push(new Connection(connection.client(), connection.home(), System.currentTimeMillis()));
+				}
+			}
+		} finally {
+			connections.release();
+		}
+	}
+
+	private Connection connect() throws IOException {
+		FTPClient client = factory.get();
+		try {
+			client.connect(key.host(), key.port());
+			if (!client.login(key.username(), settings.password())) {
+				throw new IOException("ftp login of %s at %s failed: %s".formatted(key.username(), key.host(), client.getReplyString()));
+			}
+			client.enterLocalPassiveMode();
+			client.setFileType(FTP.BINARY_FILE_TYPE);
+			client.setBufferSize(settings.bufferSize());
+			if (settings.sendBufferSize() > 0) {
+				client.setSendBufferSize(settings.sendBufferSize());
+			}
+			// NOOP on the control connection during long transfers
+			client.setControlKeepAliveTimeout(KEEP_ALIVE);
+			log.debug("connected to ftp server {}:{} as {}", key.host(), key.port(), key.username());
+			return new Connection(client, client.printWorkingDirectory(), System.currentTimeMillis());
+		} catch (IOException | RuntimeException e) {
+			disconnect(client);
+			throw e;
+		}
+	}
+
+	private Connection poll() {
+		synchronized (idle) {
+			return idle.poll();
+		}
+	}
+
+	private void keepAlive() {
+		Connection connection;
+		Deque<Connection> alive = new ArrayDeque<>();
+		long expired = System.currentTimeMillis() - MAX_IDLE.toMillis();
+		while ((connection = poll()) != null) {
+			if (connection.lastUsed() >= expired && isAlive(connection.client())) {
+				alive.add(connection);
+			} else {
+				disconnect(connection.client());
+			}
+		}
+		synchronized (idle) {
+			// connections released in the meantime are newer and stay in front
+			alive.forEach(idle::addLast);
+		}
+	}
+
+	private void close() {
+		closed = true;
+		Connection connection;
+		while ((connection = poll()) != null) {
+			disconnect(connection.client());
+		}
+	}
+
+	private static boolean isAlive(FTPClient client) {
+		try {
+			return client.isConnected() && FTPReply.isPositiveCompletion(client.noop());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void disconnect(FTPClient client) {
+		try {
+			if (client.isConnected()) {
+				client.logout();
+				client.disconnect();
+			}
+		} catch (IOException e) {
+			log.warn("error while closing ftp connection to {}", key.host(), e);
+		}
+	}
+}
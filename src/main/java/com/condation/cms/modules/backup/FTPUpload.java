@@ -29,9 +29,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 
 /**
@@ -42,10 +43,18 @@ import org.apache.commons.net.ftp.FTPClient;
 @Extension(ServerHookSystemRegisterExtensionPoint.class)
 public class FTPUpload extends ServerHookSystemRegisterExtensionPoint {
 
-	private FTPClient ftpClient = new FTPClient();
+	public static final int DEFAULT_RETRIES = 3;
+	static final String PART_SUFFIX = ".part";
+	private static final long UNKNOWN_SIZE = -1;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+
+	private Supplier<FTPClient> clientFactory = FTPClient::new;
 	
-	public void setFtpClient (FTPClient ftpClient) {
-		this.ftpClient = ftpClient;
+	/**
+	 * Creates the clients of new pools, see {@link FTPClientPool}.
+	 */
+	public void setClientFactory (Supplier<FTPClient> clientFactory) {
+		this.clientFactory = clientFactory;
 	}
 	
 	
@@ -58,14 +67,14 @@ public class FTPUpload extends ServerHookSystemRegisterExtensionPoint {
 
 		var name = (String) context.arguments().get("name");
 		
-		var byNameConfig = backupConfig.get().getBackups().stream().filter(backup -> backup.getName().equals(name)).findFirst();
+		var byNameConfig = backupConfig.get().getBackup(name);
 		
 		if (byNameConfig.isEmpty()) {
 			log.warn("backup config for '{}' not found", name);
 			return;
 		}
 		
-		var ftpConfigOpt = byNameConfig.get().getPost_processing().stream().filter(processing -> processing.getType().equals("ftp")).findFirst();
+		var ftpConfigOpt = byNameConfig.get().getPostProcessing("ftp");
 		
 		if (ftpConfigOpt.isEmpty()) {
 			log.warn("no ftp config found for '{}'", name);
@@ -81,50 +90,160 @@ public class FTPUpload extends ServerHookSystemRegisterExtensionPoint {
 			return;
 		}
 
+		if (Boolean.TRUE.equals(context.arguments().get("streamed"))) {
+			log.warn("backup {} was streamed without a local archive, nothing to upload via ftp", name);
+			return;
+		}
+
 		var fileName = (String) context.arguments().get("file");
 		var file = Path.of(fileName);
 
-		
+		if (Boolean.TRUE.equals(context.arguments().get("async"))) {
+			// one pool per server and user, sized by its connections
+			var server = "ftp-%s-%s".formatted(ftpConfig.get("host"), ftpConfig.get("username"));
+			PostProcessingExecutor.submit("ftp", server, FTPClientPool.connections(ftpConfig), name, fileName,
+					() -> upload(ftpConfig, name, file));
+			return;
+		}
 		try {
-			ftpClient.connect(
-					(String) ftpConfig.getOrDefault("host", null),
-					(int) ftpConfig.getOrDefault("port", null)
-			);
-			ftpClient.login(
-					(String) ftpConfig.getOrDefault("username", null),
-					(String) ftpConfig.getOrDefault("password", null)
-			);
-
-			if (ftpConfig.containsKey("folder")) {
-				ftpClient.changeWorkingDirectory((String) ftpConfig.get("folder"));
-			}
-			ftpClient.enterLocalPassiveMode();
-			ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+			upload(ftpConfig, name, file);
+		} catch (Exception e) {
+			log.error("", e);
+		}
+	}
 
-			try (InputStream inputStream = Files.newInputStream(file)) {
-				System.out.println("Starte Upload...");
+	private void upload(Map<String, Object> ftpConfig, String name, Path file) throws IOException {
+		var pool = FTPClientPool.of(ftpConfig, clientFactory);
+		int retries = Math.max(0, (int) BackupUtil.parseSize(ftpConfig.get("retries"), DEFAULT_RETRIES));
+		boolean tempName = (boolean) ftpConfig.getOrDefault("temp_name", true);
+		var throttle = Throttle.of("ftp", name);
 
-				boolean done = ftpClient.storeFile(file.getFileName().toString(), inputStream);
-				if (done) {
-					log.debug("Backup ftp upload sucessfull!");
-				} else {
-					log.debug("Upload failed!");
-				}
+		long start = System.nanoTime();
+		try {
+			if (ArchiveVolumes.isDescriptor(file)) {
+				// one volume per pooled connection, each volume is retried on its own
+				ArchiveVolumes.upload(file, FTPClientPool.connections(ftpConfig),
+						volume -> upload(pool, ftpConfig, volume, retries, tempName, throttle));
+			} else {
+				upload(pool, ftpConfig, file, retries, tempName, throttle);
 			}
+		} catch (IOException | RuntimeException e) {
+			BackupMetrics.upload(name, "ftp", System.nanoTime() - start, 0, false);
+			throw e;
+		}
+		BackupMetrics.upload(name, "ftp", System.nanoTime() - start, ArchiveVolumes.archiveSize(file), true);
+		log.debug("backup file uploaded");
+	}
 
-			log.debug("backup file uploaded");
-		} catch (Exception e) {
-			log.error("", e);
-		} finally {
+	private static void upload(FTPClientPool pool, Map<String, Object> ftpConfig, Path file,
+			int retries, boolean tempName, Throttle throttle) throws IOException {
+		for (int attempt = 0;; attempt++) {
+			FTPClientPool.Connection connection = null;
+			boolean broken = true;
+			try {
+				// connect and login failures are retried as well
+				connection = pool.borrow();
+				var ftpClient = connection.client();
+				String folder = folder((String) ftpConfig.get("folder"), connection.home());
+				if (folder != null && !ftpClient.changeWorkingDirectory(folder)) {
+					throw new IOException("ftp folder %s not found: %s".formatted(folder, ftpClient.getReplyString()));
+				}
+				store(ftpClient, file, file.getFileName().toString(), tempName, throttle);
+				broken = false;
+				return;
+			} catch (IOException e) {
+				if (attempt >= retries) {
+					throw e;
+				}
+				log.warn("ftp upload of {} failed, resuming ({}/{})", file.getFileName(), attempt + 1, retries, e);
+			} finally {
+				if (connection != null) {
+					pool.release(connection, broken);
+				}
+			}
 			try {
-				if (ftpClient.isConnected()) {
-					ftpClient.logout();
-					ftpClient.disconnect();
+				Thread.sleep(RETRY_DELAY_MILLIS << attempt);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("ftp upload of %s interrupted".formatted(file.getFileName()), e);
+			}
+		}
+	}
+
+	/**
+	 * A relative folder is resolved against the home of the login, a pooled
+	 * connection is still in the folder of its last upload.
+	 */
+	static String folder(String folder, String home) {
+		if (folder == null || home == null || folder.startsWith("/")) {
+			return folder != null ? folder : home;
+		}
+		return home.endsWith("/") ? home + folder : home + "/" + folder;
+	}
+
+	/**
+	 * Uploads the file, continues a partial upload of an earlier attempt with
+	 * {@code APPE}. With a temp name the file is stored as
+	 * {@code <name>.part} and renamed after the size is verified, a partial
+	 * file never has the name of a complete backup. Servers without
+	 * {@code SIZE} always get the whole file and the size is not verified.
+	 */
+	static void store(FTPClient ftpClient, Path file, String remoteName, boolean tempName, Throttle throttle) throws IOException {
+		long size = Files.size(file);
+		String target = tempName ? remoteName + PART_SUFFIX : remoteName;
+
+		long offset = remoteSize(ftpClient, target);
+		if (offset == UNKNOWN_SIZE) {
+			// without the remote size a resume could corrupt the file
+			offset = 0;
+		} else if (offset > size) {
+			log.debug("remote {} is bigger than the local file, uploading again", target);
+			offset = 0;
+		}
+		if (offset < size) {
+			if (offset > 0) {
+				log.debug("resuming upload of {} at {} of {} bytes", target, offset, size);
+			}
+			try (InputStream inputStream = throttle.wrap(Files.newInputStream(file))) {
+				inputStream.skipNBytes(offset);
+				boolean done = offset > 0
+						? ftpClient.appendFile(target, inputStream)
+						: ftpClient.storeFile(target, inputStream);
+				if (!done) {
+					throw new IOException("ftp upload of %s failed: %s".formatted(target, ftpClient.getReplyString()));
 				}
-			} catch (Exception ex) {
-				log.warn("error while closing ftp connection", ex);
 			}
 		}
+
+		long uploaded = remoteSize(ftpClient, target);
+		if (uploaded == UNKNOWN_SIZE) {
+			log.debug("size of {} unknown, upload not verified", target);
+		} else if (uploaded != size) {
+			throw new IOException("ftp upload of %s incomplete: %d of %d bytes".formatted(target, uploaded, size));
+		}
+		if (tempName) {
+			// some servers do not replace on rename
+			ftpClient.deleteFile(remoteName);
+			if (!ftpClient.rename(target, remoteName)) {
+				throw new IOException("renaming %s to %s failed: %s".formatted(target, remoteName, ftpClient.getReplyString()));
+			}
+		}
+	}
+
+	/**
+	 * @return size of the remote file, {@link #UNKNOWN_SIZE} if it does not
+	 * exist or the server does not answer {@code SIZE}
+	 */
+	private static long remoteSize(FTPClient ftpClient, String name) throws IOException {
+		String size = ftpClient.getSize(name);
+		if (size == null || size.isBlank()) {
+			return UNKNOWN_SIZE;
+		}
+		try {
+			return Long.parseLong(size.trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid size %s of %s".formatted(size, name), e);
+		}
 	}
 
 }
@@ -0,0 +1,161 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content defined chunking after FastCDC (Xia et al., 2016). Cut points
+ * only depend on the bytes around them, so inserting or removing data in a
+ * file only changes the chunks next to the modification.
+ *
+ * <ul>
+ * <li>gear rolling hash, one shift and one add per byte</li>
+ * <li>the first {@code minSize} bytes of a chunk are not hashed</li>
+ * <li>normalized chunking: a stricter mask below the average size and a
+ * looser one above, chunk sizes cluster around the average</li>
+ * </ul>
+ *
+ * @author thmar
+ */
+public class FastCdcChunker {
+
+	public static final int DEFAULT_AVERAGE_SIZE = 1024 * 1024;
+
+	private static final int MIN_AVERAGE_SIZE = 256;
+	private static final int NORMALIZATION = 2;
+
+	private static final long[] GEAR = gearTable(0x636d732d6261636bL);
+
+	@FunctionalInterface
+	public interface ChunkConsumer {
+
+		void accept(byte[] data, int offset, int length) throws IOException;
+	}
+
+	private final int minSize;
+	private final int averageSize;
+	private final int maxSize;
+	private final long maskSmall;
+	private final long maskLarge;
+
+	/**
+	 * @param averageSize average chunk size, rounded down to a power of two.
+	 * Chunks are between a quarter and four times this size.
+	 */
+	public FastCdcChunker(int averageSize) {
+		int bits = 31 - Integer.numberOfLeadingZeros(Math.max(averageSize, MIN_AVERAGE_SIZE));
+		this.averageSize = 1 << bits;
+		this.minSize = this.averageSize / 4;
+		this.maxSize = this.averageSize * 4;
+		this.maskSmall = mask(bits + NORMALIZATION);
+		this.maskLarge = mask(bits - NORMALIZATION);
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getAverageSize() {
+		return averageSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Splits the stream into chunks. The buffer passed to the consumer is
+	 * reused, the consumer has to copy the data it wants to keep.
+	 */
+	public void split(InputStream in, ChunkConsumer consumer) throws IOException {
+		byte[] buffer = new byte[maxSize];
+		int length = 0;
+		boolean eof = false;
+		while (true) {
+			if (!eof) {
+				int read = in.readNBytes(buffer, length, maxSize - length);
+				length += read;
+				eof = length < maxSize;
+			}
+			if (length == 0) {
+				return;
+			}
+			int cut = cutPoint(buffer, length);
+			consumer.accept(buffer, 0, cut);
+			length -= cut;
+			System.arraycopy(buffer, cut, buffer, 0, length);
+		}
+	}
+
+	/**
+	 * @return length of the next chunk starting at the beginning of the buffer
+	 */
+	int cutPoint(byte[] data, int length) {
+		if (length <= minSize) {
+			return length;
+		}
+		int end = Math.min(length, maxSize);
+		int normal = Math.min(end, averageSize);
+		long hash = 0;
+		int i = minSize;
+		for (; i < normal; i++) {
+			hash = (hash << 1) + GEAR[data[i] & 0xff];
+			if ((hash & maskSmall) == 0) {
+				return i + 1;
+			}
+		}
+		for (; i < end; i++) {
+			hash = (hash << 1) + GEAR[data[i] & 0xff];
+			if ((hash & maskLarge) == 0) {
+				return i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * The gear hash shifts left, so the upper bits depend on the most bytes.
+	 */
+	private static long mask(int bits) {
+		return -1L << (Long.SIZE - bits);
+	}
+
+	/**
+	 * splitmix64, the table must never change or existing repositories lose
+	 * all deduplication
+	 */
+	private static long[] gearTable(long seed) {
+		long[] table = new long[256];
+		long state = seed;
+		for (int i = 0; i < table.length; i++) {
+			state += 0x9e3779b97f4a7c15L;
+			long z = state;
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			table[i] = z ^ (z >>> 31);
+		}
+		return table;
+	}
+}
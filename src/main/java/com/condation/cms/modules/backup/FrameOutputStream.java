@@ -0,0 +1,140 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+/**
+ * Compresses into independent frames, e.g. gzip members, which decoders
+ * read as one stream. A new frame is only started at {@link #boundary()},
+ * so the writer decides where a reader may start decompressing.
+ *
+ * @author thmar
+ */
+class FrameOutputStream extends OutputStream {
+
+	private final OutputStream out;
+	private final PackerOptions frameOptions;
+	private final long frameSize;
+
+	private OutputStream frame;
+	private long frameOffset;
+	private long written;
+	private long inFrame;
+
+	/**
+	 * @param frameSize uncompressed bytes after which {@link #boundary()}
+	 * starts a new frame
+	 */
+	FrameOutputStream(OutputStream out, PackerOptions options, long frameSize) {
+		this.out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				written++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				written += len;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				out.close();
+			}
+		};
+		// frames are small, compressed on the writing thread
+		this.frameOptions = new PackerOptions();
+		this.frameOptions.setCodec(options.getCodec());
+		this.frameOptions.setCompressionLevel(options.getCompressionLevel());
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * Ends the frame if it holds at least the frame size.
+	 */
+	void boundary() throws IOException {
+		if (frame != null && inFrame >= frameSize) {
+			endFrame();
+		}
+	}
+
+	/**
+	 * @return offset of the current frame in the compressed output
+	 */
+	long frameOffset() {
+		return frame != null ? frameOffset : written;
+	}
+
+	/**
+	 * @return uncompressed bytes in the current frame
+	 */
+	long inFrameOffset() {
+		return frame != null ? inFrame : 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (frame == null) {
+			frameOffset = written;
+			inFrame = 0;
+			frame = frameOptions.getCodec().compress(CloseShieldOutputStream.wrap(out), frameOptions);
+		}
+		frame.write(b, off, len);
+		inFrame += len;
+	}
+
+	/**
+	 * Does not flush the frame, that would add bytes to it.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (frame != null) {
+			endFrame();
+		}
+		out.close();
+	}
+
+	private void endFrame() throws IOException {
+		frame.close();
+		frame = null;
+	}
+}
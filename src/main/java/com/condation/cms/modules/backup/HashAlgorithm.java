@@ -0,0 +1,116 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import net.jpountz.xxhash.StreamingXXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Hash used by the {@link HashEngine}. SHA-256 for checksums that leave the
+ * server, xxHash64 where the hash only detects changes.
+ *
+ * @author thmar
+ */
+public enum HashAlgorithm {
+	SHA256 {
+		@Override
+		Hasher newHasher() throws IOException {
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				return new Hasher() {
+					@Override
+					public void update(ByteBuffer buffer) {
+						digest.update(buffer);
+					}
+
+					@Override
+					public byte[] digest() {
+						return digest.digest();
+					}
+				};
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IOException("error creating hash", ex);
+			}
+		}
+	},
+	/**
+	 * non cryptographic, several times faster than SHA-256
+	 */
+	XXHASH64 {
+		@Override
+		Hasher newHasher() {
+			StreamingXXHash64 hash = XXHashFactory.fastestInstance().newStreamingHash64(0);
+			return new Hasher() {
+				private byte[] scratch;
+
+				@Override
+				public void update(ByteBuffer buffer) {
+					if (buffer.hasArray()) {
+						hash.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+						buffer.position(buffer.limit());
+						return;
+					}
+					// mapped buffers are copied in small steps, the streaming hash takes arrays only
+					if (scratch == null) {
+						scratch = new byte[64 * 1024];
+					}
+					while (buffer.hasRemaining()) {
+						int length = Math.min(scratch.length, buffer.remaining());
+						buffer.get(scratch, 0, length);
+						hash.update(scratch, 0, length);
+					}
+				}
+
+				@Override
+				public byte[] digest() {
+					return ByteBuffer.allocate(Long.BYTES).putLong(hash.getValue()).array();
+				}
+			};
+		}
+	};
+
+	public static HashAlgorithm of(String value) {
+		if (value == null || value.isBlank()) {
+			return SHA256;
+		}
+		return switch (value.trim().toLowerCase(Locale.ROOT)) {
+			case "sha256", "sha-256" -> SHA256;
+			case "xxhash", "xxhash64", "xxh64" -> XXHASH64;
+			default -> throw new IllegalArgumentException("unknown hash: " + value);
+		};
+	}
+
+	abstract Hasher newHasher() throws IOException;
+
+	interface Hasher {
+
+		void update(ByteBuffer buffer);
+
+		byte[] digest();
+	}
+}
@@ -0,0 +1,168 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Hashes files. Small files are read at once, bigger ones are memory mapped
+ * in windows, so no data is copied through stream buffers.
+ * <p>
+ * In tree mode files above the tree threshold are split into leaves that are
+ * hashed in parallel; the result is the hash over the leaf hashes and the
+ * file size. It differs from the plain hash of the file, so tree hashes are
+ * only used where the value stays on the server, like the fingerprint.
+ *
+ * @author thmar
+ */
+public class HashEngine {
+
+	public static final long DEFAULT_TREE_THRESHOLD = 64L * 1024 * 1024;
+	static final long DEFAULT_LEAF_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * files up to this size are read into the heap
+	 */
+	private static final long MAP_THRESHOLD = 1024 * 1024;
+	private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+	private static final HashEngine SHA256 = new HashEngine(HashAlgorithm.SHA256, Long.MAX_VALUE, DEFAULT_LEAF_SIZE);
+
+	private final HashAlgorithm algorithm;
+	private final long treeThreshold;
+	private final long leafSize;
+
+	HashEngine(HashAlgorithm algorithm, long treeThreshold, long leafSize) {
+		this.algorithm = algorithm;
+		this.treeThreshold = treeThreshold;
+		this.leafSize = leafSize;
+	}
+
+	/**
+	 * plain SHA-256, the same as {@code sha256sum}
+	 */
+	public static HashEngine sha256() {
+		return SHA256;
+	}
+
+	/**
+	 * @param tree hash files above {@link #DEFAULT_TREE_THRESHOLD} in
+	 * parallel leaves
+	 */
+	public static HashEngine of(HashAlgorithm algorithm, boolean tree) {
+		if (algorithm == HashAlgorithm.SHA256 && !tree) {
+			return SHA256;
+		}
+		return new HashEngine(algorithm, tree ? DEFAULT_TREE_THRESHOLD : Long.MAX_VALUE, DEFAULT_LEAF_SIZE);
+	}
+
+	public HashAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	public byte[] hash(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size <= MAP_THRESHOLD) {
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				var hasher = algorithm.newHasher();
+				hasher.update(buffer.flip());
+				return hasher.digest();
+			}
+			if (size <= treeThreshold) {
+				return hashRange(channel, 0, size);
+			}
+			return hashTree(channel, size);
+		}
+	}
+
+	public String hashHex(Path file) throws IOException {
+		return BackupUtil.bytesToHex(hash(file));
+	}
+
+	/**
+	 * Hashes the files in parallel.
+	 *
+	 * @return hashes in the order of the files
+	 */
+	public List<byte[]> hashAll(List<Path> files) throws IOException {
+		try {
+			return files.parallelStream()
+					.map(this::hashUnchecked)
+					.toList();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private byte[] hashTree(FileChannel channel, long size) throws IOException {
+		int leaves = (int) ((size + leafSize - 1) / leafSize);
+		List<byte[]> leafHashes;
+		try {
+			leafHashes = IntStream.range(0, leaves)
+					.parallel()
+					.mapToObj(leaf -> {
+						long offset = leaf * leafSize;
+						try {
+							return hashRange(channel, offset, Math.min(leafSize, size - offset));
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})
+					.toList();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		var root = algorithm.newHasher();
+		leafHashes.forEach(leaf -> root.update(ByteBuffer.wrap(leaf)));
+		root.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+		return root.digest();
+	}
+
+	private byte[] hashRange(FileChannel channel, long offset, long length) throws IOException {
+		var hasher = algorithm.newHasher();
+		long end = offset + length;
+		for (long position = offset; position < end; position += MAP_WINDOW) {
+			hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, end - position)));
+		}
+		return hasher.digest();
+	}
+
+	private byte[] hashUnchecked(Path file) {
+		try {
+			return hash(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
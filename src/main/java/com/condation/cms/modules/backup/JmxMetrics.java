@@ -0,0 +1,386 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the metrics per backup and upload target and registers them as
+ * MXBeans in the platform MBean server when they are first reported.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class JmxMetrics implements MetricsSink {
+
+	public static final String DOMAIN = "com.condation.cms.modules.backup";
+	private static final double MB = 1024d * 1024;
+
+	private static final JmxMetrics SHARED = new JmxMetrics(ManagementFactory.getPlatformMBeanServer());
+
+	private final MBeanServer server;
+	private final Map<String, BackupStats> backups = new ConcurrentHashMap<>();
+	private final Map<String, UploadStats> uploads = new ConcurrentHashMap<>();
+
+	JmxMetrics(MBeanServer server) {
+		this.server = server;
+	}
+
+	public static JmxMetrics shared() {
+		return SHARED;
+	}
+
+	@Override
+	public void phase(String backup, BackupMetrics.Phase phase, long nanos, long bytes) {
+		backup(backup).phases.computeIfAbsent(phase, key -> new AtomicLong()).addAndGet(nanos);
+	}
+
+	@Override
+	public void run(String backup, BackupMetrics.RunSummary summary) {
+		var stats = backup(backup);
+		stats.runs.incrementAndGet();
+		long now = summary.finished().toEpochMilli();
+		if (!summary.isSuccess()) {
+			stats.failures.incrementAndGet();
+			stats.lastFailure.set(now);
+			stats.lastError.set(String.valueOf(summary.error().getMessage()));
+			return;
+		}
+		stats.lastSuccess.set(now);
+		if (summary.archived()) {
+			stats.last.set(summary);
+			stats.files.addAndGet(summary.files());
+			stats.bytesIn.addAndGet(summary.bytesIn());
+			stats.bytesOut.addAndGet(summary.bytesOut());
+		}
+	}
+
+	@Override
+	public void upload(String backup, String target, long nanos, long bytes, boolean success) {
+		var stats = upload(backup, target);
+		long now = System.currentTimeMillis();
+		stats.uploads.incrementAndGet();
+		stats.nanos.addAndGet(nanos);
+		stats.lastDurationNanos.set(nanos);
+		if (success) {
+			stats.bytes.addAndGet(bytes);
+			stats.lastSuccess.set(now);
+			stats.lastThroughput.set(Double.doubleToLongBits(nanos > 0 ? bytes / MB * 1_000_000_000d / nanos : 0));
+		} else {
+			stats.failures.incrementAndGet();
+			stats.lastFailure.set(now);
+		}
+	}
+
+	@Override
+	public void status(PostProcessingExecutor.Status status) {
+		upload(status.backup(), status.target()).status.set(status);
+		if (status.state() == PostProcessingExecutor.State.FAILED) {
+			// the archive is written, but the backup is not where it should be
+			var stats = backup(status.backup());
+			stats.lastFailure.set(status.updated().toEpochMilli());
+			stats.lastError.set("%s of %s failed: %s".formatted(status.target(), status.file(), status.error()));
+		}
+	}
+
+	/**
+	 * @return the metrics of the backup, null if it has not reported yet
+	 */
+	BackupStatsMXBean backupStats(String backup) {
+		return backups.get(backup);
+	}
+
+	/**
+	 * @return the metrics of the uploads, null if there was none yet
+	 */
+	UploadStatsMXBean uploadStats(String backup, String target) {
+		return uploads.get(backup + "/" + target);
+	}
+
+	/**
+	 * Removes the MBeans, called when the server stops.
+	 */
+	public void unregisterAll() {
+		for (var name : Map.copyOf(backups).keySet()) {
+			unregister("type=Backup,name=" + ObjectName.quote(name));
+		}
+		backups.clear();
+		for (var key : Map.copyOf(uploads).keySet()) {
+			int separator = key.lastIndexOf('/');
+			unregister("type=Upload,backup=%s,target=%s".formatted(
+					ObjectName.quote(key.substring(0, separator)), ObjectName.quote(key.substring(separator + 1))));
+		}
+		uploads.clear();
+	}
+
+	private UploadStats upload(String backup, String target) {
+		return uploads.computeIfAbsent(backup + "/" + target,
+				key -> register(new UploadStats(), "type=Upload,backup=%s,target=%s".formatted(ObjectName.quote(backup), ObjectName.quote(target))));
+	}
+
+	private BackupStats backup(String backup) {
+		return backups.computeIfAbsent(backup,
+				key -> register(new BackupStats(), "type=Backup,name=" + ObjectName.quote(key)));
+	}
+
+	private <T> T register(T bean, String properties) {
+		try {
+			var name = new ObjectName(DOMAIN + ":" + properties);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(bean, name);
+		} catch (JMException e) {
+			log.warn("error registering metrics {}", properties, e);
+		}
+		return bean;
+	}
+
+	private void unregister(String properties) {
+		try {
+			var name = new ObjectName(DOMAIN + ":" + properties);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			log.warn("error unregistering metrics {}", properties, e);
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	static class BackupStats implements BackupStatsMXBean {
+
+		private final AtomicLong runs = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong lastSuccess = new AtomicLong();
+		private final AtomicLong lastFailure = new AtomicLong();
+		private final AtomicReference<String> lastError = new AtomicReference<>();
+		private final AtomicReference<BackupMetrics.RunSummary> last = new AtomicReference<>();
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong bytesIn = new AtomicLong();
+		private final AtomicLong bytesOut = new AtomicLong();
+		private final Map<BackupMetrics.Phase, AtomicLong> phases = new ConcurrentHashMap<>();
+
+		private <T> T last(Function<BackupMetrics.RunSummary, T> value, T none) {
+			var summary = last.get();
+			return summary != null ? value.apply(summary) : none;
+		}
+
+		private long phase(BackupMetrics.Phase phase) {
+			var nanos = phases.get(phase);
+			return nanos != null ? millis(nanos.get()) : 0;
+		}
+
+		@Override
+		public long getRuns() {
+			return runs.get();
+		}
+
+		@Override
+		public long getFailures() {
+			return failures.get();
+		}
+
+		@Override
+		public long getLastSuccess() {
+			return lastSuccess.get();
+		}
+
+		@Override
+		public long getLastFailure() {
+			return lastFailure.get();
+		}
+
+		@Override
+		public String getLastError() {
+			return lastError.get();
+		}
+
+		@Override
+		public long getLastDurationMillis() {
+			return last(summary -> millis(summary.nanos()), 0L);
+		}
+
+		@Override
+		public long getLastFiles() {
+			return last(BackupMetrics.RunSummary::files, 0L);
+		}
+
+		@Override
+		public long getLastBytesIn() {
+			return last(BackupMetrics.RunSummary::bytesIn, 0L);
+		}
+
+		@Override
+		public long getLastBytesOut() {
+			return last(BackupMetrics.RunSummary::bytesOut, 0L);
+		}
+
+		@Override
+		public double getLastCompressionRatio() {
+			return last(BackupMetrics.RunSummary::compressionRatio, 0d);
+		}
+
+		@Override
+		public double getLastThroughputMBps() {
+			return last(summary -> summary.throughput() / MB, 0d);
+		}
+
+		@Override
+		public long getFiles() {
+			return files.get();
+		}
+
+		@Override
+		public long getBytesIn() {
+			return bytesIn.get();
+		}
+
+		@Override
+		public long getBytesOut() {
+			return bytesOut.get();
+		}
+
+		@Override
+		public long getScanMillis() {
+			return phase(BackupMetrics.Phase.SCAN);
+		}
+
+		@Override
+		public long getReadMillis() {
+			return phase(BackupMetrics.Phase.READ);
+		}
+
+		@Override
+		public long getTarMillis() {
+			return phase(BackupMetrics.Phase.TAR);
+		}
+
+		@Override
+		public long getCompressMillis() {
+			return phase(BackupMetrics.Phase.COMPRESS);
+		}
+
+		@Override
+		public long getHashMillis() {
+			return phase(BackupMetrics.Phase.HASH);
+		}
+
+		@Override
+		public long getWriteMillis() {
+			return phase(BackupMetrics.Phase.WRITE);
+		}
+
+		@Override
+		public long getVerifyMillis() {
+			return phase(BackupMetrics.Phase.VERIFY);
+		}
+	}
+
+	static class UploadStats implements UploadStatsMXBean {
+
+		private final AtomicLong uploads = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong lastSuccess = new AtomicLong();
+		private final AtomicLong lastFailure = new AtomicLong();
+		private final AtomicLong lastDurationNanos = new AtomicLong();
+		/**
+		 * bits of the double
+		 */
+		private final AtomicLong lastThroughput = new AtomicLong();
+		private final AtomicReference<PostProcessingExecutor.Status> status = new AtomicReference<>();
+
+		@Override
+		public String getState() {
+			var current = status.get();
+			return current != null ? current.state().name() : null;
+		}
+
+		@Override
+		public String getFile() {
+			var current = status.get();
+			return current != null ? current.file() : null;
+		}
+
+		@Override
+		public String getError() {
+			var current = status.get();
+			return current != null ? current.error() : null;
+		}
+
+		@Override
+		public long getUploads() {
+			return uploads.get();
+		}
+
+		@Override
+		public long getFailures() {
+			return failures.get();
+		}
+
+		@Override
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		@Override
+		public long getMillis() {
+			return millis(nanos.get());
+		}
+
+		@Override
+		public long getLastSuccess() {
+			return lastSuccess.get();
+		}
+
+		@Override
+		public long getLastFailure() {
+			return lastFailure.get();
+		}
+
+		@Override
+		public long getLastDurationMillis() {
+			return millis(lastDurationNanos.get());
+		}
+
+		@Override
+		public double getLastThroughputMBps() {
+			return Double.longBitsToDouble(lastThroughput.get());
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Receives the metrics of the backups, see {@link BackupMetrics}. Sinks are
+ * registered with {@link BackupMetrics#register(MetricsSink)} or found with
+ * the {@link java.util.ServiceLoader}; they are called on the backup and
+ * upload threads and must not block.
+ *
+ * @author thmar
+ */
+public interface MetricsSink {
+
+	/**
+	 * @param nanos time spent in the phase
+	 * @param bytes bytes processed in the phase, 0 if not known
+	 */
+	default void phase(String backup, BackupMetrics.Phase phase, long nanos, long bytes) {
+	}
+
+	/**
+	 * A run ended, successful or not; skipped runs are successful runs
+	 * without archive.
+	 */
+	default void run(String backup, BackupMetrics.RunSummary summary) {
+	}
+
+	/**
+	 * An upload of the post processing ended.
+	 *
+	 * @param target type of the post processing, like {@code s3} or
+	 * {@code ftp}
+	 */
+	default void upload(String backup, String target, long nanos, long bytes, boolean success) {
+	}
+
+	/**
+	 * A post processing was queued, started or ended.
+	 */
+	default void status(PostProcessingExecutor.Status status) {
+	}
+}
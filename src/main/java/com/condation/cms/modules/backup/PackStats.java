@@ -0,0 +1,196 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Timings of one {@link TarGzPacker} run, set in
+ * {@link PackerOptions#setStats(PackStats)}. Reading, hashing, compressing
+ * and writing happen in one pass, each stage of the stream chain is timed
+ * and the time of the stages below it is subtracted. Only the archive
+ * writer thread updates the stats.
+ *
+ * @author thmar
+ */
+@Getter
+public class PackStats {
+
+	private long files;
+	private long bytesIn;
+	private long bytesOut;
+	private long readNanos;
+	private long hashNanos;
+	private long compressNanos;
+	private long writeNanos;
+	private long tarNanos;
+
+	@Getter(AccessLevel.NONE)
+	private final Map<Stage, Timed> stages = new EnumMap<>(Stage.class);
+
+	void file(long size) {
+		files++;
+		bytesIn += size;
+	}
+
+	void read(long nanos) {
+		readNanos += nanos;
+	}
+
+	void hash(long nanos) {
+		hashNanos += nanos;
+	}
+
+	/**
+	 * Splits the time of the stream chain into the phases.
+	 *
+	 * @param totalNanos time of the whole pack, including closing the
+	 * streams
+	 */
+	void finish(long totalNanos) {
+		long tarHash = nanos(Stage.TAR_HASH);
+		long compress = nanos(Stage.COMPRESS);
+		long archiveHash = nanos(Stage.ARCHIVE_HASH);
+		long write = nanos(Stage.WRITE);
+		// what is not reading, hashing files or below the tar is the tar itself
+		tarNanos += Math.max(0, totalNanos - readNanos - hashNanos - tarHash);
+		hashNanos += tarHash - compress + archiveHash - write;
+		compressNanos += compress - archiveHash;
+		writeNanos += write;
+		bytesOut += stages.containsKey(Stage.WRITE) ? stages.get(Stage.WRITE).bytes : 0;
+		stages.clear();
+	}
+
+	/**
+	 * The uncompressed archive of the {@link ZeroCopyTarWriter}, all time is
+	 * tar time.
+	 */
+	void finish(long totalNanos, long archiveBytes) {
+		tarNanos += totalNanos;
+		bytesOut += archiveBytes;
+	}
+
+	public Map<BackupMetrics.Phase, Long> phases() {
+		Map<BackupMetrics.Phase, Long> phases = new EnumMap<>(BackupMetrics.Phase.class);
+		phases.put(BackupMetrics.Phase.READ, readNanos);
+		phases.put(BackupMetrics.Phase.TAR, tarNanos);
+		phases.put(BackupMetrics.Phase.COMPRESS, compressNanos);
+		phases.put(BackupMetrics.Phase.HASH, hashNanos);
+		phases.put(BackupMetrics.Phase.WRITE, writeNanos);
+		return phases;
+	}
+
+	/**
+	 * Stages of the stream chain, each includes the stages below it.
+	 */
+	enum Stage {
+		/**
+		 * into the tar digest
+		 */
+		TAR_HASH,
+		/**
+		 * into the compressor
+		 */
+		COMPRESS,
+		/**
+		 * into the archive digest
+		 */
+		ARCHIVE_HASH,
+		/**
+		 * into the archive output
+		 */
+		WRITE
+	}
+
+	/**
+	 * Times the writes into the stream, and flush and close, where the
+	 * compressors write their last block.
+	 *
+	 * @return the stream itself without stats
+	 */
+	static OutputStream timed(OutputStream out, PackStats stats, Stage stage) {
+		if (stats == null) {
+			return out;
+		}
+		Timed timed = new Timed(out);
+		stats.stages.put(stage, timed);
+		return timed;
+	}
+
+	private long nanos(Stage stage) {
+		Timed timed = stages.get(stage);
+		return timed != null ? timed.nanos : 0;
+	}
+
+	private static class Timed extends FilterOutputStream {
+
+		private long nanos;
+		private long bytes;
+		private boolean closed;
+
+		Timed(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			out.write(b, off, len);
+			nanos += System.nanoTime() - start;
+			bytes += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			long start = System.nanoTime();
+			out.flush();
+			nanos += System.nanoTime() - start;
+		}
+
+		@Override
+		public void close() throws IOException {
+			// try-with-resources closes every stream of the chain again
+			if (closed) {
+				return;
+			}
+			closed = true;
+			long start = System.nanoTime();
+			try (OutputStream stream = out) {
+				stream.flush();
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import lombok.Data;
+
+/**
+ * Options for {@link TarGzPacker} and {@link ChunkPacker}.
+ *
+ * @author thmar
+ */
+@Data
+public class PackerOptions {
+
+	public static final int DEFAULT_PREFETCH_THREADS = 8;
+	public static final int DEFAULT_PREFETCH_BUFFER = 32 * 1024 * 1024;
+	public static final long DEFAULT_FRAME_SIZE = 4L * 1024 * 1024;
+
+	private CompressionCodec codec = CompressionCodec.GZIP;
+	/**
+	 * null uses the default level of the codec
+	 */
+	private Integer compressionLevel;
+	private int compressionThreads = 1;
+	private int compressionBlockSize = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+	/**
+	 * calculate a SHA-256 for every file while it is written
+	 */
+	private boolean entryHashes = false;
+	/**
+	 * writes the SHA-256 of every file as {@link TarGzPacker#CHECKSUMS_ENTRY}
+	 * at the end of the archive, for {@link ArchiveRestorer}
+	 */
+	private boolean checksums = false;
+	/**
+	 * average chunk size of the {@link ChunkPacker}
+	 */
+	private int chunkSize = FastCdcChunker.DEFAULT_AVERAGE_SIZE;
+	/**
+	 * threads reading files ahead of the tar writer, 0 reads on the writer
+	 */
+	private int prefetchThreads = DEFAULT_PREFETCH_THREADS;
+	/**
+	 * bytes read ahead at most
+	 */
+	private int prefetchBuffer = DEFAULT_PREFETCH_BUFFER;
+	/**
+	 * splits the archive into volumes of this size, 0 writes one file
+	 */
+	private long maxVolumeSize = 0;
+	/**
+	 * compresses in independent frames and writes a {@link SeekableIndex}
+	 */
+	private boolean seekable = false;
+	/**
+	 * uncompressed bytes per frame of a seekable archive
+	 */
+	private long frameSize = DEFAULT_FRAME_SIZE;
+	/**
+	 * collects the time per phase if set, see {@link PackStats}
+	 */
+	private PackStats stats;
+	/**
+	 * limits reading the sources
+	 */
+	private Throttle readThrottle = Throttle.NONE;
+	/**
+	 * limits writing the archive or chunks
+	 */
+	private Throttle writeThrottle = Throttle.NONE;
+
+	public static PackerOptions defaults() {
+		return new PackerOptions();
+	}
+
+	public static PackerOptions of(Configuration.Backup backup) {
+		var options = new PackerOptions();
+		options.setCodec(CompressionCodec.of(backup.getCompression()));
+		options.setCompressionLevel(options.getCodec().level(backup.getCompression_level()));
+		options.setCompressionThreads(Math.max(1, backup.getCompression_threads()));
+		options.setCompressionBlockSize((int) BackupUtil.parseSize(
+				backup.getCompression_block_size(),
+				ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE));
+		options.setChunkSize((int) BackupUtil.parseSize(
+				backup.getChunk_size(),
+				FastCdcChunker.DEFAULT_AVERAGE_SIZE));
+		if (backup.getPrefetch_threads() != null) {
+			options.setPrefetchThreads(Math.max(0, backup.getPrefetch_threads()));
+		}
+		options.setPrefetchBuffer((int) Math.min(Integer.MAX_VALUE, BackupUtil.parseSize(
+				backup.getPrefetch_buffer(),
+				DEFAULT_PREFETCH_BUFFER)));
+		options.setChecksums(backup.isChecksums());
+		options.setSeekable(backup.isSeekable());
+		options.setFrameSize(Math.max(1, BackupUtil.parseSize(backup.getFrame_size(), DEFAULT_FRAME_SIZE)));
+		options.setMaxVolumeSize(Math.max(0, BackupUtil.parseSize(backup.getMax_volume_size(), 0)));
+		options.setReadThrottle(Throttle.of(Throttle.READ, backup.getName()));
+		options.setWriteThrottle(Throttle.of(Throttle.WRITE, backup.getName()));
+		return options;
+	}
+}
@@ -0,0 +1,53 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Locale;
+
+/**
+ * Where a backup run writes its data.
+ *
+ * @author thmar
+ */
+public enum PackerType {
+	/**
+	 * one compressed tar archive per run, {@link TarGzPacker}
+	 */
+	TAR,
+	/**
+	 * deduplicated chunks and a snapshot per run in a shared repository,
+	 * {@link ChunkPacker}
+	 */
+	CHUNKS;
+
+	public static PackerType of(String packer) {
+		if (packer == null || packer.isBlank()) {
+			return TAR;
+		}
+		return switch (packer.trim().toLowerCase(Locale.ROOT)) {
+			case "tar", "archive" -> TAR;
+			case "chunks", "repository" -> CHUNKS;
+			default -> throw new IllegalArgumentException("unknown packer: " + packer);
+		};
+	}
+}
@@ -0,0 +1,217 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that deflates blocks of the input on a worker pool
+ * (like pigz). Every block is primed with the last 32 KB of the previous
+ * block and ends with a sync flush, so the compressed blocks can be
+ * concatenated into one standard gzip member.
+ *
+ * @author thmar
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final int MIN_BLOCK_SIZE = DICTIONARY_SIZE;
+
+	private static final byte[] HEADER = {
+		(byte) 0x1f, (byte) 0x8b, // magic
+		Deflater.DEFLATED, // compression method
+		0, // flags
+		0, 0, 0, 0, // mtime, 0 keeps the archive reproducible
+		0, // extra flags
+		(byte) 0xff // os: unknown, same as GzipCompressorOutputStream
+	};
+
+	private final OutputStream out;
+	private final ExecutorService executor;
+	private final int blockSize;
+	private final int level;
+	private final int maxPending;
+
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final CRC32 crc = new CRC32();
+	private long uncompressedSize = 0;
+
+	private byte[] block;
+	private int blockLength = 0;
+	private byte[] dictionary = null;
+
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) throws IOException {
+		this.out = out;
+		this.blockSize = Math.max(blockSize, MIN_BLOCK_SIZE);
+		this.level = level;
+		this.maxPending = threads * 2;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("backup-gzip-%d")
+				.setDaemon(true)
+				.build());
+		this.block = new byte[this.blockSize];
+
+		out.write(HEADER);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+		crc.update(b, off, len);
+		uncompressedSize += len;
+
+		while (len > 0) {
+			int count = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, count);
+			blockLength += count;
+			off += count;
+			len -= count;
+
+			if (blockLength == blockSize) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/**
+	 * Blocks are only compressed once they are full, flush does not force
+	 * a partial block.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submitBlock(true);
+			while (!pending.isEmpty()) {
+				writeNext();
+			}
+			writeTrailer();
+			out.close();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void submitBlock(boolean last) throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		final byte[] dict = dictionary;
+
+		if (length >= DICTIONARY_SIZE) {
+			dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+		} else if (length > 0) {
+			dictionary = Arrays.copyOfRange(data, 0, length);
+		}
+
+		pending.add(executor.submit(() -> deflate(data, length, dict, last)));
+		block = new byte[blockSize];
+		blockLength = 0;
+
+		while (pending.size() >= maxPending) {
+			writeNext();
+		}
+	}
+
+	private byte[] deflate(byte[] data, int length, byte[] dict, boolean last) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (dict != null) {
+				deflater.setDictionary(dict);
+			}
+			deflater.setInput(data, 0, length);
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[Math.max(length / 2, 8192)];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int count = deflater.deflate(buffer);
+					compressed.write(buffer, 0, count);
+				}
+			} else {
+				int count;
+				do {
+					count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					compressed.write(buffer, 0, count);
+				} while (count == buffer.length);
+			}
+			return compressed.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private void writeNext() throws IOException {
+		try {
+			out.write(pending.poll().get());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("compression interrupted", ex);
+		} catch (ExecutionException ex) {
+			throw new IOException("error compressing block", ex.getCause());
+		}
+	}
+
+	private void writeTrailer() throws IOException {
+		writeInt((int) crc.getValue());
+		writeInt((int) uncompressedSize);
+	}
+
+	private void writeInt(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+}
@@ -0,0 +1,210 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs post processing (uploads) outside of the backup job. Every target
+ * (s3, ftp) has its own pools, so a slow ftp server does not hold back the s3
+ * upload, and the next backup run can start while uploads are still going.
+ * A pool is created per name and number of workers, so servers of a target
+ * get their own pool with their own size. Every state change is reported
+ * with {@link BackupMetrics#status}.
+ * <p>
+ * The tasks per target are bounded by a semaphore: if the workers are busy
+ * and the queue is full, the submitting backup waits until an upload has
+ * finished.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class PostProcessingExecutor {
+
+	public static final int DEFAULT_WORKERS = 2;
+	public static final int DEFAULT_QUEUE_SIZE = 16;
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+	private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+	private static final Map<String, Pool> EXECUTORS = new ConcurrentHashMap<>();
+	private static final Map<String, Status> STATUS = new ConcurrentHashMap<>();
+	private static final Map<String, Integer> ACTIVE_FILES = new ConcurrentHashMap<>();
+
+	public enum State {
+		QUEUED,
+		RUNNING,
+		DONE,
+		FAILED
+	}
+
+	/**
+	 * Last post processing of a backup and target.
+	 *
+	 * @param error message of the failure, null otherwise
+	 */
+	public record Status(String backup, String target, String file, State state, Instant updated, String error) {
+	}
+
+	/**
+	 * @param slots running and queued tasks, at most workers plus queue size
+	 */
+	private record Pool(ThreadPoolExecutor executor, Semaphore slots) {
+	}
+
+	@FunctionalInterface
+	public interface Task {
+
+		void run() throws Exception;
+	}
+
+	/**
+	 * Queues the task in the pool of the target, see
+	 * {@link #submit(String, String, int, String, String, Task)}.
+	 */
+	public static void submit(String target, int workers, String backup, String file, Task task) {
+		submit(target, target, workers, backup, file, task);
+	}
+
+	/**
+	 * Queues the task, blocks while the queue of the pool is full.
+	 *
+	 * @param target type of the post processing, the status is kept per type
+	 * @param pool name of the pool, like the server of the target
+	 * @param workers parallel tasks of the pool
+	 */
+	public static void submit(String target, String pool, int workers, String backup, String file, Task task) {
+		int threads = Math.max(1, workers);
+		var executor = EXECUTORS.computeIfAbsent(pool + "/" + threads, key -> newPool(pool, threads));
+		submit(executor, target, backup, file, task);
+	}
+
+	private static void submit(Pool pool, String target, String backup, String file, Task task) {
+		try {
+			if (!pool.slots().tryAcquire()) {
+				// backpressure: the backup job waits for a free slot
+				pool.slots().acquire();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("interrupted while waiting for " + target + " post processing", e);
+		}
+		update(backup, target, file, State.QUEUED, null);
+		ACTIVE_FILES.merge(file, 1, Integer::sum);
+		try {
+			// a pool shut down in the meantime rejects the task, nothing stays in its queue
+			pool.executor().execute(() -> {
+				update(backup, target, file, State.RUNNING, null);
+				try {
+					task.run();
+					update(backup, target, file, State.DONE, null);
+					log.debug("{} post processing of {} done", target, file);
+				} catch (Exception e) {
+					update(backup, target, file, State.FAILED, e.getMessage());
+					log.error("{} post processing of {} failed", target, file, e);
+				} finally {
+					release(file);
+					pool.slots().release();
+				}
+			});
+		} catch (RuntimeException e) {
+			pool.slots().release();
+			release(file);
+			update(backup, target, file, State.FAILED, e.getMessage());
+			throw e;
+		}
+	}
+
+	/**
+	 * @return files with queued or running post processing, they must not be
+	 * deleted yet
+	 */
+	public static Set<String> activeFiles() {
+		return Set.copyOf(ACTIVE_FILES.keySet());
+	}
+
+	private static void release(String file) {
+		ACTIVE_FILES.computeIfPresent(file, (key, count) -> count > 1 ? count - 1 : null);
+	}
+
+	public static Optional<Status> status(String backup, String target) {
+		return Optional.ofNullable(STATUS.get(key(backup, target)));
+	}
+
+	public static List<Status> status(String backup) {
+		return STATUS.values().stream()
+				.filter(status -> status.backup().equals(backup))
+				.toList();
+	}
+
+	/**
+	 * Waits for running and queued tasks, up to 30 seconds per target.
+	 */
+	public static void shutdown() {
+		EXECUTORS.values().forEach(pool -> pool.executor().shutdown());
+		EXECUTORS.forEach((target, pool) -> {
+			var executor = pool.executor();
+			try {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					log.warn("{} post processing still running, {} tasks dropped", target, executor.shutdownNow().size());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+			}
+		});
+		EXECUTORS.clear();
+	}
+
+	private static Pool newPool(String name, int threads) {
+		// the semaphore bounds the queue, the executor only rejects after a shutdown
+		var executor = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setNameFormat("backup-" + name + "-%d").setDaemon(true).build());
+		// pools of an old config end their threads
+		executor.allowCoreThreadTimeOut(true);
+		return new Pool(executor, new Semaphore(threads + DEFAULT_QUEUE_SIZE, true));
+	}
+
+	private static void update(String backup, String target, String file, State state, String error) {
+		var status = new Status(backup, target, file, state, Instant.now(), error);
+		STATUS.put(key(backup, target), status);
+		BackupMetrics.status(status);
+	}
+
+	private static String key(String backup, String target) {
+		return backup + "/" + target;
+	}
+}
@@ -0,0 +1,91 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.api.annotations.Action;
+import com.condation.cms.api.extensions.server.ServerHookSystemRegisterExtensionPoint;
+import com.condation.cms.api.hooks.ActionContext;
+import com.condation.cms.api.utils.ServerUtil;
+import com.condation.modules.api.annotation.Extension;
+import java.nio.file.Path;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Restores an archive with {@link ArchiveRestorer}:
+ *
+ * <pre>
+ * hookSystem.execute("module/backup/restore", Map.of(
+ *     "file", "/backups/sites-20260101-020000.tar.gz",
+ *     "target", "/restore",
+ *     "paths", List.of("hosts/demo/content")));
+ * </pre>
+ *
+ * {@code paths} is optional, with {@code name} the write limit of the
+ * backup is applied. The target has to be inside the server home, a
+ * relative target is resolved against it.
+ *
+ * @author thmar
+ */
+@Slf4j
+@Extension(ServerHookSystemRegisterExtensionPoint.class)
+public class RestoreAction extends ServerHookSystemRegisterExtensionPoint {
+
+	@Action("module/backup/restore")
+	public void restore(ActionContext<?> context) {
+		var arguments = context.arguments();
+		var file = (String) arguments.get("file");
+		var target = (String) arguments.get("target");
+		if (file == null || target == null) {
+			log.warn("restore needs a file and a target");
+			return;
+		}
+
+		var home = ServerUtil.getHome().toAbsolutePath().normalize();
+		var targetPath = home.resolve(target).toAbsolutePath().normalize();
+		if (!targetPath.startsWith(home)) {
+			log.warn("restore target {} is outside the server home", target);
+			return;
+		}
+
+		var options = RestoreOptions.defaults();
+		if (arguments.get("paths") instanceof List<?> paths) {
+			options.setPaths(paths.stream().map(String::valueOf).toList());
+		}
+		if (arguments.get("verify") instanceof Boolean verify) {
+			options.setVerify(verify);
+		}
+		if (arguments.get("name") instanceof String name) {
+			options.setWriteThrottle(Throttle.of(Throttle.WRITE, name));
+		}
+
+		try {
+			var result = ArchiveRestorer.restore(Path.of(file), targetPath, options);
+			if (!result.isValid()) {
+				log.error("restore of {} finished with wrong checksums: {}", file, result.mismatches());
+			}
+		} catch (Exception e) {
+			log.error("error restoring {}", file, e);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Options for {@link ArchiveRestorer}.
+ *
+ * @author thmar
+ */
+@Data
+public class RestoreOptions {
+
+	public static final int DEFAULT_THREADS = 4;
+	public static final int DEFAULT_WRITE_BUFFER = 64 * 1024 * 1024;
+
+	/**
+	 * paths or globs of the entries to restore, like {@code hosts/demo/content}
+	 * or {@code hosts/*&#47;content/**}, empty restores everything
+	 */
+	private List<String> paths = List.of();
+	/**
+	 * threads writing the files
+	 */
+	private int threads = DEFAULT_THREADS;
+	/**
+	 * bytes of files waiting for a writer at most, bigger files are written
+	 * by the reading thread
+	 */
+	private int writeBuffer = DEFAULT_WRITE_BUFFER;
+	/**
+	 * compare the restored files with the checksums in the archive
+	 */
+	private boolean verify = true;
+	/**
+	 * SHA-256 of the archive file, null if unknown; taken from the descriptor
+	 * of split archives
+	 */
+	private String archiveSha256;
+	/**
+	 * limits writing the restored files
+	 */
+	private Throttle writeThrottle = Throttle.NONE;
+
+	public static RestoreOptions defaults() {
+		return new RestoreOptions();
+	}
+}
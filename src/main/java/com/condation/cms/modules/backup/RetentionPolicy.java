@@ -0,0 +1,117 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Keeps the last n archives and, grandfather-father-son style, the newest
+ * archive of the last n hours, days, weeks and months that have one.
+ * Incremental and differential archives keep the archives they depend on.
+ *
+ * @author thmar
+ */
+public record RetentionPolicy(int keepLast, int hourly, int daily, int weekly, int monthly) {
+
+	/**
+	 * @return null if the backup has no retention
+	 */
+	public static RetentionPolicy of(Configuration.Retention retention) {
+		if (retention == null) {
+			return null;
+		}
+		var policy = new RetentionPolicy(
+				Math.max(0, retention.getKeep_last()),
+				Math.max(0, retention.getHourly()),
+				Math.max(0, retention.getDaily()),
+				Math.max(0, retention.getWeekly()),
+				Math.max(0, retention.getMonthly()));
+		return policy.keepLast() + policy.hourly() + policy.daily() + policy.weekly() + policy.monthly() > 0 ? policy : null;
+	}
+
+	/**
+	 * @param archives all archives of a backup
+	 * @return the archives to keep, always includes the newest one
+	 */
+	public Set<ArchiveIndex.Entry> select(List<ArchiveIndex.Entry> archives) {
+		List<ArchiveIndex.Entry> newestFirst = new ArrayList<>(archives);
+		newestFirst.sort(Comparator.comparing(ArchiveIndex.Entry::created).reversed());
+
+		Set<ArchiveIndex.Entry> keep = new HashSet<>();
+		if (!newestFirst.isEmpty()) {
+			keep.add(newestFirst.get(0));
+		}
+		newestFirst.stream().limit(keepLast).forEach(keep::add);
+		keepPeriods(newestFirst, hourly, created -> created.truncatedTo(ChronoUnit.HOURS), keep);
+		keepPeriods(newestFirst, daily, created -> created.toLocalDate(), keep);
+		keepPeriods(newestFirst, weekly, created -> created.get(IsoFields.WEEK_BASED_YEAR) * 100 + created.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR), keep);
+		keepPeriods(newestFirst, monthly, created -> created.getYear() * 100 + created.getMonthValue(), keep);
+
+		keepDependencies(newestFirst, keep);
+		return keep;
+	}
+
+	private static void keepPeriods(List<ArchiveIndex.Entry> newestFirst, int periods, Function<LocalDateTime, Object> period,
+			Set<ArchiveIndex.Entry> keep) {
+		Set<Object> seen = new HashSet<>();
+		for (var archive : newestFirst) {
+			if (seen.size() >= periods) {
+				return;
+			}
+			if (seen.add(period.apply(archive.created()))) {
+				keep.add(archive);
+			}
+		}
+	}
+
+	/**
+	 * an incremental archive needs every archive back to its full one, a
+	 * differential one the full one only
+	 */
+	private static void keepDependencies(List<ArchiveIndex.Entry> newestFirst, Set<ArchiveIndex.Entry> keep) {
+		for (int i = 0; i < newestFirst.size(); i++) {
+			var archive = newestFirst.get(i);
+			if (!keep.contains(archive) || archive.mode() == BackupMode.FULL) {
+				continue;
+			}
+			for (int j = i + 1; j < newestFirst.size(); j++) {
+				var older = newestFirst.get(j);
+				if (older.mode() == BackupMode.FULL) {
+					keep.add(older);
+					break;
+				}
+				if (archive.mode() == BackupMode.INCREMENTAL) {
+					keep.add(older);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+/**
+ * Output stream into an S3 object. Every full part is uploaded in the
+ * background while the next one is written; at most {@code concurrency}
+ * parts are in flight, so the memory used is bounded by
+ * {@code (concurrency + 1) * part_size}. If less than one part is written
+ * the object is sent with a single put on close.
+ * <p>
+ * {@link #close()} completes the upload, a writer that fails has to call
+ * {@link #abort()} instead, otherwise the partial data becomes the object.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class S3MultipartOutputStream extends OutputStream {
+
+	private final S3MultipartUpload upload;
+	private final String key;
+	private final int partSize;
+	private final int concurrency;
+
+	private final Deque<Future<CompletedPart>> pending = new ArrayDeque<>();
+	private final List<CompletedPart> parts = new ArrayList<>();
+
+	private ExecutorService executor;
+	private String uploadId;
+	private int partNumber = 0;
+
+	private byte[] buffer;
+	private int count = 0;
+	private long size = 0;
+
+	private boolean closed = false;
+
+	S3MultipartOutputStream(S3MultipartUpload upload, String key) {
+		this.upload = upload;
+		this.key = key;
+		this.partSize = (int) Math.min(upload.getPartSize(), Integer.MAX_VALUE - 8);
+		this.concurrency = upload.getConcurrency();
+		this.buffer = new byte[partSize];
+	}
+
+	/**
+	 * @return bytes written so far
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+		size += len;
+		while (len > 0) {
+			int n = Math.min(len, partSize - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == partSize) {
+				submitPart();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (uploadId == null) {
+				upload.put(key, RequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, count)));
+				return;
+			}
+			if (count > 0) {
+				submitPart();
+			}
+			while (!pending.isEmpty()) {
+				awaitNext();
+			}
+			upload.complete(key, uploadId, parts);
+			log.debug("streamed {} bytes in {} parts to {}", size, partNumber, key);
+		} catch (IOException | RuntimeException e) {
+			abortUpload();
+			throw e;
+		} finally {
+			buffer = null;
+			shutdown();
+		}
+	}
+
+	/**
+	 * Discards everything written and removes the uploaded parts.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		buffer = null;
+		pending.forEach(future -> future.cancel(true));
+		shutdown();
+		abortUpload();
+	}
+
+	private void submitPart() throws IOException {
+		if (partNumber == S3MultipartUpload.MAX_PARTS) {
+			throw new IOException("%s exceeds %d parts, increase part_size".formatted(key, S3MultipartUpload.MAX_PARTS));
+		}
+		if (uploadId == null) {
+			uploadId = upload.create(key);
+			executor = upload.newExecutor(concurrency);
+		}
+		while (pending.size() >= concurrency) {
+			awaitNext();
+		}
+		final int number = ++partNumber;
+		final ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+		pending.add(executor.submit(() -> upload.uploadPart(key, uploadId, number, data)));
+
+		buffer = new byte[partSize];
+		count = 0;
+	}
+
+	private void awaitNext() throws IOException {
+		try {
+			parts.add(pending.poll().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("upload of %s interrupted".formatted(key), e);
+		} catch (ExecutionException e) {
+			throw new IOException("upload of %s failed".formatted(key), e.getCause());
+		}
+	}
+
+	private void abortUpload() {
+		if (uploadId != null) {
+			upload.abort(key, uploadId);
+		}
+	}
+
+	private void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads a file as S3 multipart upload, the parts are sent in parallel.
+ * Every part is retried on its own, if a part fails for good the upload is
+ * aborted so S3 does not keep the uploaded parts. Files up to one part are
+ * sent with a single put.
+ *
+ * @author thmar
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class S3MultipartUpload {
+
+	/**
+	 * smallest part S3 accepts, except for the last one
+	 */
+	public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+	public static final long DEFAULT_PART_SIZE = 16L * 1024 * 1024;
+	public static final int DEFAULT_CONCURRENCY = 4;
+	public static final int DEFAULT_RETRIES = 3;
+
+	static final int MAX_PARTS = 10_000;
+	private static final long RETRY_DELAY_MILLIS = 200;
+
+	private final S3Client s3;
+	private final String bucket;
+	private final long partSize;
+	private final int concurrency;
+	private final int retries;
+
+	private Throttle throttle = Throttle.NONE;
+
+	/**
+	 * Reads {@code part_size}, {@code concurrency} and {@code retries} of
+	 * the s3 post processing config.
+	 */
+	public static S3MultipartUpload of(S3Client s3, Map<String, Object> config) {
+		return new S3MultipartUpload(s3,
+				(String) config.getOrDefault("bucket", "backups"),
+				Math.max(MIN_PART_SIZE, BackupUtil.parseSize(config.get("part_size"), DEFAULT_PART_SIZE)),
+				Math.max(1, (int) BackupUtil.parseSize(config.get("concurrency"), DEFAULT_CONCURRENCY)),
+				Math.max(0, (int) BackupUtil.parseSize(config.get("retries"), DEFAULT_RETRIES)));
+	}
+
+	/**
+	 * Limits the upload rate, see {@link Throttle}.
+	 */
+	public S3MultipartUpload throttled(Throttle throttle) {
+		this.throttle = throttle;
+		return this;
+	}
+
+	public void upload(Path file, String key) throws IOException {
+		long size = Files.size(file);
+		if (size <= partSize) {
+			put(key, RequestBody.fromFile(file));
+			return;
+		}
+
+		// S3 allows 10000 parts, grow the parts for very large archives
+		long effectivePartSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+		int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+
+		String uploadId = create(key);
+		log.debug("multipart upload of {} in {} parts, id {}", key, partCount, uploadId);
+
+		ExecutorService executor = newExecutor(Math.min(concurrency, partCount));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// results in completion order, the first failed part stops the upload
+			CompletionService<CompletedPart> completion = new ExecutorCompletionService<>(executor);
+			for (int part = 1; part <= partCount; part++) {
+				final int partNumber = part;
+				final long offset = (part - 1) * effectivePartSize;
+				final int length = (int) Math.min(effectivePartSize, size - offset);
+				completion.submit(() -> uploadPart(key, uploadId, partNumber, read(channel, offset, length)));
+			}
+
+			List<CompletedPart> parts = new ArrayList<>(partCount);
+			for (int i = 0; i < partCount; i++) {
+				parts.add(completion.take().get());
+			}
+			complete(key, uploadId, parts);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort(key, uploadId);
+			throw new IOException("upload of %s interrupted".formatted(key), e);
+		} catch (ExecutionException e) {
+			abort(key, uploadId);
+			throw new IOException("upload of %s failed".formatted(key), e.getCause());
+		} catch (IOException | RuntimeException e) {
+			abort(key, uploadId);
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Streams the data written to it into a multipart upload, see
+	 * {@link S3MultipartOutputStream}.
+	 */
+	public S3MultipartOutputStream openStream(String key) {
+		return new S3MultipartOutputStream(this, key);
+	}
+
+	long getPartSize() {
+		return partSize;
+	}
+
+	int getConcurrency() {
+		return concurrency;
+	}
+
+	ExecutorService newExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("backup-s3-%d").setDaemon(true).build());
+	}
+
+	void put(String key, RequestBody body) throws IOException {
+		body.optionalContentLength().ifPresent(throttle::acquire);
+		retry("put " + key, () -> s3.putObject(
+				PutObjectRequest.builder().bucket(bucket).key(key).build(),
+				body));
+	}
+
+	String create(String key) throws IOException {
+		return retry("create upload " + key, () -> s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.checksumAlgorithm(ChecksumAlgorithm.CRC32)
+				.build()).uploadId());
+	}
+
+	CompletedPart uploadPart(String key, String uploadId, int partNumber, ByteBuffer buffer) throws IOException {
+		throttle.acquire(buffer.remaining());
+		var response = retry("part %d of %s".formatted(partNumber, key), () -> s3.uploadPart(
+				UploadPartRequest.builder()
+						.bucket(bucket)
+						.key(key)
+						.uploadId(uploadId)
+						.partNumber(partNumber)
+						.contentLength((long) buffer.remaining())
+						.checksumAlgorithm(ChecksumAlgorithm.CRC32)
+						.build(),
+				// retries send the same buffer again
+				RequestBody.fromByteBuffer(buffer.duplicate())));
+		return CompletedPart.builder()
+				.partNumber(partNumber)
+				.eTag(response.eTag())
+				.checksumCRC32(response.checksumCRC32())
+				.build();
+	}
+
+	void complete(String key, String uploadId, List<CompletedPart> parts) throws IOException {
+		List<CompletedPart> sorted = new ArrayList<>(parts);
+		sorted.sort(Comparator.comparing(CompletedPart::partNumber));
+		retry("complete " + key, () -> s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.uploadId(uploadId)
+				.multipartUpload(CompletedMultipartUpload.builder().parts(sorted).build())
+				.build()));
+	}
+
+	void delete(String key) throws IOException {
+		retry("delete " + key, () -> s3.deleteObject(DeleteObjectRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.build()));
+	}
+
+	private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("unexpected end of file at " + (offset + buffer.position()));
+			}
+		}
+		return buffer.flip();
+	}
+
+	void abort(String key, String uploadId) {
+		try {
+			s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+					.bucket(bucket)
+					.key(key)
+					.uploadId(uploadId)
+					.build());
+			log.debug("multipart upload {} of {} aborted", uploadId, key);
+		} catch (SdkException e) {
+			log.warn("error aborting multipart upload {} of {}", uploadId, key, e);
+		}
+	}
+
+	private <T> T retry(String action, SdkCall<T> call) throws IOException {
+		for (int attempt = 0;; attempt++) {
+			try {
+				return call.execute();
+			} catch (SdkException e) {
+				if (attempt >= retries || !isRetryable(e)) {
+					throw new IOException("%s failed after %d attempts".formatted(action, attempt + 1), e);
+				}
+				log.debug("{} failed, retrying", action, e);
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS << attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IOException(action + " interrupted", ie);
+				}
+			}
+		}
+	}
+
+	/**
+	 * client errors like a missing bucket or denied access fail at once
+	 */
+	private static boolean isRetryable(SdkException e) {
+		if (e instanceof S3Exception s3e) {
+			int status = s3e.statusCode();
+			return status >= 500 || status == 408 || status == 429;
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	private interface SdkCall<T> {
+
+		T execute();
+	}
+}
@@ -28,16 +28,20 @@ import com.condation.modules.api.annotation.Extension;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache5.Apache5HttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 /**
  *
@@ -47,6 +51,10 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 @Extension(ServerHookSystemRegisterExtensionPoint.class)
 public class S3Upload extends ServerHookSystemRegisterExtensionPoint {
 
+	private static final Duration CONNECTION_MAX_IDLE_TIME = Duration.ofMinutes(5);
+
+	private static final Map<ClientKey, CachedClient> CLIENTS = new ConcurrentHashMap<>();
+
 	@Action("module/backup/postprocess")
 	public void s3_upload(ActionContext<?> context) throws IOException {
 		var backupConfig = ConfigLoader.load();
@@ -56,14 +64,14 @@ public class S3Upload extends ServerHookSystemRegisterExtensionPoint {
 
 		var name = (String) context.arguments().get("name");
 
-		var byNameConfig = backupConfig.get().getBackups().stream().filter(backup -> backup.getName().equals(name)).findFirst();
+		var byNameConfig = backupConfig.get().getBackup(name);
 
 		if (byNameConfig.isEmpty()) {
 			log.warn("backup config for '{}' not found", name);
 			return;
 		}
 
-		var s3ConfigOpt = byNameConfig.get().getPost_processing().stream().filter(processing -> processing.getType().equals("s3")).findFirst();
+		var s3ConfigOpt = byNameConfig.get().getPostProcessing("s3");
 
 		if (s3ConfigOpt.isEmpty()) {
 			log.warn("no s3 config found for '{}'", name);
@@ -79,37 +87,142 @@ public class S3Upload extends ServerHookSystemRegisterExtensionPoint {
 			return;
 		}
 
+		if (Boolean.TRUE.equals(context.arguments().get("streamed"))) {
+			log.debug("backup {} was streamed to s3 already", name);
+			return;
+		}
+
 		var fileName = (String) context.arguments().get("file");
 		var file = Path.of(fileName);
-		final String profile = (String) s3Config.getOrDefault("profile", "-none-");
 
-		
-		AwsCredentialsProvider provider = DefaultCredentialsProvider.builder().build();
+		if (Boolean.TRUE.equals(context.arguments().get("async"))) {
+			PostProcessingExecutor.submit("s3", PostProcessingExecutor.DEFAULT_WORKERS, name, fileName,
+					() -> upload(s3Config, name, file));
+			return;
+		}
+		try {
+			upload(s3Config, name, file);
+		} catch (Exception e) {
+			log.error("", e);
+		}
+	}
+
+	private void upload(Map<String, Object> s3Config, String name, Path file) throws IOException {
+		var s3 = client(s3Config);
+		var multipart = S3MultipartUpload.of(s3, s3Config).throttled(Throttle.of("s3", name));
+		long start = System.nanoTime();
+		try {
+			if (ArchiveVolumes.isDescriptor(file)) {
+				// volumes in parallel, parts of each volume are retried on their own
+				ArchiveVolumes.upload(file, multipart.getConcurrency(),
+						volume -> multipart.upload(volume, volume.getFileName().toString()));
+			} else {
+				multipart.upload(file, file.getFileName().toString());
+			}
+		} catch (IOException | RuntimeException e) {
+			BackupMetrics.upload(name, "s3", System.nanoTime() - start, 0, false);
+			throw e;
+		}
+		BackupMetrics.upload(name, "s3", System.nanoTime() - start, ArchiveVolumes.archiveSize(file), true);
+		log.debug("backup file uploaded");
+	}
+
+	/**
+	 * Upload for backups with {@code stream: s3}, empty if the backup has no
+	 * enabled s3 post processing.
+	 */
+	static Optional<S3MultipartUpload> streamingUpload(Configuration.Backup backup) {
+		if (!"s3".equals(backup.getStream())) {
+			return Optional.empty();
+		}
+		return backup.getPostProcessing("s3")
+				.filter(Configuration.PostProcessing::isEnabled)
+				.map(Configuration.PostProcessing::getConfig)
+				.filter(config -> (boolean) config.getOrDefault("enabled", false))
+				.map(config -> S3MultipartUpload.of(client(config), config).throttled(Throttle.of("s3", backup.getName())));
+	}
+
+	/**
+	 * Clients are expensive to create (credential chain, connection pool,
+	 * TLS handshake), so one client per endpoint is kept for all uploads.
+	 */
+	static S3Client client(Map<String, Object> s3Config) {
+		var key = new ClientKey(
+				(String) s3Config.getOrDefault("endpoint", null),
+				(String) s3Config.getOrDefault("profile", "-none-"),
+				(boolean) s3Config.getOrDefault("pathStyle", false),
+				(String) s3Config.getOrDefault("region", Region.EU_CENTRAL_1.id()));
+		return CLIENTS.computeIfAbsent(key, S3Upload::createClient).s3();
+	}
+
+	/**
+	 * Closes all cached clients and their connections, called when the server
+	 * stops.
+	 */
+	public static void closeClients() {
+		CLIENTS.keySet().forEach(key -> {
+			var client = CLIENTS.remove(key);
+			if (client != null) {
+				client.close();
+			}
+		});
+	}
+
+	/**
+	 * @param profile profile of the aws config, {@code -none-} for the default
+	 * credential chain
+	 */
+	static AwsCredentialsProvider credentials(String profile) {
 		if ("-none-".equals(profile)) {
-			provider = ProfileCredentialsProvider.create(profile);
+			return DefaultCredentialsProvider.builder().build();
 		}
-				
-		try (S3Client s3 = S3Client.builder()
-				.region(Region.EU_CENTRAL_1)
+		return ProfileCredentialsProvider.create(profile);
+	}
+
+	private static CachedClient createClient(ClientKey key) {
+		AwsCredentialsProvider provider = credentials(key.profile());
+
+		SdkHttpClient httpClient = Apache5HttpClient.builder()
+				.tcpKeepAlive(true)
+				.connectionMaxIdleTime(CONNECTION_MAX_IDLE_TIME)
+				.useIdleConnectionReaper(true)
+				.build();
+
+		var builder = S3Client.builder()
+				.region(Region.of(key.region()))
 				.credentialsProvider(provider)
-				.endpointOverride(URI.create((String) s3Config.getOrDefault("endpoint", null)))
+				.httpClient(httpClient)
 				.serviceConfiguration(
 						S3Configuration.builder()
-								.pathStyleAccessEnabled((boolean) s3Config.getOrDefault("pathStyle", false))
+								.pathStyleAccessEnabled(key.pathStyle())
 								.build()
-				)
-				.build()) {
-
-			s3.putObject(
-					PutObjectRequest.builder()
-							.bucket((String) s3Config.getOrDefault("bucket", "backups"))
-							.key(file.getFileName().toString())
-							.build(),
-					RequestBody.fromFile(file)
-			);
-			log.debug("backup file uploaded");
-		} catch (Exception e) {
-			log.error("", e);
+				);
+		if (key.endpoint() != null) {
+			builder.endpointOverride(URI.create(key.endpoint()));
+		}
+		log.debug("created s3 client for {}", key);
+		return new CachedClient(builder.build(), httpClient, provider);
+	}
+
+	private record ClientKey(String endpoint, String profile, boolean pathStyle, String region) {
+	}
+
+	/**
+	 * The s3 client does not close the http client and credentials provider
+	 * it was built with.
+	 */
+	private record CachedClient(S3Client s3, SdkHttpClient httpClient, AwsCredentialsProvider provider) {
+
+		void close() {
+			try {
+				s3.close();
+				httpClient.close();
+				if (provider instanceof AutoCloseable closeable) {
+					closeable.close();
+				}
+			} catch (Exception e) {
+				log.warn("error closing s3 client", e);
+			}
 		}
 	}
 
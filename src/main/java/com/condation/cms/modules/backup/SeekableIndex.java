@@ -0,0 +1,198 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Sidecar {@code <archive>.idx} of a seekable archive, the position of every
+ * entry:
+ *
+ * <pre>
+ * # type=seekable codec=GZIP
+ * 0	1536	2048	hosts/demo/content/index.md
+ * </pre>
+ *
+ * The columns are the offset of the frame in the archive file, the offset
+ * of the tar header in the uncompressed frame, the size and the name. An
+ * entry is read by decompressing its frame only, listing the archive does
+ * not read it at all.
+ *
+ * @author thmar
+ */
+public class SeekableIndex {
+
+	public static final String EXTENSION = ".idx";
+	private static final String HEADER = "# type=seekable codec=";
+	private static final int BUFFER_SIZE = 65536;
+
+	private final CompressionCodec codec;
+	private final List<Entry> entries;
+
+	/**
+	 * @param frameOffset offset of the compressed frame in the archive
+	 * @param offset offset of the tar header in the uncompressed frame
+	 */
+	public record Entry(long frameOffset, long offset, long size, String name) {
+	}
+
+	SeekableIndex(CompressionCodec codec) {
+		this(codec, new ArrayList<>());
+	}
+
+	private SeekableIndex(CompressionCodec codec, List<Entry> entries) {
+		this.codec = codec;
+		this.entries = entries;
+	}
+
+	public CompressionCodec getCodec() {
+		return codec;
+	}
+
+	public List<Entry> entries() {
+		return List.copyOf(entries);
+	}
+
+	void add(Entry entry) {
+		entries.add(entry);
+	}
+
+	/**
+	 * @return the sidecar of an archive, of a split archive it is named
+	 * after the archive, not the descriptor
+	 */
+	public static Path file(Path archive) throws IOException {
+		if (ArchiveVolumes.isDescriptor(archive)) {
+			return archive.resolveSibling(ArchiveVolumes.load(archive).archive() + EXTENSION);
+		}
+		return archive.resolveSibling(archive.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * @return the index of the archive, empty if it is not seekable
+	 */
+	public static Optional<SeekableIndex> find(Path archive) throws IOException {
+		Path file = file(archive);
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		return Optional.of(load(file));
+	}
+
+	public static SeekableIndex load(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		if (lines.isEmpty() || !lines.get(0).startsWith(HEADER)) {
+			throw new IOException("no seekable index: " + file);
+		}
+		var codec = CompressionCodec.valueOf(lines.get(0).substring(HEADER.length()).trim());
+		List<Entry> entries = new ArrayList<>(lines.size());
+		for (String line : lines.subList(1, lines.size())) {
+			if (line.isBlank()) {
+				continue;
+			}
+			String[] parts = line.split("\t", 4);
+			if (parts.length != 4) {
+				throw new IOException("invalid line in %s: %s".formatted(file, line));
+			}
+			entries.add(new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+		}
+		return new SeekableIndex(codec, entries);
+	}
+
+	public void save(Path file) throws IOException {
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(HEADER + codec.name());
+			writer.newLine();
+			for (Entry entry : entries) {
+				writer.write("%d\t%d\t%d\t%s".formatted(entry.frameOffset(), entry.offset(), entry.size(), entry.name()));
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the sidecar of the archive, if there is one.
+	 */
+	public static void delete(Path archive) throws IOException {
+		if (Files.exists(archive)) {
+			Files.deleteIfExists(file(archive));
+		}
+	}
+
+	/**
+	 * Opens the tar at the entry, {@link TarArchiveInputStream#getNextEntry()}
+	 * returns the entry.
+	 *
+	 * @param archive archive file or {@code .volumes} descriptor
+	 */
+	public TarArchiveInputStream open(Path archive, Entry entry) throws IOException {
+		InputStream raw = openAt(archive, entry.frameOffset());
+		try {
+			InputStream frame = codec.decompress(raw);
+			frame.skipNBytes(entry.offset());
+			return new TarArchiveInputStream(frame);
+		} catch (IOException | RuntimeException e) {
+			raw.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the content of one entry.
+	 */
+	public byte[] read(Path archive, Entry entry) throws IOException {
+		try (TarArchiveInputStream tar = open(archive, entry)) {
+			TarArchiveEntry tarEntry = tar.getNextEntry();
+			if (tarEntry == null || !tarEntry.getName().equals(entry.name())) {
+				throw new IOException("%s not found at its offset, the index does not match the archive".formatted(entry.name()));
+			}
+			return tar.readAllBytes();
+		}
+	}
+
+	private static InputStream openAt(Path archive, long offset) throws IOException {
+		if (ArchiveVolumes.isDescriptor(archive)) {
+			return new BufferedInputStream(ArchiveVolumes.open(archive, offset), BUFFER_SIZE);
+		}
+		FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+		channel.position(offset);
+		return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+	}
+}
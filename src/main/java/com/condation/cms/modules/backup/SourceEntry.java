@@ -0,0 +1,39 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.nio.file.Path;
+
+/**
+ * A file or directory found by the {@link SourceScanner}.
+ *
+ * @param path absolute path of the file
+ * @param name entry name inside the archive, relative to the server home
+ * @param directory true for directories
+ * @param size file size in bytes, 0 for directories
+ * @param lastModified last modification time in milliseconds
+ *
+ * @author thmar
+ */
+public record SourceEntry(Path path, String name, boolean directory, long size, long lastModified) {
+}
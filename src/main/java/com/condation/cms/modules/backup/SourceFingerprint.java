@@ -0,0 +1,211 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Merkle hash over the scanned sources. Files contribute name, size and
+ * modification time (and their content hash in strict mode), directories the
+ * hashes of their children. If the fingerprint equals the one of the last
+ * run, nothing has to be archived. The settings of the backup that shape the
+ * archive are kept as an extra source, changing them forces a new archive.
+ *
+ * @param root hash over all sources
+ * @param sources hash per backup source (top level entry) and of the
+ * settings
+ *
+ * @author thmar
+ */
+public record SourceFingerprint(String root, Map<String, String> sources) {
+
+	/**
+	 * key of the settings hash, no source name starts with a colon
+	 */
+	public static final String SETTINGS = ":settings";
+
+	/**
+	 * @param entries scanned sources in archive order
+	 * @param strict include the content hash of every file, reads all files
+	 */
+	public static SourceFingerprint compute(List<SourceEntry> entries, boolean strict) throws IOException {
+		return compute(entries, strict, HashAlgorithm.SHA256);
+	}
+
+	/**
+	 * @param algorithm content hash in strict mode, the files are hashed in
+	 * parallel and big files as tree hash
+	 */
+	public static SourceFingerprint compute(List<SourceEntry> entries, boolean strict, HashAlgorithm algorithm) throws IOException {
+		Map<String, List<byte[]>> children = new HashMap<>();
+		Map<String, byte[]> contentHashes = strict ? contentHashes(entries, algorithm) : Map.of();
+		Map<String, String> sources = new TreeMap<>();
+		Set<String> directoryNames = entries.stream()
+				.filter(SourceEntry::directory)
+				.map(SourceEntry::name)
+				.collect(Collectors.toSet());
+
+		// reverse archive order: children are hashed before their directory
+		Deque<SourceEntry> reversed = new ArrayDeque<>();
+		entries.forEach(reversed::push);
+
+		MessageDigest digest = newDigest();
+		List<byte[]> top = new ArrayList<>();
+		for (SourceEntry entry : reversed) {
+			digest.reset();
+			if (entry.directory()) {
+				update(digest, "D", entry.name());
+				List<byte[]> childHashes = children.remove(entry.name());
+				if (childHashes != null) {
+					// collected in reverse order
+					for (int i = childHashes.size() - 1; i >= 0; i--) {
+						digest.update(childHashes.get(i));
+					}
+				}
+			} else {
+				update(digest, "F", entry.name(), Long.toString(entry.size()), Long.toString(entry.lastModified()));
+				if (strict) {
+					digest.update(contentHashes.get(entry.name()));
+				}
+			}
+			byte[] hash = digest.digest();
+
+			String parent = parent(entry.name());
+			if (parent != null && directoryNames.contains(parent)) {
+				children.computeIfAbsent(parent, key -> new ArrayList<>()).add(hash);
+			} else {
+				top.add(hash);
+				sources.put(entry.name(), BackupUtil.bytesToHex(hash));
+			}
+		}
+
+		digest.reset();
+		for (int i = top.size() - 1; i >= 0; i--) {
+			digest.update(top.get(i));
+		}
+		return new SourceFingerprint(BackupUtil.bytesToHex(digest.digest()), sources);
+	}
+
+	/**
+	 * @param settings values of the backup config that change the archive
+	 * @return the fingerprint with the hash of the settings
+	 */
+	public SourceFingerprint withSettings(String... settings) throws IOException {
+		MessageDigest digest = newDigest();
+		update(digest, settings);
+		Map<String, String> withSettings = new TreeMap<>(sources);
+		withSettings.put(SETTINGS, BackupUtil.bytesToHex(digest.digest()));
+		return new SourceFingerprint(root, withSettings);
+	}
+
+	/**
+	 * @return backup sources whose hash differs from the other fingerprint
+	 */
+	public List<String> changedSources(SourceFingerprint other) {
+		var names = new TreeSet<>(sources.keySet());
+		names.addAll(other.sources.keySet());
+		return names.stream()
+				.filter(name -> !Objects.equals(sources.get(name), other.sources.get(name)))
+				.toList();
+	}
+
+	public static Optional<SourceFingerprint> load(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		String root = null;
+		Map<String, String> sources = new TreeMap<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			String[] parts = line.split("\t", 2);
+			if (parts.length != 2) {
+				continue;
+			}
+			if (root == null) {
+				root = parts[0];
+			} else {
+				sources.put(parts[1], parts[0]);
+			}
+		}
+		return Optional.ofNullable(root).map(hash -> new SourceFingerprint(hash, sources));
+	}
+
+	public void save(Path file) throws IOException {
+		StringBuilder content = new StringBuilder();
+		content.append(root).append("\t/\n");
+		sources.forEach((name, hash) -> content.append(hash).append('\t').append(name).append('\n'));
+
+		Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		Files.writeString(temp, content, StandardCharsets.UTF_8);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Map<String, byte[]> contentHashes(List<SourceEntry> entries, HashAlgorithm algorithm) throws IOException {
+		List<SourceEntry> files = entries.stream()
+				.filter(entry -> !entry.directory())
+				.toList();
+		List<byte[]> hashes = HashEngine.of(algorithm, true).hashAll(files.stream().map(SourceEntry::path).toList());
+		Map<String, byte[]> contentHashes = new HashMap<>(files.size() * 2);
+		for (int i = 0; i < files.size(); i++) {
+			contentHashes.put(files.get(i).name(), hashes.get(i));
+		}
+		return contentHashes;
+	}
+
+	private static String parent(String name) {
+		int index = name.lastIndexOf('/');
+		return index > 0 ? name.substring(0, index) : null;
+	}
+
+	private static void update(MessageDigest digest, String... values) {
+		for (String value : values) {
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException("error creating hash", ex);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the files of an archive ahead of the writer on virtual threads. The
+ * writer takes the contents in the original order, so the archive does not
+ * change; it only no longer waits for opening and reading each file.
+ * <p>
+ * Prefetched contents are limited by a byte budget which the writer gives
+ * back after each entry, the content is dropped once the writer took it.
+ * Files bigger than a quarter of the budget are left to the writer.
+ *
+ * @author thmar
+ */
+@Slf4j
+class SourcePrefetcher implements AutoCloseable {
+
+	private final List<SourceEntry> entries;
+	/**
+	 * slot of an entry is cleared when the writer takes it
+	 */
+	private final AtomicReferenceArray<CompletableFuture<byte[]>> contents;
+	private final Semaphore budget;
+	private final Semaphore readers;
+	private final long maxFileSize;
+	private final Throttle throttle;
+
+	private final ExecutorService executor;
+	private final Thread feeder;
+
+	SourcePrefetcher(List<SourceEntry> entries, int threads, int budgetBytes, Throttle throttle) {
+		this.entries = entries;
+		this.contents = new AtomicReferenceArray<>(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			contents.set(i, new CompletableFuture<>());
+		}
+		this.budget = new Semaphore(budgetBytes);
+		this.readers = new Semaphore(threads);
+		this.maxFileSize = budgetBytes / 4;
+		this.throttle = throttle;
+		this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("backup-read-", 0).factory());
+		this.feeder = Thread.ofVirtual().name("backup-prefetch").start(this::feed);
+	}
+
+	/**
+	 * @return null if prefetching is disabled in the options
+	 */
+	static SourcePrefetcher of(List<SourceEntry> entries, PackerOptions options) {
+		if (options.getPrefetchThreads() <= 0 || options.getPrefetchBuffer() <= 0) {
+			return null;
+		}
+		return new SourcePrefetcher(entries, options.getPrefetchThreads(), options.getPrefetchBuffer(), options.getReadThrottle());
+	}
+
+	/**
+	 * Waits for the content of the entry.
+	 *
+	 * @return null for directories and files the writer has to read itself
+	 */
+	byte[] take(int index) throws IOException {
+		var content = contents.get(index);
+		if (content == null) {
+			throw new IllegalStateException("entry " + index + " was already taken");
+		}
+		try {
+			byte[] bytes = content.get();
+			// the writer holds the only reference, the bytes go with the entry
+			contents.set(index, null);
+			return bytes;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted reading " + entries.get(index).path(), e);
+		} catch (ExecutionException e) {
+			throw new IOException("error reading " + entries.get(index).path(), e.getCause());
+		}
+	}
+
+	/**
+	 * Called by the writer once the entry is in the archive.
+	 */
+	void release(int index) {
+		SourceEntry entry = entries.get(index);
+		if (isPrefetched(entry)) {
+			budget.release((int) entry.size());
+		}
+	}
+
+	/**
+	 * @return bytes read ahead and not yet taken by the writer
+	 */
+	long retainedBytes() {
+		long bytes = 0;
+		for (int i = 0; i < contents.length(); i++) {
+			var content = contents.get(i);
+			if (content != null && content.isDone() && !content.isCompletedExceptionally()) {
+				byte[] read = content.getNow(null);
+				bytes += read != null ? read.length : 0;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public void close() {
+		feeder.interrupt();
+		executor.shutdownNow();
+	}
+
+	private boolean isPrefetched(SourceEntry entry) {
+		return !entry.directory() && entry.size() <= maxFileSize;
+	}
+
+	private void feed() {
+		int index = 0;
+		try {
+			for (; index < entries.size(); index++) {
+				SourceEntry entry = entries.get(index);
+				CompletableFuture<byte[]> content = contents.get(index);
+				if (!isPrefetched(entry)) {
+					content.complete(null);
+					continue;
+				}
+				// in archive order, the writer always gets the budget of the next entry back
+				budget.acquire((int) entry.size());
+				readers.acquire();
+				executor.execute(() -> {
+					try {
+						content.complete(read(entry));
+					} catch (Throwable t) {
+						content.completeExceptionally(t);
+					} finally {
+						readers.release();
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			for (; index < entries.size(); index++) {
+				var content = contents.get(index);
+				if (content != null) {
+					content.cancel(false);
+				}
+			}
+		} catch (RuntimeException e) {
+			log.error("error prefetching files", e);
+			for (; index < entries.size(); index++) {
+				var content = contents.get(index);
+				if (content != null) {
+					content.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads at most the size from the scan, the tar header is already fixed.
+	 */
+	private byte[] read(SourceEntry entry) throws IOException {
+		throttle.acquire(entry.size());
+		try (InputStream in = Files.newInputStream(entry.path())) {
+			return in.readNBytes((int) entry.size());
+		}
+	}
+}
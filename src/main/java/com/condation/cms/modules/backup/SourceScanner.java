@@ -0,0 +1,112 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.api.Constants;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Walks the backup sources once and collects the entries in archive order:
+ * sources sorted by path, each directory followed by its sorted children.
+ *
+ * @author thmar
+ */
+public class SourceScanner {
+
+	public static List<SourceEntry> scan(Path root, List<Path> sources) throws IOException {
+		List<Path> ignoredDirectories = new ArrayList<>(getHostsDataDirectories(root));
+		ignoredDirectories.addAll(getSearchIndexPath(root));
+
+		List<Path> sortedSources = new ArrayList<>(sources);
+		sortedSources.sort(Path::compareTo);
+
+		List<SourceEntry> entries = new ArrayList<>();
+		for (Path source : sortedSources) {
+			Path absolutePath = root.resolve(source);
+
+			if (!Files.exists(absolutePath)) {
+				throw new FileNotFoundException("Quelle nicht gefunden: " + absolutePath);
+			}
+
+			scan(entries, absolutePath, root, ignoredDirectories);
+		}
+		return entries;
+	}
+
+	private static void scan(List<SourceEntry> entries, Path path, Path root, List<Path> ignoredDirectories) throws IOException {
+		if (shouldExclude(path, ignoredDirectories)) {
+			return;
+		}
+
+		String name = root.relativize(path).toString().replace("\\", "/");
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		if (attributes.isDirectory()) {
+			entries.add(new SourceEntry(path, name, true, 0, attributes.lastModifiedTime().toMillis()));
+
+			List<Path> children;
+			try (var stream = Files.list(path)) {
+				children = stream.sorted().collect(Collectors.toList());
+			}
+			for (Path child : children) {
+				scan(entries, child, root, ignoredDirectories);
+			}
+		} else {
+			entries.add(new SourceEntry(path, name, false, attributes.size(), attributes.lastModifiedTime().toMillis()));
+		}
+	}
+
+	private static List<Path> getHostsDataDirectories(Path root) throws IOException {
+		try (var siteStream = Files.list(root.resolve(Constants.Folders.HOSTS))) {
+			return siteStream
+					.filter(SiteUtil::isSite)
+					.map(host -> host.resolve("data"))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static List<Path> getSearchIndexPath(Path root) throws IOException {
+		try (var siteStream = Files.list(root.resolve(Constants.Folders.HOSTS))) {
+			return siteStream
+					.filter(SiteUtil::isSite)
+					.map(host -> host.resolve("modules_data/search-module/index"))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static boolean shouldExclude(Path filePath, List<Path> ignoredDirectories) {
+		for (Path ignored : ignoredDirectories) {
+			if (filePath.startsWith(ignored)) {  // ← Prüft Unterpfade!
+				return true;
+			}
+		}
+		return false;
+	}
+}
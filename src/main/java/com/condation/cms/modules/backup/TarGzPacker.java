@@ -21,29 +21,29 @@ package com.condation.cms.modules.backup;
  * <http://www.gnu.org/licenses/gpl-3.0.html>.
  * #L%
  */
-import com.condation.cms.api.Constants;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
-import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 /**
  *
@@ -57,152 +57,282 @@ public class TarGzPacker {
 			.toInstant()
 			.getEpochSecond();
 
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * SHA-256 der Dateien im Format von {@code sha256sum}, letzter Eintrag im
+	 * Archiv
+	 */
+	public static final String CHECKSUMS_ENTRY = ".backup/sha256sums";
+
+	/**
+	 * Ergebnis eines Packvorgangs.
+	 *
+	 * @param tarHash SHA-256 des unkomprimierten Tar-Streams, null beim
+	 * {@link ZeroCopyTarWriter}
+	 * @param archiveHash SHA-256 der geschriebenen Archivdatei, null beim
+	 * {@link ZeroCopyTarWriter}
+	 * @param entryHashes SHA-256 je Datei im Archiv, nur wenn
+	 * {@link PackerOptions#isEntryHashes()} gesetzt ist
+	 */
+	public record Result(String tarHash, String archiveHash, Map<String, String> entryHashes) {
+	}
+
 	/**
-	 * Rekursiv Dateien und Verzeichnisse zum Archiv hinzufügen.
+	 * Datei oder Verzeichnis zum Archiv hinzufügen.
 	 *
 	 * @param taos TarArchiveOutputStream
-	 * @param filePath Pfad der aktuellen Datei/des Verzeichnisses
-	 * @param root Der Basis-Verzeichnis (für relative Pfade im Archiv)
+	 * @param source Datei/Verzeichnis aus dem {@link SourceScanner}
+	 * @param content vorab gelesener Inhalt oder null, dann wird die Datei hier gelesen
+	 * @param entryDigest Hash für den Dateiinhalt oder null
+	 * @param throttle Limit für das Lesen der Datei
+	 * @param stats Zeiten für Lesen und Hash oder null
+	 * @return Hash des Dateiinhalts oder null
 	 * @throws IOException Bei Ein-/Ausgabefehler
 	 */
-	private static void addToArchive(TarArchiveOutputStream taos, Path filePath, Path root, List<Path> ignoredDrectory)
-			throws IOException {
-
-		Path relativePath = root.relativize(filePath);
-		String entryName = relativePath.toString().replace("\\", "/");
-		File file = filePath.toFile();
+	private static String addToArchive(TarArchiveOutputStream taos, SourceEntry source, byte[] content,
+			MessageDigest entryDigest, byte[] buffer, Throttle throttle, PackStats stats) throws IOException {
 
-		if (shouldExclude(filePath, ignoredDrectory)) {
-			return;
-		}
-
-		if (file.isDirectory()) {
+		if (source.directory()) {
 			// ← WICHTIG: Verwende NICHT TarArchiveEntry(file, name)
 			// Erstelle einen leeren Entry mit ONLY dem Namen
-			TarArchiveEntry entry = new TarArchiveEntry(entryName + "/");
+			TarArchiveEntry entry = new TarArchiveEntry(source.name() + "/");
 			entry.setSize(0);
 			entry.setModTime(FIXED_TIMESTAMP);
 			taos.putArchiveEntry(entry);
 			taos.closeArchiveEntry();
+			return null;
+		}
 
-			File[] children = file.listFiles();
-			if (children != null) {
-				Arrays.sort(children);
-				for (File child : children) {
-					addToArchive(taos, child.toPath(), root, ignoredDrectory);
-				}
-			}
-		} else {
-			TarArchiveEntry entry = new TarArchiveEntry(entryName);
-			entry.setSize(file.length());
-			entry.setModTime(FIXED_TIMESTAMP);
-			taos.putArchiveEntry(entry);
+		TarArchiveEntry entry = new TarArchiveEntry(source.name());
+		entry.setSize(source.size());
+		entry.setModTime(FIXED_TIMESTAMP);
+		taos.putArchiveEntry(entry);
+		if (stats != null) {
+			stats.file(source.size());
+		}
 
-			try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis)) {
-				IOUtils.copy(bis, taos);
-			} catch (Exception e) {
-				log.error("error copying file", e);
+		if (entryDigest != null) {
+			entryDigest.reset();
+		}
+		if (content != null) {
+			if (entryDigest != null) {
+				long hashStart = System.nanoTime();
+				entryDigest.update(content);
+				hashed(stats, hashStart);
+			}
+			try {
+				taos.write(content);
 			} finally {
 				taos.closeArchiveEntry();
 			}
+			return entryDigest != null ? bytesToHex(entryDigest.digest()) : null;
 		}
-	}
 
-	private static List<Path> getHostsDataDirectories(Path root) throws IOException {
-		try (var siteStream = Files.list(root.resolve(Constants.Folders.HOSTS))) {
-			return siteStream
-					.filter(SiteUtil::isSite)
-					.map(host -> host.resolve("data"))
-					.collect(Collectors.toList());
+		// Öffnen zählt zum Lesen
+		long start = System.nanoTime();
+		try (InputStream in = throttle.wrap(Files.newInputStream(source.path()))) {
+			long remaining = source.size();
+			while (remaining > 0) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (stats != null) {
+					stats.read(System.nanoTime() - start);
+				}
+				if (read == -1) {
+					break;
+				}
+				if (entryDigest != null) {
+					long hashStart = System.nanoTime();
+					entryDigest.update(buffer, 0, read);
+					hashed(stats, hashStart);
+				}
+				taos.write(buffer, 0, read);
+				remaining -= read;
+				start = System.nanoTime();
+			}
+		} catch (Exception e) {
+			log.error("error copying file", e);
+		} finally {
+			taos.closeArchiveEntry();
 		}
+		return entryDigest != null ? bytesToHex(entryDigest.digest()) : null;
 	}
 
-	private static List<Path> getSearchIndexPath(Path root) throws IOException {
-		try (var siteStream = Files.list(root.resolve(Constants.Folders.HOSTS))) {
-			return siteStream
-					.filter(SiteUtil::isSite)
-					.map(host -> host.resolve("modules_data/search-module/index"))
-					.collect(Collectors.toList());
+	private static void hashed(PackStats stats, long start) {
+		if (stats != null) {
+			stats.hash(System.nanoTime() - start);
 		}
 	}
 
-	private static boolean shouldExclude(Path filePath, List<Path> ignoredDirectories) {
-		for (Path ignored : ignoredDirectories) {
-			if (filePath.startsWith(ignored)) {  // ← Prüft Unterpfade!
-				return true;
-			}
-		}
-		return false;
+	private static void addToArchive(TarArchiveOutputStream taos, String name, byte[] content) throws IOException {
+		TarArchiveEntry entry = new TarArchiveEntry(name);
+		entry.setSize(content.length);
+		entry.setModTime(FIXED_TIMESTAMP);
+		taos.putArchiveEntry(entry);
+		taos.write(content);
+		taos.closeArchiveEntry();
 	}
 
-	public static String createTarGz(Path root, File output, List<Path> sources) throws IOException {
+	public static Result createTarGz(Path root, File output, List<Path> sources) throws IOException {
+		return createTarGz(root, output, sources, PackerOptions.defaults());
+	}
 
-		File tempTar = File.createTempFile("backup_", ".tar");
-		tempTar.deleteOnExit();
+	public static Result createTarGz(Path root, File output, List<Path> sources, PackerOptions options) throws IOException {
+		return pack(SourceScanner.scan(root, sources), Collections.emptyMap(), output, options);
+	}
 
-		try {
-			// 1. Erstelle TAR
-			try (FileOutputStream fos = new FileOutputStream(tempTar); TarArchiveOutputStream taos = new TarArchiveOutputStream(fos)) {
+	/**
+	 * Packt die übergebenen Einträge in der gegebenen Reihenfolge.
+	 *
+	 * @param entries Dateien und Verzeichnisse aus dem {@link SourceScanner}
+	 * @param generated zusätzliche Einträge (Name, Inhalt), die nach den
+	 * Dateien geschrieben werden
+	 * @param output Archivdatei, mit {@link PackerOptions#getMaxVolumeSize()}
+	 * der Name der Volumes, siehe {@link ArchiveVolumes}
+	 * @param options Kompression usw.
+	 * @return Hashes des Archivs
+	 * @throws IOException Bei Ein-/Ausgabefehler
+	 */
+	public static Result pack(List<SourceEntry> entries, Map<String, byte[]> generated, File output, PackerOptions options) throws IOException {
+		// Sidecar output.idx, auch bei Volumes nach dem Archiv benannt
+		SeekableIndex index = options.isSeekable() ? new SeekableIndex(options.getCodec()) : null;
+		Result result;
+		if (options.getMaxVolumeSize() > 0) {
+			// Volumes output.part001 ... und output.volumes, output selbst wird nicht geschrieben
+			try (OutputStream volumes = new ArchiveVolumes.Output(output.toPath(), options.getMaxVolumeSize(), options.getWriteThrottle())) {
+				result = pack(entries, generated, volumes, options, index);
+			}
+		} else if (index == null && options.getCodec() == CompressionCodec.NONE && !options.isEntryHashes() && !options.isChecksums()) {
+			// ohne Kompression und ohne Hashes kopiert der Kernel die Dateien, das Ergebnis hat keine Hashes
+			long start = System.nanoTime();
+			ZeroCopyTarWriter.write(entries, generated, output, FIXED_TIMESTAMP, options);
+			if (options.getStats() != null) {
+				entries.stream().filter(entry -> !entry.directory()).forEach(entry -> options.getStats().file(entry.size()));
+				options.getStats().finish(System.nanoTime() - start, output.length());
+			}
+			return new Result(null, null, Collections.emptyMap());
+		} else {
+			try (OutputStream fos = options.getWriteThrottle().wrap(new FileOutputStream(output))) {
+				result = pack(entries, generated, fos, options, index);
+			}
+		}
+		if (index != null) {
+			index.save(SeekableIndex.file(output.toPath()));
+		}
+		return result;
+	}
 
-				taos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
-				taos.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+	/**
+	 * Packt in einen beliebigen Stream, z.B. direkt in einen S3 Upload.
+	 *
+	 * @param output Ziel, wird nicht geschlossen
+	 */
+	public static Result pack(List<SourceEntry> entries, Map<String, byte[]> generated, OutputStream output, PackerOptions options) throws IOException {
+		return pack(entries, generated, output, options, null);
+	}
 
-				List<Path> hostsData = getHostsDataDirectories(root);
-				List<Path> searchIndex = getSearchIndexPath(root);
+	/**
+	 * @param index null oder Index, dann wird in unabhängigen Frames
+	 * komprimiert und die Position jedes Eintrags im Index vermerkt
+	 */
+	private static Result pack(List<SourceEntry> entries, Map<String, byte[]> generated, OutputStream output,
+			PackerOptions options, SeekableIndex index) throws IOException {
 
-				List<Path> ignoredDrectory = new ArrayList<>(hostsData);
-				ignoredDrectory.addAll(searchIndex);
+		MessageDigest tarDigest = newDigest();
+		MessageDigest archiveDigest = newDigest();
+		MessageDigest entryDigest = options.isEntryHashes() || options.isChecksums() ? newDigest() : null;
+		Map<String, String> entryHashes = new HashMap<>();
+		byte[] buffer = new byte[BUFFER_SIZE];
 
-				List<Path> sortedSources = new ArrayList<>(sources);
-				sortedSources.sort(Path::compareTo);
+		PackStats stats = options.getStats();
+		long start = System.nanoTime();
 
-				for (Path source : sortedSources) {
-					Path absolutePath = root.resolve(source);
+		// tar -> sha256(tar) -> gzip -> sha256(tar.gz) -> output, alles in einem Durchlauf
+		// mit Statistik misst jede Stufe die Zeit für sich und alle darunter
+		try (OutputStream shield = CloseShieldOutputStream.wrap(output);
+				BufferedOutputStream bos = new BufferedOutputStream(shield, BUFFER_SIZE);
+				DigestOutputStream archiveOut = new DigestOutputStream(
+						PackStats.timed(bos, stats, PackStats.Stage.WRITE), archiveDigest);
+				OutputStream archiveIn = PackStats.timed(archiveOut, stats, PackStats.Stage.ARCHIVE_HASH);
+				OutputStream compressorOut = index != null
+						? new FrameOutputStream(archiveIn, options, options.getFrameSize())
+						: options.getCodec().compress(archiveIn, options);
+				DigestOutputStream tarOut = new DigestOutputStream(
+						PackStats.timed(compressorOut, stats, PackStats.Stage.COMPRESS), tarDigest);
+				BufferedOutputStream tarBuffer = new BufferedOutputStream(
+						PackStats.timed(tarOut, stats, PackStats.Stage.TAR_HASH), BUFFER_SIZE);
+				TarArchiveOutputStream taos = new TarArchiveOutputStream(tarBuffer);
+				SourcePrefetcher prefetcher = SourcePrefetcher.of(entries, options)) {
 
-					if (!Files.exists(absolutePath)) {
-						throw new FileNotFoundException("Quelle nicht gefunden: " + absolutePath);
-					}
+			taos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+			taos.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
 
-					addToArchive(taos, absolutePath, root, ignoredDrectory);
+			for (int i = 0; i < entries.size(); i++) {
+				SourceEntry entry = entries.get(i);
+				long wait = System.nanoTime();
+				byte[] content = prefetcher != null ? prefetcher.take(i) : null;
+				if (stats != null && prefetcher != null) {
+					stats.read(System.nanoTime() - wait);
 				}
-
-				taos.finish();
-			}
-
-			String tarHash = calculateFileHash(tempTar);
-
-			try (FileInputStream fis = new FileInputStream(tempTar); FileOutputStream fos = new FileOutputStream(output); GzipCompressorOutputStream gos = new GzipCompressorOutputStream(fos)) {
-
-				byte[] buffer = new byte[65536];
-				int bytesRead;
-				while ((bytesRead = fis.read(buffer)) != -1) {
-					gos.write(buffer, 0, bytesRead);
+				mark(index, compressorOut, tarBuffer, entry.directory() ? entry.name() + "/" : entry.name(),
+						entry.directory() ? 0 : entry.size());
+				String hash = addToArchive(taos, entry, content, entryDigest, buffer, options.getReadThrottle(), stats);
+				if (prefetcher != null) {
+					prefetcher.release(i);
+				}
+				if (hash != null) {
+					entryHashes.put(entry.name(), hash);
 				}
 			}
+			for (var entry : generated.entrySet()) {
+				mark(index, compressorOut, tarBuffer, entry.getKey(), entry.getValue().length);
+				addToArchive(taos, entry.getKey(), entry.getValue());
+			}
+			if (options.isChecksums()) {
+				byte[] sums = checksums(entryHashes);
+				mark(index, compressorOut, tarBuffer, CHECKSUMS_ENTRY, sums.length);
+				addToArchive(taos, CHECKSUMS_ENTRY, sums);
+			}
 
-			return tarHash;
+			taos.finish();
+		}
+		if (stats != null) {
+			stats.finish(System.nanoTime() - start);
+		}
 
-		} finally {
-			tempTar.delete();
+		return new Result(bytesToHex(tarDigest.digest()), bytesToHex(archiveDigest.digest()), entryHashes);
+	}
+
+	/**
+	 * Vermerkt die Position des nächsten Eintrags, vorher wird ggf. ein neuer
+	 * Frame begonnen.
+	 */
+	private static void mark(SeekableIndex index, OutputStream compressorOut, OutputStream tarBuffer, String name, long size) throws IOException {
+		if (index == null) {
+			return;
 		}
+		// alle Bytes des letzten Eintrags müssen im Frame sein
+		tarBuffer.flush();
+		FrameOutputStream frames = (FrameOutputStream) compressorOut;
+		frames.boundary();
+		index.add(new SeekableIndex.Entry(frames.frameOffset(), frames.inFrameOffset(), size, name));
 	}
 
-	private static String calculateFileHash(File file) throws IOException {
+	/**
+	 * {@code <sha256>  <name>} je Zeile, sortiert nach Namen
+	 */
+	private static byte[] checksums(Map<String, String> entryHashes) {
+		StringBuilder sums = new StringBuilder();
+		new TreeMap<>(entryHashes).forEach((name, hash) -> sums.append(hash).append("  ").append(name).append('\n'));
+		return sums.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static MessageDigest newDigest() throws IOException {
 		try {
-			MessageDigest md = MessageDigest.getInstance("SHA-256");
-			try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis)) {
-				byte[] buffer = new byte[8192];
-				int bytesRead;
-				while ((bytesRead = bis.read(buffer)) != -1) {
-					md.update(buffer, 0, bytesRead);
-				}
-			}
-			String hash = bytesToHex(md.digest());
-			return hash;
+			return MessageDigest.getInstance("SHA-256");
 		} catch (NoSuchAlgorithmException ex) {
-			log.error("error creating hash", ex);
+			throw new IOException("error creating hash", ex);
 		}
-		return null;
 	}
 
 	// Helper-Methode (vereinfacht, benötigt Implementierung)
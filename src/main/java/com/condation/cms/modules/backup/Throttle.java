@@ -0,0 +1,199 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Token bucket limits in bytes per second. A throttle combines the global
+ * limit of a kind (like {@code read}) with the limit of the backup, both
+ * are applied.
+ * <p>
+ * Limits come from the {@code limits} of the config and of every backup and
+ * are updated when the config is reloaded, running backups and uploads pick
+ * up the new rate with their next read or write.
+ *
+ * @author thmar
+ */
+@Slf4j
+public class Throttle {
+
+	public static final String READ = "read";
+	public static final String WRITE = "write";
+
+	public static final Throttle NONE = new Throttle(List.of());
+
+	private static final Map<String, Limit> LIMITS = new ConcurrentHashMap<>();
+
+	private final List<Limit> limits;
+
+	private Throttle(List<Limit> limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * @param kind {@link #READ}, {@link #WRITE} or the type of a post
+	 * processing like {@code s3}
+	 */
+	public static Throttle of(String kind, String backup) {
+		return new Throttle(List.of(limit(kind), limit(kind + "/" + backup)));
+	}
+
+	/**
+	 * Sets the rates of all limits, limits missing in the config are
+	 * lifted.
+	 */
+	public static void configure(Configuration configuration) {
+		Map<String, Long> rates = new HashMap<>();
+		rates(configuration.getLimits(), "").forEach(rates::put);
+		if (configuration.getBackups() != null) {
+			configuration.getBackups().forEach(backup -> rates(backup.getLimits(), "/" + backup.getName()).forEach(rates::put));
+		}
+		Stream.concat(LIMITS.keySet().stream(), rates.keySet().stream())
+				.distinct()
+				.toList()
+				.forEach(key -> setRate(key, rates.getOrDefault(key, 0L)));
+	}
+
+	/**
+	 * @param key kind, optionally followed by {@code /} and the backup name
+	 * @param bytesPerSecond 0 for no limit
+	 */
+	public static void setRate(String key, long bytesPerSecond) {
+		limit(key).setRate(bytesPerSecond);
+	}
+
+	/**
+	 * Parses the {@code limits} of the config, throws on invalid sizes.
+	 */
+	static Map<String, Long> rates(Map<String, Object> config, String suffix) {
+		Map<String, Long> rates = new HashMap<>();
+		if (config != null) {
+			config.forEach((kind, value) -> rates.put(kind + suffix, Math.max(0, BackupUtil.parseSize(value, 0))));
+		}
+		return rates;
+	}
+
+	private static Limit limit(String key) {
+		return LIMITS.computeIfAbsent(key, Limit::new);
+	}
+
+	/**
+	 * Blocks until the bytes may be read or written.
+	 */
+	public void acquire(long bytes) {
+		for (Limit limit : limits) {
+			limit.acquire(bytes);
+		}
+	}
+
+	public InputStream wrap(InputStream in) {
+		if (this == NONE) {
+			return in;
+		}
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+				if (read >= 0) {
+					acquire(1);
+				}
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = in.read(b, off, len);
+				if (read > 0) {
+					acquire(read);
+				}
+				return read;
+			}
+		};
+	}
+
+	public OutputStream wrap(OutputStream out) {
+		if (this == NONE) {
+			return out;
+		}
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				acquire(len);
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				acquire(1);
+				out.write(b);
+			}
+		};
+	}
+
+	private static final class Limit {
+
+		private final String key;
+		private volatile RateLimiter limiter;
+
+		private Limit(String key) {
+			this.key = key;
+		}
+
+		private synchronized void setRate(long bytesPerSecond) {
+			if (bytesPerSecond <= 0) {
+				if (limiter != null) {
+					log.info("limit {} lifted", key);
+				}
+				limiter = null;
+			} else if (limiter == null) {
+				log.info("limit {} set to {} bytes/s", key, bytesPerSecond);
+				limiter = RateLimiter.create(bytesPerSecond);
+			} else if (limiter.getRate() != bytesPerSecond) {
+				log.info("limit {} changed to {} bytes/s", key, bytesPerSecond);
+				limiter.setRate(bytesPerSecond);
+			}
+		}
+
+		private void acquire(long bytes) {
+			var current = limiter;
+			if (current == null) {
+				return;
+			}
+			for (long remaining = bytes; remaining > 0; remaining -= Integer.MAX_VALUE) {
+				current.acquire((int) Math.min(Integer.MAX_VALUE, remaining));
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Uploads of one backup to one post processing target, registered as
+ * {@code com.condation.cms.modules.backup:type=Upload,backup=<backup>,target=<target>}.
+ *
+ * @author thmar
+ */
+public interface UploadStatsMXBean {
+
+	/**
+	 * @return state of the last post processing, QUEUED, RUNNING, DONE or
+	 * FAILED
+	 */
+	String getState();
+
+	/**
+	 * @return archive of the last post processing
+	 */
+	String getFile();
+
+	/**
+	 * @return error of the last post processing, null unless it failed
+	 */
+	String getError();
+
+	long getUploads();
+
+	long getFailures();
+
+	long getBytes();
+
+	long getMillis();
+
+	long getLastSuccess();
+
+	long getLastFailure();
+
+	long getLastDurationMillis();
+
+	/**
+	 * @return MB per second of the last successful upload
+	 */
+	double getLastThroughputMBps();
+}
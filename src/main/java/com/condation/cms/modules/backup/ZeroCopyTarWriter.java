@@ -0,0 +1,156 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipEncoding;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+
+/**
+ * Writes an uncompressed tar with {@link FileChannel#transferTo}, the file
+ * contents are copied by the kernel and never pass the java heap.
+ * <p>
+ * The output is byte for byte the same as
+ * {@link org.apache.commons.compress.archivers.tar.TarArchiveOutputStream}
+ * with the settings of {@link TarGzPacker}: 512 byte records, GNU long
+ * names, star big numbers.
+ *
+ * @author thmar
+ */
+class ZeroCopyTarWriter implements AutoCloseable {
+
+	private static final int RECORD_SIZE = 512;
+
+	/**
+	 * bytes per transfer, throttled writers wait before every transfer
+	 */
+	private static final long TRANSFER_SIZE = 8L * 1024 * 1024;
+
+	private final FileChannel out;
+	private final Throttle readThrottle;
+	private final Throttle writeThrottle;
+	private final ZipEncoding encoding = ZipEncodingHelper.getZipEncoding(Charset.defaultCharset());
+	private final byte[] record = new byte[RECORD_SIZE];
+	private final ByteBuffer zeros = ByteBuffer.allocate(RECORD_SIZE);
+
+	private ZeroCopyTarWriter(File output, PackerOptions options) throws IOException {
+		this.readThrottle = options.getReadThrottle();
+		this.writeThrottle = options.getWriteThrottle();
+		this.out = FileChannel.open(output.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	static void write(List<SourceEntry> entries, Map<String, byte[]> generated, File output, long modTime,
+			PackerOptions options) throws IOException {
+		try (ZeroCopyTarWriter writer = new ZeroCopyTarWriter(output, options)) {
+			for (SourceEntry entry : entries) {
+				if (entry.directory()) {
+					writer.header(entry.name() + "/", 0, modTime);
+				} else {
+					writer.header(entry.name(), entry.size(), modTime);
+					writer.transfer(entry);
+				}
+			}
+			for (var entry : generated.entrySet()) {
+				writer.header(entry.getKey(), entry.getValue().length, modTime);
+				writer.writeFully(ByteBuffer.wrap(entry.getValue()));
+				writer.pad(entry.getValue().length);
+			}
+			// end of archive
+			writer.writeFully(writer.zeros.clear());
+			writer.writeFully(writer.zeros.clear());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void header(String name, long size, long modTime) throws IOException {
+		ByteBuffer encoded = encoding.encode(name);
+		int length = encoded.limit() - encoded.position();
+		if (length >= TarConstants.NAMELEN) {
+			// same as TarArchiveOutputStream.LONGFILE_GNU: the name as content of a ././@LongLink entry
+			TarArchiveEntry longLink = new TarArchiveEntry(TarConstants.GNU_LONGLINK, TarConstants.LF_GNUTYPE_LONGNAME);
+			longLink.setSize(length + 1L);
+			longLink.setModTime(modTime);
+			writeHeader(longLink);
+			ByteBuffer content = ByteBuffer.allocate(length + 1);
+			content.put(encoded.array(), encoded.arrayOffset() + encoded.position(), length).put((byte) 0).flip();
+			writeFully(content);
+			pad(length + 1L);
+		}
+		TarArchiveEntry entry = new TarArchiveEntry(name);
+		entry.setSize(size);
+		entry.setModTime(modTime);
+		writeHeader(entry);
+	}
+
+	private void writeHeader(TarArchiveEntry entry) throws IOException {
+		entry.writeEntryHeader(record, encoding, true);
+		writeFully(ByteBuffer.wrap(record));
+	}
+
+	private void transfer(SourceEntry entry) throws IOException {
+		try (FileChannel in = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+			long position = 0;
+			while (position < entry.size()) {
+				long count = Math.min(TRANSFER_SIZE, entry.size() - position);
+				readThrottle.acquire(count);
+				writeThrottle.acquire(count);
+				long transferred = in.transferTo(position, count, out);
+				if (transferred <= 0) {
+					throw new IOException("%s is shorter than the %d bytes in the tar header".formatted(entry.path(), entry.size()));
+				}
+				position += transferred;
+			}
+		}
+		pad(entry.size());
+	}
+
+	/**
+	 * fills the last record of an entry with zeros
+	 */
+	private void pad(long size) throws IOException {
+		int remainder = (int) (size % RECORD_SIZE);
+		if (remainder != 0) {
+			writeFully(zeros.clear().limit(RECORD_SIZE - remainder));
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+}
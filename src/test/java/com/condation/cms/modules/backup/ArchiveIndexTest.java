@@ -0,0 +1,110 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveIndexTest {
+
+    @TempDir
+    Path target;
+
+    @Test
+    void missing_index_is_built_from_the_folder() throws Exception {
+        Files.writeString(target.resolve("sites-20260101-020000-full.tar.gz"), "full");
+        Files.writeString(target.resolve("sites-20260102-020000-incr.tar.gz"), "incr");
+        Files.writeString(target.resolve("sites.sha256"), "checksum");
+        Files.writeString(target.resolve("media-20260101-020000.tar.gz"), "other backup");
+        Path snapshots = Files.createDirectories(target.resolve("repository/snapshots"));
+        Files.writeString(snapshots.resolve("sites-20260103-020000.snapshot"), "snapshot");
+
+        var index = new ArchiveIndex(target, "sites");
+        Path archive = Files.writeString(target.resolve("sites-20260104-020000-incr.tar.gz"), "new");
+        index.add("20260104-020000", BackupMode.INCREMENTAL, archive);
+
+        assertThat(index.entries())
+                .extracting(ArchiveIndex.Entry::file)
+                .containsExactly(
+                        "sites-20260101-020000-full.tar.gz",
+                        "sites-20260102-020000-incr.tar.gz",
+                        "repository/snapshots/sites-20260103-020000.snapshot",
+                        "sites-20260104-020000-incr.tar.gz");
+        assertThat(index.entries().get(1).mode()).isEqualTo(BackupMode.INCREMENTAL);
+        assertThat(target.resolve("sites.index")).exists();
+    }
+
+    @Test
+    void prune_deletes_archives_and_keeps_busy_ones() throws Exception {
+        var index = new ArchiveIndex(target, "sites");
+        for (int day = 1; day <= 5; day++) {
+            String timestamp = "2026010%d-020000".formatted(day);
+            Path archive = Files.writeString(target.resolve("sites-" + timestamp + ".tar.gz"), "day " + day);
+            index.add(timestamp, BackupMode.FULL, archive);
+        }
+        Path uploading = target.resolve("sites-20260102-020000.tar.gz");
+
+        var deleted = index.prune(new RetentionPolicy(2, 0, 0, 0, 0), Set.of(uploading.toString()));
+
+        assertThat(deleted).extracting(ArchiveIndex.Entry::file)
+                .containsExactly("sites-20260101-020000.tar.gz", "sites-20260103-020000.tar.gz");
+        assertThat(target.resolve("sites-20260101-020000.tar.gz")).doesNotExist();
+        assertThat(uploading).exists();
+        assertThat(new ArchiveIndex(target, "sites").entries()).hasSize(3);
+    }
+
+    @Test
+    void pruned_snapshots_free_their_chunks() throws Exception {
+        Path root = Files.createDirectories(target.resolve("server"));
+        Files.createDirectories(root.resolve("hosts"));
+        Path site = Files.createDirectories(root.resolve("site"));
+        var repository = ChunkRepository.open(target.resolve(ChunkRepository.DEFAULT_DIRECTORY));
+        var index = new ArchiveIndex(target, "sites");
+        Random random = new Random(3);
+        for (int day = 1; day <= 2; day++) {
+            byte[] data = new byte[200 * 1024];
+            random.nextBytes(data);
+            Files.write(site.resolve("data.bin"), data);
+            String timestamp = "2026010%d-020000".formatted(day);
+            Path snapshot = repository.snapshotFile("sites", timestamp);
+            ChunkPacker.pack(SourceScanner.scan(root, List.of(site)), repository, snapshot, PackerOptions.defaults());
+            index.add(timestamp, BackupMode.FULL, snapshot);
+        }
+        int chunks = repository.chunkCount();
+
+        index.prune(new RetentionPolicy(1, 0, 0, 0, 0), Set.of());
+
+        assertThat(repository.chunkCount()).isPositive().isLessThan(chunks);
+        Path restored = target.resolve("restored");
+        ChunkPacker.restore(repository, repository.snapshotFile("sites", "20260102-020000"), restored);
+        assertThat(restored.resolve("site/data.bin")).hasSameBinaryContentAs(site.resolve("data.bin"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveRestorerTest {
+
+    @TempDir
+    Path root;
+
+    private List<SourceEntry> entries;
+
+    @BeforeEach
+    void createSources() throws IOException {
+        Files.createDirectories(root.resolve("hosts"));
+        Random random = new Random(5);
+        for (String site : List.of("demo", "shop")) {
+            Path content = Files.createDirectories(root.resolve("project/hosts").resolve(site).resolve("content"));
+            Path assets = Files.createDirectories(root.resolve("project/hosts").resolve(site).resolve("assets"));
+            for (int i = 0; i < 20; i++) {
+                Files.writeString(content.resolve("page" + i + ".md"), "# page " + i + " of " + site);
+            }
+            byte[] image = new byte[300_000];
+            random.nextBytes(image);
+            Files.write(assets.resolve("logo.png"), image);
+        }
+        entries = SourceScanner.scan(root, List.of(root.resolve("project")));
+    }
+
+    @Test
+    void restores_everything_and_verifies_the_checksums() throws Exception {
+        PackerOptions options = PackerOptions.defaults();
+        options.setCodec(CompressionCodec.ZSTD);
+        options.setChecksums(true);
+        Path archive = root.resolve("sites.tar.zst");
+        TarGzPacker.Result packed = TarGzPacker.pack(entries, Map.of(), archive.toFile(), options);
+
+        RestoreOptions restoreOptions = RestoreOptions.defaults();
+        // the logos are written by the reader
+        restoreOptions.setWriteBuffer(400_000);
+        restoreOptions.setArchiveSha256(packed.archiveHash());
+        Path target = root.resolve("restore");
+        var result = ArchiveRestorer.restore(archive, target, restoreOptions);
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.files()).isEqualTo(42);
+        assertThat(result.verified()).isEqualTo(42);
+        assertThat(target.resolve(".backup")).doesNotExist();
+        for (SourceEntry entry : entries) {
+            if (!entry.directory()) {
+                assertThat(target.resolve(entry.name())).hasSameBinaryContentAs(entry.path());
+            }
+        }
+    }
+
+    @Test
+    void restores_selected_paths_of_split_archives() throws Exception {
+        PackerOptions options = PackerOptions.defaults();
+        options.setMaxVolumeSize(64 * 1024);
+        Path archive = root.resolve("sites.tar.gz");
+        TarGzPacker.pack(entries, Map.of(), archive.toFile(), options);
+
+        RestoreOptions restoreOptions = RestoreOptions.defaults();
+        restoreOptions.setPaths(List.of("project/hosts/demo/content", "project/hosts/*/assets/*.png"));
+        Path target = root.resolve("restore");
+        var result = ArchiveRestorer.restore(ArchiveVolumes.descriptor(archive), target, restoreOptions);
+
+        assertThat(result.files()).isEqualTo(22);
+        // no checksums in the archive, only the sha256 of the descriptor
+        assertThat(result.verified()).isZero();
+        try (Stream<Path> files = Files.walk(target)) {
+            assertThat(files.filter(Files::isRegularFile).map(file -> target.relativize(file).toString()))
+                    .hasSize(22)
+                    .contains("project/hosts/demo/content/page0.md", "project/hosts/shop/assets/logo.png")
+                    .noneMatch(file -> file.startsWith("project/hosts/shop/content"));
+        }
+    }
+
+    @Test
+    void wrong_archive_checksum_fails() throws Exception {
+        Path archive = root.resolve("sites.tar.gz");
+        TarGzPacker.pack(entries, Map.of(), archive.toFile(), PackerOptions.defaults());
+
+        RestoreOptions restoreOptions = RestoreOptions.defaults();
+        restoreOptions.setArchiveSha256("0".repeat(64));
+
+        assertThatThrownBy(() -> ArchiveRestorer.restore(archive, root.resolve("restore"), restoreOptions))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("sha256 of sites.tar.gz");
+    }
+}
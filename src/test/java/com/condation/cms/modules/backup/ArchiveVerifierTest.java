@@ -0,0 +1,97 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveVerifierTest {
+
+    @TempDir
+    Path root;
+
+    private Path archive;
+    private TarGzPacker.Result packed;
+
+    @BeforeEach
+    void pack() throws IOException {
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Random random = new Random(13);
+        for (int i = 0; i < 10; i++) {
+            byte[] data = new byte[random.nextInt(40_000)];
+            random.nextBytes(data);
+            Files.write(project.resolve("file" + i + ".bin"), data);
+        }
+        PackerOptions options = PackerOptions.defaults();
+        options.setEntryHashes(true);
+        archive = root.resolve("sites.tar.gz");
+        packed = TarGzPacker.pack(SourceScanner.scan(root, List.of(project)), Map.of(), archive.toFile(), options);
+    }
+
+    @Test
+    void valid_archive_passes() {
+        var report = ArchiveVerifier.verify(archive, packed.entryHashes(), packed.archiveHash());
+
+        assertThat(report.isValid()).isTrue();
+        assertThat(report.entries()).isEqualTo(10);
+    }
+
+    @Test
+    void wrong_or_missing_checksums_fail() {
+        Map<String, String> hashes = new HashMap<>(packed.entryHashes());
+        hashes.put("project/file3.bin", "0".repeat(64));
+        hashes.put("project/lost.bin", "0".repeat(64));
+
+        var report = ArchiveVerifier.verify(archive, hashes, packed.archiveHash());
+
+        assertThat(report.failures()).containsExactlyInAnyOrder(
+                "project/file3.bin: wrong checksum",
+                "project/lost.bin: missing");
+    }
+
+    @Test
+    void corrupt_archive_fails() throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), Files.size(archive) / 2);
+        }
+
+        var report = ArchiveVerifier.verify(archive, packed.entryHashes(), packed.archiveHash());
+
+        assertThat(report.isValid()).isFalse();
+    }
+}
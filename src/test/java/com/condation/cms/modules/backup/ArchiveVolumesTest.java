@@ -0,0 +1,114 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveVolumesTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void joined_volumes_are_the_archive() throws Exception {
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Random random = new Random(3);
+        for (int i = 0; i < 10; i++) {
+            byte[] data = new byte[50_000];
+            random.nextBytes(data);
+            Files.write(project.resolve("file" + i + ".bin"), data);
+        }
+        List<SourceEntry> entries = SourceScanner.scan(root, List.of(project));
+
+        Path single = root.resolve("single.tar.gz");
+        TarGzPacker.Result expected = TarGzPacker.pack(entries, Map.of(), single.toFile(), PackerOptions.defaults());
+
+        PackerOptions options = PackerOptions.defaults();
+        options.setMaxVolumeSize(100_000);
+        Path archive = root.resolve("split.tar.gz");
+        TarGzPacker.Result result = TarGzPacker.pack(entries, Map.of(), archive.toFile(), options);
+
+        assertThat(archive).doesNotExist();
+        assertThat(result.archiveHash()).isEqualTo(expected.archiveHash());
+
+        var volumes = ArchiveVolumes.load(ArchiveVolumes.descriptor(archive));
+        assertThat(volumes.archive()).isEqualTo("split.tar.gz");
+        assertThat(volumes.size()).isEqualTo(Files.size(single));
+        assertThat(volumes.sha256()).isEqualTo(expected.archiveHash());
+        assertThat(volumes.volumes()).hasSize((int) ((Files.size(single) + 99_999) / 100_000));
+        assertThat(volumes.volumes().get(0).file()).isEqualTo("split.tar.gz.part001");
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (var volume : volumes.volumes()) {
+            Path file = root.resolve(volume.file());
+            assertThat(Files.size(file)).isEqualTo(volume.size()).isLessThanOrEqualTo(100_000);
+            assertThat(BackupUtil.calculateSHA256(file)).isEqualTo(volume.sha256());
+            joined.write(Files.readAllBytes(file));
+        }
+        assertThat(joined.toByteArray()).isEqualTo(Files.readAllBytes(single));
+
+        ArchiveVolumes.delete(ArchiveVolumes.descriptor(archive));
+        try (var files = Files.list(root)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .containsExactlyInAnyOrder("hosts", "project", "single.tar.gz");
+        }
+    }
+
+    @Test
+    void failed_volume_does_not_stop_the_others() throws Exception {
+        Path archive = root.resolve("sites.tar");
+        try (var out = new ArchiveVolumes.Output(archive, 10, Throttle.NONE)) {
+            out.write(new byte[35]);
+        }
+        Path descriptor = ArchiveVolumes.descriptor(archive);
+        List<String> uploaded = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> ArchiveVolumes.upload(descriptor, 2, file -> {
+            if (file.getFileName().toString().endsWith("part002")) {
+                throw new IOException("connection reset");
+            }
+            uploaded.add(file.getFileName().toString());
+        })).isInstanceOf(IOException.class).hasMessageContaining("sites.tar.part002");
+
+        // the descriptor is only sent when all volumes are complete
+        assertThat(uploaded).containsExactlyInAnyOrder("sites.tar.part001", "sites.tar.part003", "sites.tar.part004");
+
+        uploaded.clear();
+        ArchiveVolumes.upload(descriptor, 2, file -> uploaded.add(file.getFileName().toString()));
+        assertThat(uploaded).hasSize(5).last().isEqualTo("sites.tar.volumes");
+    }
+}
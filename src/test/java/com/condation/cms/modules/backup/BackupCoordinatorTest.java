@@ -0,0 +1,130 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BackupCoordinatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void running_backup_is_skipped() {
+        var coordinator = new BackupCoordinator(2);
+
+        assertThat(coordinator.start("sites")).isTrue();
+        assertThat(coordinator.start("sites")).isFalse();
+        assertThat(coordinator.start("media")).isTrue();
+
+        coordinator.finish("sites");
+        assertThat(coordinator.start("sites")).isTrue();
+    }
+
+    @Test
+    void parallel_builds_are_limited() throws Exception {
+        var coordinator = new BackupCoordinator(1);
+        var first = coordinator.acquire("sites", List.of());
+
+        var second = acquireAsync(coordinator, "media", List.of());
+        assertThatThrownBy(() -> second.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    void backups_on_the_same_volume_are_serialized() throws Exception {
+        var coordinator = new BackupCoordinator(4, 1);
+        Path sites = Files.createDirectories(tempDir.resolve("sites"));
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+
+        var first = coordinator.acquire("sites", List.of(sites));
+        var second = acquireAsync(coordinator, "media", List.of(media));
+        assertThatThrownBy(() -> second.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        // closing twice releases once
+        first.close();
+        first.close();
+        var permit = second.get(5, TimeUnit.SECONDS);
+        // the global limit is not lowered by the second close
+        var others = List.of(coordinator.acquire("a", List.of()), coordinator.acquire("b", List.of()), coordinator.acquire("c", List.of()));
+        others.forEach(BackupCoordinator.Permit::close);
+        permit.close();
+    }
+
+    @Test
+    void volumes_allow_max_parallel_by_default() throws Exception {
+        var coordinator = new BackupCoordinator(2);
+        Path sites = Files.createDirectories(tempDir.resolve("sites"));
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+
+        var first = coordinator.acquire("sites", List.of(sites));
+        var second = acquireAsync(coordinator, "media", List.of(media));
+        second.get(5, TimeUnit.SECONDS).close();
+        first.close();
+    }
+
+    @Test
+    void waiting_jobs_start_in_arrival_order() throws Exception {
+        var coordinator = new BackupCoordinator(1, 1);
+        Path sites = Files.createDirectories(tempDir.resolve("sites"));
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+
+        var first = coordinator.acquire("other", List.of());
+        var waiting = acquireAsync(coordinator, "sites", List.of(sites));
+        assertThatThrownBy(() -> waiting.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        var next = acquireAsync(coordinator, "media", List.of(media));
+        assertThatThrownBy(() -> next.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        first.close();
+        var permit = waiting.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> next.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        permit.close();
+        next.get(5, TimeUnit.SECONDS).close();
+    }
+
+    private static CompletableFuture<BackupCoordinator.Permit> acquireAsync(BackupCoordinator coordinator, String name, Collection<Path> sources) {
+        var future = new CompletableFuture<BackupCoordinator.Permit>();
+        Thread.ofPlatform().daemon().start(() -> {
+            try {
+                future.complete(coordinator.acquire(name, sources));
+            } catch (InterruptedException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -31,6 +31,9 @@ import com.condation.cms.api.scheduler.CronJobContext;
 import com.condation.cms.api.utils.PathUtil;
 import com.condation.cms.api.utils.ServerUtil;
 import com.google.inject.Injector;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -39,10 +42,18 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -225,6 +236,340 @@ class BackupCronJobIntegrationTest {
         }
     }
 
+    @Test
+    void shouldArchiveOnlyChangesInIncrementalMode() throws Exception {
+        // GIVEN
+        Path content = serverHome.resolve("content");
+        createDummyFile(content.resolve("unchanged.md"), "unchanged");
+        createDummyFile(content.resolve("changed.md"), "first version");
+        createDummyFile(content.resolve("deleted.md"), "will be deleted");
+
+        Configuration.Backup backup = new Configuration.Backup();
+        backup.setName("incremental-test");
+        backup.setMode("incremental");
+        backup.setInclude_dirs(List.of(content.toString()));
+        BackupCronJob job = new BackupCronJob(targetPath, serverModuleContext, backup);
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            // WHEN: first run has no manifest and is a full backup
+            job.accept(cronJobContext);
+
+            assertThat(targetPath.resolve("incremental-test.full.manifest")).exists();
+            assertThat(targetPath.resolve("incremental-test.manifest")).exists();
+            assertThat(archiveEntries("-full.tar.gz"))
+                    .contains("content/unchanged.md", "content/changed.md", "content/deleted.md");
+
+            // AND: second run only contains the changes
+            createDummyFile(content.resolve("changed.md"), "second, longer version");
+            createDummyFile(content.resolve("added.md"), "new");
+            Files.delete(content.resolve("deleted.md"));
+
+            job.accept(cronJobContext);
+
+            // THEN
+            assertThat(archiveEntries("-incr.tar.gz"))
+                    .containsExactlyInAnyOrder("content/added.md", "content/changed.md", BackupManifest.DELETIONS_ENTRY,
+                            TarGzPacker.CHECKSUMS_ENTRY);
+
+            BackupManifest manifest = BackupManifest.load(targetPath.resolve("incremental-test.manifest")).orElseThrow();
+            assertThat(manifest.getType()).isEqualTo(BackupMode.INCREMENTAL);
+            assertThat(manifest.getEntries()).containsKeys("content/added.md", "content/unchanged.md")
+                    .doesNotContainKey("content/deleted.md");
+            assertThat(manifest.getEntries().get("content/unchanged.md").hash()).hasSize(64);
+
+            // AND: no changes, no archive
+            job.accept(cronJobContext);
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.filter(p -> p.toString().endsWith(".tar.gz"))).hasSize(2);
+            }
+            verify(hookSystem, times(2)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldSkipArchivingWhenFingerprintIsUnchanged() throws Exception {
+        // GIVEN
+        String backupName = "fingerprint-test";
+        Path sourceFile = serverHome.resolve("page.md");
+        createDummyFile(sourceFile, "# Page");
+
+        when(backupConfig.getName()).thenReturn(backupName);
+        when(backupConfig.getInclude_files()).thenReturn(List.of(sourceFile.toString()));
+        when(backupConfig.getInclude_dirs()).thenReturn(List.of());
+        when(backupConfig.isProcessOnlyOnChange()).thenReturn(true);
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            backupCronJob.accept(cronJobContext);
+            assertThat(targetPath.resolve(backupName + ".fingerprint")).exists();
+
+            // without the archive checksum only the fingerprint can prevent a new archive
+            Files.delete(targetPath.resolve(backupName + ".sha256"));
+
+            // WHEN
+            backupCronJob.accept(cronJobContext);
+
+            // THEN
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.filter(p -> p.toString().endsWith(".tar.gz"))).hasSize(1);
+            }
+            verify(hookSystem, times(1)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldArchiveAgainWhenSettingsChange() throws Exception {
+        // GIVEN
+        String backupName = "settings-test";
+        Path sourceFile = serverHome.resolve("page.md");
+        createDummyFile(sourceFile, "# Page");
+
+        when(backupConfig.getName()).thenReturn(backupName);
+        when(backupConfig.getInclude_files()).thenReturn(List.of(sourceFile.toString()));
+        when(backupConfig.getInclude_dirs()).thenReturn(List.of());
+        when(backupConfig.isProcessOnlyOnChange()).thenReturn(true);
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            backupCronJob.accept(cronJobContext);
+
+            // WHEN: same sources, other codec
+            when(backupConfig.getCompression()).thenReturn("zstd");
+            when(backupConfig.getCompression_level()).thenReturn(3);
+            backupCronJob.accept(cronJobContext);
+
+            // THEN
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.map(p -> p.getFileName().toString()))
+                        .anyMatch(name -> name.endsWith(".tar.gz"))
+                        .anyMatch(name -> name.endsWith(".tar.zst"));
+            }
+            verify(hookSystem, times(2)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldCompareUncompressedArchivesByChecksum() throws Exception {
+        // GIVEN
+        Path content = serverHome.resolve("content");
+        createDummyFile(content.resolve("index.md"), "# Index");
+
+        Configuration.Backup backup = new Configuration.Backup();
+        backup.setName("zero-copy-test");
+        backup.setCompression("none");
+        backup.setProcessOnlyOnChange(true);
+        backup.setChange_detection("archive");
+        backup.setInclude_dirs(List.of(content.toString()));
+        BackupCronJob job = new BackupCronJob(targetPath, serverModuleContext, backup);
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            // WHEN
+            job.accept(cronJobContext);
+            assertThat(targetPath.resolve("zero-copy-test.sha256")).content().hasSize(64);
+            // the archive names have a timestamp in seconds
+            Thread.sleep(1100);
+            job.accept(cronJobContext);
+
+            // THEN: the second, identical archive is deleted
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.filter(p -> p.toString().endsWith(".tar"))).hasSize(1);
+            }
+            verify(hookSystem, times(1)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldUseReloadedSettings() throws Exception {
+        // GIVEN
+        Path content = serverHome.resolve("content");
+        createDummyFile(content.resolve("index.md"), "# Index");
+
+        Configuration.Backup scheduled = new Configuration.Backup();
+        scheduled.setName("reload-test");
+        scheduled.setEnabled(true);
+        scheduled.setInclude_dirs(List.of(content.toString()));
+        BackupCronJob job = new BackupCronJob(targetPath, serverModuleContext, scheduled);
+
+        Configuration.Backup reloaded = new Configuration.Backup();
+        reloaded.setName("reload-test");
+        reloaded.setEnabled(true);
+        reloaded.setCompression("zstd");
+        reloaded.setInclude_dirs(List.of(content.toString()));
+        Configuration config = new Configuration();
+        config.setBackups(List.of(reloaded));
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class);
+             MockedStatic<ConfigLoader> configLoaderMock = Mockito.mockStatic(ConfigLoader.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+            configLoaderMock.when(ConfigLoader::load).thenReturn(Optional.of(config));
+
+            // WHEN
+            job.accept(cronJobContext);
+
+            // THEN: the reloaded compression applies
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.map(p -> p.getFileName().toString())).singleElement()
+                        .satisfies(name -> assertThat(name).endsWith(".tar.zst"));
+            }
+
+            // AND: a removed backup does not run
+            config.setBackups(List.of());
+            job.accept(cronJobContext);
+            verify(hookSystem, times(1)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldRunPostProcessingAfterVerification() throws Exception {
+        // GIVEN
+        Path content = serverHome.resolve("content");
+        createDummyFile(content.resolve("index.md"), "# Index");
+
+        Configuration.Backup backup = new Configuration.Backup();
+        backup.setName("verify-test");
+        backup.setVerify(true);
+        backup.setInclude_dirs(List.of(content.toString()));
+        BackupCronJob job = new BackupCronJob(targetPath, serverModuleContext, backup);
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            // WHEN
+            job.accept(cronJobContext);
+
+            // THEN: the hook runs on the verification thread
+            verify(hookSystem, timeout(5000)).execute(eq("module/backup/postprocess"), anyMap());
+        }
+    }
+
+    @Test
+    void shouldDeleteArchiveThatFailsVerification() throws Exception {
+        // GIVEN
+        Path content = serverHome.resolve("content");
+        createDummyFile(content.resolve("index.md"), "# Index\n".repeat(2000));
+
+        Configuration.Retention retention = new Configuration.Retention();
+        retention.setKeep_last(3);
+        Configuration.Backup backup = new Configuration.Backup();
+        backup.setName("corrupt-test");
+        backup.setVerify(true);
+        backup.setProcessOnlyOnChange(true);
+        backup.setRetention(retention);
+        backup.setInclude_dirs(List.of(content.toString()));
+        BackupCronJob job = new BackupCronJob(targetPath, serverModuleContext, backup);
+
+        List<BackupMetrics.RunSummary> runs = new CopyOnWriteArrayList<>();
+        MetricsSink sink = new MetricsSink() {
+            @Override
+            public void run(String name, BackupMetrics.RunSummary summary) {
+                runs.add(summary);
+            }
+        };
+        BackupMetrics.register(sink);
+
+        // both verification threads wait, the archive is damaged before it is verified
+        CountDownLatch blocked = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            ArchiveVerifier.verifyAsync("blocker", tempDir.resolve("missing.tar.gz"), Map.of(), null,
+                    () -> { }, () -> await(blocked));
+        }
+
+        try (MockedStatic<ServerUtil> serverUtilMock = Mockito.mockStatic(ServerUtil.class);
+             MockedStatic<PathUtil> pathUtilMock = Mockito.mockStatic(PathUtil.class)) {
+
+            serverUtilMock.when(ServerUtil::getHome).thenReturn(serverHome);
+            pathUtilMock.when(() -> PathUtil.isChild(eq(serverHome), any(Path.class))).thenReturn(true);
+
+            // WHEN
+            job.accept(cronJobContext);
+            // not reported before the verification
+            assertThat(runs).isEmpty();
+            Path archive;
+            try (Stream<Path> files = Files.list(targetPath)) {
+                archive = files.filter(p -> p.toString().endsWith(".tar.gz")).findFirst().orElseThrow();
+            }
+            try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}), Files.size(archive) / 2);
+            }
+            // a run while the last one is verified is skipped
+            job.accept(cronJobContext);
+            try (Stream<Path> files = Files.list(targetPath)) {
+                assertThat(files.filter(p -> p.toString().endsWith(".tar.gz"))).hasSize(1);
+            }
+            blocked.countDown();
+
+            // THEN: the backup is done once the cleanup is finished
+            boolean finished = false;
+            for (int i = 0; i < 100 && !finished; i++) {
+                Thread.sleep(50);
+                finished = BackupCoordinator.shared().start("corrupt-test");
+            }
+            assertThat(finished).isTrue();
+            BackupCoordinator.shared().finish("corrupt-test");
+            assertThat(archive).doesNotExist();
+            assertThat(targetPath.resolve("corrupt-test.sha256")).doesNotExist();
+            assertThat(targetPath.resolve("corrupt-test.fingerprint")).doesNotExist();
+            assertThat(targetPath.resolve("corrupt-test.index")).doesNotExist();
+            verify(hookSystem, never()).execute(eq("module/backup/postprocess"), anyMap());
+            assertThat(runs).singleElement()
+                    .satisfies(summary -> assertThat(summary.isSuccess()).isFalse())
+                    .satisfies(summary -> assertThat(summary.error()).hasMessageContaining("verification"));
+        } finally {
+            blocked.countDown();
+            BackupMetrics.unregister(sink);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<String> archiveEntries(String suffix) throws Exception {
+        Path archive;
+        try (Stream<Path> files = Files.list(targetPath)) {
+            archive = files.filter(p -> p.toString().endsWith(suffix)).findFirst().orElseThrow();
+        }
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(
+                new GzipCompressorInputStream(Files.newInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    names.add(entry.getName());
+                }
+            }
+        }
+        return names;
+    }
+
     // Helper
     private void createDummyFile(Path path, String content) {
         try {
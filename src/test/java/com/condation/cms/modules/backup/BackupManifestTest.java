@@ -0,0 +1,100 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackupManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void detects_added_changed_and_deleted_entries() {
+        BackupManifest manifest = BackupManifest.create(BackupMode.FULL, "full.tar.gz", List.of(
+                dir("content"),
+                file("content/a.md", 10, 1000),
+                file("content/b.md", 20, 1000),
+                file("content/c.md", 30, 1000)
+        ), Map.of("content/a.md", "aaa", "content/b.md", "bbb", "content/c.md", "ccc"), null);
+
+        BackupManifest.Changes changes = manifest.changes(List.of(
+                dir("content"),
+                file("content/a.md", 10, 1000), // unchanged
+                file("content/b.md", 20, 2000), // touched
+                file("content/d.md", 40, 1000), // new
+                dir("content/images") // new
+        ));
+
+        assertThat(changes.changed()).extracting(SourceEntry::name)
+                .containsExactly("content/b.md", "content/d.md", "content/images");
+        assertThat(changes.deleted()).containsExactly("content/c.md");
+    }
+
+    @Test
+    void unchanged_files_keep_hash_of_base() {
+        BackupManifest base = BackupManifest.create(BackupMode.FULL, "full.tar.gz",
+                List.of(file("a.md", 10, 1000), file("b.md", 20, 1000)),
+                Map.of("a.md", "aaa", "b.md", "bbb"), null);
+
+        BackupManifest next = BackupManifest.create(BackupMode.INCREMENTAL, "incr.tar.gz",
+                List.of(file("a.md", 10, 1000), file("b.md", 25, 2000)),
+                Map.of("b.md", "bbb2"), base);
+
+        assertThat(next.getEntries().get("a.md").hash()).isEqualTo("aaa");
+        assertThat(next.getEntries().get("b.md").hash()).isEqualTo("bbb2");
+    }
+
+    @Test
+    void save_and_load() throws Exception {
+        BackupManifest manifest = BackupManifest.create(BackupMode.DIFFERENTIAL, "diff.tar.gz",
+                List.of(dir("content"), file("content/with space.md", 10, 1000)),
+                Map.of("content/with space.md", "aaa"), null);
+
+        Path file = tempDir.resolve("test.manifest");
+        manifest.save(file);
+
+        BackupManifest loaded = BackupManifest.load(file).orElseThrow();
+        assertThat(loaded.getType()).isEqualTo(BackupMode.DIFFERENTIAL);
+        assertThat(loaded.getArchive()).isEqualTo("diff.tar.gz");
+        assertThat(loaded.getCreated()).isEqualTo(manifest.getCreated());
+        assertThat(loaded.getEntries()).isEqualTo(manifest.getEntries());
+        assertThat(BackupManifest.load(tempDir.resolve("missing.manifest"))).isEmpty();
+    }
+
+    private static SourceEntry dir(String name) {
+        return new SourceEntry(Path.of(name), name, true, 0, 1000);
+    }
+
+    private static SourceEntry file(String name, long size, long lastModified) {
+        return new SourceEntry(Path.of(name), name, false, size, lastModified);
+    }
+}
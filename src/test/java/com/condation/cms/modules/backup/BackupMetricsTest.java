@@ -0,0 +1,166 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackupMetricsTest {
+
+    @TempDir
+    Path root;
+
+    private final List<BackupMetrics.RunSummary> runs = new ArrayList<>();
+    private final MetricsSink sink = new MetricsSink() {
+        @Override
+        public void run(String backup, BackupMetrics.RunSummary summary) {
+            runs.add(summary);
+        }
+    };
+
+    @AfterEach
+    void cleanup() {
+        BackupMetrics.unregister(sink);
+        JmxMetrics.shared().unregisterAll();
+    }
+
+    @Test
+    void phases_add_up_to_the_pack_time() throws IOException {
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Random random = new Random(7);
+        for (int i = 0; i < 10; i++) {
+            byte[] data = new byte[random.nextInt(40_000)];
+            random.nextBytes(data);
+            Files.write(project.resolve("file" + i + ".bin"), data);
+        }
+        PackStats stats = new PackStats();
+        PackerOptions options = PackerOptions.defaults();
+        options.setEntryHashes(true);
+        options.setStats(stats);
+        Path archive = root.resolve("sites.tar.gz");
+
+        long start = System.nanoTime();
+        TarGzPacker.pack(SourceScanner.scan(root, List.of(project)), Map.of(), archive.toFile(), options);
+        long total = System.nanoTime() - start;
+
+        assertThat(stats.getFiles()).isEqualTo(10);
+        assertThat(stats.getBytesIn()).isEqualTo(Files.walk(project).filter(Files::isRegularFile)
+                .mapToLong(file -> file.toFile().length()).sum());
+        assertThat(stats.getBytesOut()).isEqualTo(Files.size(archive));
+        assertThat(stats.phases()).containsKeys(BackupMetrics.Phase.READ, BackupMetrics.Phase.TAR,
+                BackupMetrics.Phase.COMPRESS, BackupMetrics.Phase.HASH, BackupMetrics.Phase.WRITE);
+        assertThat(stats.phases().values()).allMatch(nanos -> nanos >= 0);
+        assertThat(stats.phases().values().stream().mapToLong(Long::longValue).sum()).isLessThanOrEqualTo(total);
+    }
+
+    @Test
+    void closing_the_compressor_is_compress_time() throws IOException {
+        long delay = TimeUnit.MILLISECONDS.toNanos(50);
+        // like a compressor writing its last blocks on close
+        OutputStream compressor = new FilterOutputStream(OutputStream.nullOutputStream()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.close();
+            }
+        };
+        PackStats stats = new PackStats();
+
+        long start = System.nanoTime();
+        try (OutputStream out = PackStats.timed(PackStats.timed(compressor, stats, PackStats.Stage.COMPRESS),
+                stats, PackStats.Stage.TAR_HASH)) {
+            out.write(new byte[100]);
+        }
+        stats.finish(System.nanoTime() - start);
+
+        assertThat(stats.getCompressNanos()).isGreaterThanOrEqualTo(delay);
+        assertThat(stats.getTarNanos()).isLessThan(delay);
+    }
+
+    @Test
+    void runs_are_reported_to_sinks_and_jmx() throws Exception {
+        BackupMetrics.register(sink);
+
+        try (var run = BackupMetrics.start("metrics-test")) {
+            run.phase(BackupMetrics.Phase.SCAN, 2_000_000, 0);
+            PackStats stats = new PackStats();
+            stats.file(3000);
+            stats.finish(5_000_000, 1000);
+            run.packed(stats);
+        }
+        try (var run = BackupMetrics.start("metrics-test")) {
+            run.failed(new IOException("disk full"));
+        }
+        BackupMetrics.upload("metrics-test", "s3", 4_000_000, 1000, true);
+
+        assertThat(runs).hasSize(2);
+        assertThat(runs.get(0).isSuccess()).isTrue();
+        assertThat(runs.get(0).compressionRatio()).isEqualTo(3.0);
+        assertThat(runs.get(1).isSuccess()).isFalse();
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var backup = new ObjectName(JmxMetrics.DOMAIN + ":type=Backup,name=" + ObjectName.quote("metrics-test"));
+        assertThat(server.getAttribute(backup, "Runs")).isEqualTo(2L);
+        assertThat(server.getAttribute(backup, "Failures")).isEqualTo(1L);
+        assertThat(server.getAttribute(backup, "LastError")).asString().contains("disk full");
+        assertThat(server.getAttribute(backup, "ScanMillis")).isEqualTo(2L);
+        assertThat((Long) server.getAttribute(backup, "LastSuccess")).isPositive();
+
+        var upload = new ObjectName(JmxMetrics.DOMAIN + ":type=Upload,backup=" + ObjectName.quote("metrics-test")
+                + ",target=" + ObjectName.quote("s3"));
+        assertThat(server.getAttribute(upload, "Uploads")).isEqualTo(1L);
+        assertThat(server.getAttribute(upload, "Bytes")).isEqualTo(1000L);
+
+        BackupMetrics.status(new PostProcessingExecutor.Status("metrics-test", "s3", "a.tar.gz",
+                PostProcessingExecutor.State.FAILED, Instant.now(), "bucket not found"));
+        assertThat(server.getAttribute(upload, "State")).isEqualTo("FAILED");
+        assertThat(server.getAttribute(upload, "File")).isEqualTo("a.tar.gz");
+        assertThat(server.getAttribute(upload, "Error")).isEqualTo("bucket not found");
+        // the failed upload is a failure of the backup
+        assertThat(server.getAttribute(backup, "LastError")).asString().contains("s3", "bucket not found");
+
+        JmxMetrics.shared().unregisterAll();
+        assertThat(server.isRegistered(backup)).isFalse();
+    }
+}
@@ -0,0 +1,156 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkPackerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path root;
+    private ChunkRepository repository;
+    private PackerOptions options;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = Files.createDirectories(tempDir.resolve("server"));
+        repository = ChunkRepository.open(tempDir.resolve("repository"));
+        options = PackerOptions.defaults();
+        options.setChunkSize(16 * 1024);
+
+        Path content = Files.createDirectories(root.resolve("hosts/demo/content"));
+        Files.writeString(content.resolve("index.md"), "# Hello");
+        Files.write(content.resolve("image.bin"), random(1, 300 * 1024));
+        Files.createDirectories(root.resolve("hosts/demo/empty"));
+        Files.write(root.resolve("hosts/demo/empty.txt"), new byte[0]);
+    }
+
+    @Test
+    void second_snapshot_writes_no_chunks() throws Exception {
+        var first = ChunkPacker.pack(scan(), repository, repository.snapshotFile("demo", "1"), options);
+        var second = ChunkPacker.pack(scan(), repository, repository.snapshotFile("demo", "2"), options);
+
+        assertThat(first.newChunks()).isEqualTo(first.chunks()).isPositive();
+        assertThat(second.newChunks()).isZero();
+        assertThat(second.snapshotHash()).isEqualTo(first.snapshotHash());
+        assertThat(repository.chunkCount()).isEqualTo((int) first.chunks());
+    }
+
+    @Test
+    void changed_file_only_writes_changed_chunks() throws Exception {
+        var first = ChunkPacker.pack(scan(), repository, repository.snapshotFile("demo", "1"), options);
+
+        Path image = root.resolve("hosts/demo/content/image.bin");
+        byte[] data = Files.readAllBytes(image);
+        data[150 * 1024] ^= 1;
+        Files.write(image, data);
+
+        var second = ChunkPacker.pack(scan(), repository, repository.snapshotFile("demo", "2"), options);
+
+        assertThat(second.newChunks()).isBetween(1L, 2L);
+        assertThat(second.newSize()).isLessThan(first.newSize() / 2);
+        assertThat(second.snapshotHash()).isNotEqualTo(first.snapshotHash());
+    }
+
+    @Test
+    void restore_snapshot() throws Exception {
+        options.setCodec(CompressionCodec.ZSTD);
+        Path snapshot = repository.snapshotFile("demo", "1");
+        ChunkPacker.pack(scan(), repository, snapshot, options);
+
+        Path restored = tempDir.resolve("restored");
+        ChunkPacker.restore(repository, snapshot, restored);
+
+        for (String file : List.of("hosts/demo/content/index.md", "hosts/demo/content/image.bin", "hosts/demo/empty.txt")) {
+            assertThat(restored.resolve(file)).hasSameBinaryContentAs(root.resolve(file));
+            assertThat(Files.getLastModifiedTime(restored.resolve(file)).toMillis())
+                    .isEqualTo(Files.getLastModifiedTime(root.resolve(file)).toMillis());
+        }
+        assertThat(restored.resolve("hosts/demo/empty")).isDirectory();
+    }
+
+    @Test
+    void chunks_are_stored_once_per_repository() throws Exception {
+        Path other = Files.createDirectories(root.resolve("hosts/other/content"));
+        Files.copy(root.resolve("hosts/demo/content/image.bin"), other.resolve("image.bin"));
+
+        var demo = ChunkPacker.pack(
+                SourceScanner.scan(root, List.of(root.resolve("hosts/demo"))),
+                repository, repository.snapshotFile("demo", "1"), options);
+        var site = ChunkPacker.pack(
+                SourceScanner.scan(root, List.of(root.resolve("hosts/other"))),
+                repository, repository.snapshotFile("other", "1"), options);
+
+        assertThat(demo.newChunks()).isPositive();
+        assertThat(site.newChunks()).isZero();
+        try (Stream<Path> files = Files.walk(repository.getDirectory().resolve("chunks"))) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(demo.newChunks());
+        }
+    }
+
+    @Test
+    void chunks_of_deleted_snapshots_are_collected() throws Exception {
+        Path first = repository.snapshotFile("demo", "1");
+        ChunkPacker.pack(scan(), repository, first, options);
+        Files.write(root.resolve("hosts/demo/content/image.bin"), random(2, 300 * 1024));
+        Path second = repository.snapshotFile("demo", "2");
+        var kept = ChunkPacker.pack(scan(), repository, second, options);
+
+        // nothing to collect while both snapshots exist
+        assertThat(repository.collectGarbage()).isZero();
+
+        Files.delete(first);
+        assertThat(repository.collectGarbage()).isPositive();
+
+        assertThat(repository.chunkCount()).isEqualTo((int) kept.chunks());
+        try (Stream<Path> files = Files.walk(repository.getDirectory().resolve("chunks"))) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(kept.chunks());
+        }
+        Path restored = tempDir.resolve("restored");
+        ChunkPacker.restore(repository, second, restored);
+        assertThat(restored.resolve("hosts/demo/content/image.bin"))
+                .hasSameBinaryContentAs(root.resolve("hosts/demo/content/image.bin"));
+    }
+
+    private List<SourceEntry> scan() throws Exception {
+        return SourceScanner.scan(root, List.of(root.resolve("hosts")));
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
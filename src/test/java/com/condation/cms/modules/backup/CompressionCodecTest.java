@@ -0,0 +1,184 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class CompressionCodecTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void round_trip() throws Exception {
+		byte[] data = siteLikeData(512 * 1024);
+
+		for (CompressionCodec codec : CompressionCodec.values()) {
+			byte[] compressed = compress(codec, null, data);
+
+			try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+				assertThat(in.readAllBytes()).as(codec.name()).isEqualTo(data);
+			}
+		}
+	}
+
+	@Test
+	void packer_writes_every_codec() throws Exception {
+		Files.createDirectories(tempDir.resolve("hosts"));
+		Path project = Files.createDirectories(tempDir.resolve("project"));
+		Files.writeString(project.resolve("index.md"), "# Hello");
+
+		for (CompressionCodec codec : CompressionCodec.values()) {
+			PackerOptions options = new PackerOptions();
+			options.setCodec(codec);
+			Path archive = tempDir.resolve("backup." + codec.getExtension());
+			TarGzPacker.createTarGz(tempDir, archive.toFile(), List.of(project), options);
+
+			assertThat(CompressionCodec.forFileName(archive.getFileName().toString())).contains(codec);
+
+			List<String> names = new ArrayList<>();
+			try (TarArchiveInputStream tais = new TarArchiveInputStream(codec.decompress(new FileInputStream(archive.toFile())))) {
+				TarArchiveEntry entry;
+				while ((entry = tais.getNextEntry()) != null) {
+					names.add(entry.getName());
+				}
+			}
+			assertThat(names).as(codec.name()).containsExactly("project/", "project/index.md");
+		}
+	}
+
+	@Test
+	void codec_names_and_levels() {
+		assertThat(CompressionCodec.of(null)).isEqualTo(CompressionCodec.GZIP);
+		assertThat(CompressionCodec.of("zstd")).isEqualTo(CompressionCodec.ZSTD);
+		assertThat(CompressionCodec.of("LZ4")).isEqualTo(CompressionCodec.LZ4);
+		assertThat(CompressionCodec.of("xz")).isEqualTo(CompressionCodec.XZ);
+		assertThatThrownBy(() -> CompressionCodec.of("rar")).isInstanceOf(IllegalArgumentException.class);
+
+		assertThat(CompressionCodec.ZSTD.level(null)).isEqualTo(3);
+		assertThatThrownBy(() -> CompressionCodec.GZIP.level(12)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	/**
+	 * Logs a small comparison table at debug, numbers are only meant as a rough
+	 * orientation when choosing a codec for a backup.
+	 */
+	@Test
+	void benchmark_table() throws Exception {
+		byte[] data = siteLikeData(1024 * 1024);
+		Object[][] candidates = {
+			{CompressionCodec.LZ4, 1}, {CompressionCodec.LZ4, 9},
+			{CompressionCodec.GZIP, 1}, {CompressionCodec.GZIP, 6}, {CompressionCodec.GZIP, 9},
+			{CompressionCodec.ZSTD, 1}, {CompressionCodec.ZSTD, 3}, {CompressionCodec.ZSTD, 19},
+			{CompressionCodec.XZ, 1}, {CompressionCodec.XZ, 6}
+		};
+
+		StringBuilder table = new StringBuilder();
+		table.append(String.format("%-6s %5s %8s %14s %14s%n", "codec", "level", "ratio", "compress MB/s", "decompress MB/s"));
+		for (Object[] candidate : candidates) {
+			CompressionCodec codec = (CompressionCodec) candidate[0];
+			int level = (int) candidate[1];
+
+			// warm up
+			compress(codec, level, data);
+
+			long start = System.nanoTime();
+			byte[] compressed = compress(codec, level, data);
+			long compressNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			byte[] restored;
+			try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+				restored = in.readAllBytes();
+			}
+			long decompressNanos = System.nanoTime() - start;
+
+			assertThat(restored).isEqualTo(data);
+			table.append(String.format("%-6s %5d %8.2f %14.1f %14.1f%n",
+					codec.name().toLowerCase(), level,
+					(double) data.length / compressed.length,
+					megabytesPerSecond(data.length, compressNanos),
+					megabytesPerSecond(data.length, decompressNanos)));
+		}
+		log.debug("compression levels of a site like file\n{}", table);
+	}
+
+	private static byte[] compress(CompressionCodec codec, Integer level, byte[] data) throws Exception {
+		PackerOptions options = new PackerOptions();
+		options.setCodec(codec);
+		options.setCompressionLevel(level);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = codec.compress(compressed, options)) {
+			out.write(data);
+		}
+		return compressed.toByteArray();
+	}
+
+	private static double megabytesPerSecond(long bytes, long nanos) {
+		return (bytes / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+	}
+
+	/**
+	 * markdown like text mixed with some incompressible "media" bytes
+	 */
+	private static byte[] siteLikeData(int size) {
+		Random random = new Random(42);
+		String[] words = {"content", "site", "backup", "title", "template", "the", "and", "page", "menu", "author"};
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		while (out.size() < size) {
+			if (random.nextInt(200) == 0) {
+				byte[] media = new byte[4096];
+				random.nextBytes(media);
+				out.writeBytes(media);
+			} else {
+				StringBuilder line = new StringBuilder("## ");
+				for (int i = 0; i < 12; i++) {
+					line.append(words[random.nextInt(words.length)]).append(' ');
+				}
+				out.writeBytes(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return Arrays.copyOf(out.toByteArray(), size);
+	}
+}
@@ -0,0 +1,143 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.condation.cms.api.utils.ServerUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConfigLoaderTest {
+
+    private static final String CONFIG = """
+            target: /backups
+            backups:
+              - name: sites
+                enabled: true
+                compression: %s
+                post_processing:
+                  - type: ftp
+                    enabled: false
+                  - type: s3
+                    enabled: true
+                    config:
+                      bucket: backups
+            """;
+
+    @TempDir
+    Path home;
+
+    private MockedStatic<ServerUtil> serverUtil;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(home.resolve("config"));
+        serverUtil = Mockito.mockStatic(ServerUtil.class);
+        serverUtil.when(ServerUtil::getHome).thenReturn(home);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ConfigLoader.close();
+        serverUtil.close();
+    }
+
+    @Test
+    void loads_once_and_indexes_backups() throws Exception {
+        write("zstd");
+
+        Configuration configuration = ConfigLoader.load().orElseThrow();
+
+        assertThat(ConfigLoader.load()).containsSame(configuration);
+        var backup = configuration.getBackup("sites").orElseThrow();
+        assertThat(backup.getPostProcessing("s3").orElseThrow().getConfig()).containsEntry("bucket", "backups");
+        // validation fills missing parts
+        assertThat(backup.getPostProcessing("ftp").orElseThrow().getConfig()).isEmpty();
+        assertThat(configuration.getBackup("other")).isEmpty();
+    }
+
+    @Test
+    void reloads_changed_file() throws Exception {
+        write("zstd");
+        assertThat(ConfigLoader.load().orElseThrow().getBackup("sites").orElseThrow().getCompression()).isEqualTo("zstd");
+
+        // invalid files are ignored, the last configuration stays
+        write("brotli");
+        write("xz");
+
+        assertThat(awaitCompression("xz")).isTrue();
+    }
+
+    @Test
+    void rejects_invalid_file() throws Exception {
+        write("brotli");
+
+        assertThatThrownBy(ConfigLoader::load)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("brotli");
+    }
+
+    @Test
+    void duplicate_backups_keep_the_first() throws Exception {
+        Files.writeString(home.resolve("config/backup.yaml"), CONFIG.formatted("zstd")
+                + """
+                  - name: sites
+                    compression: xz
+                """);
+
+        Configuration configuration = ConfigLoader.load().orElseThrow();
+
+        assertThat(configuration.getBackups()).hasSize(1);
+        assertThat(configuration.getBackup("sites").orElseThrow().getCompression()).isEqualTo("zstd");
+    }
+
+    @Test
+    void missing_file_is_empty() throws Exception {
+        assertThat(ConfigLoader.load()).isEmpty();
+    }
+
+    private boolean awaitCompression(String compression) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            var backup = ConfigLoader.load().flatMap(configuration -> configuration.getBackup("sites"));
+            if (backup.isPresent() && compression.equals(backup.get().getCompression())) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private void write(String compression) throws IOException {
+        Files.writeString(home.resolve("config/backup.yaml"), CONFIG.formatted(compression));
+    }
+}
@@ -0,0 +1,143 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FTPClientPoolTest {
+
+    private final List<FTPClient> created = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        FTPClientPool.closeAll();
+    }
+
+    @Test
+    void connections_are_limited_and_reused() throws Exception {
+        var pool = FTPClientPool.of(config("limited", 2), this::newClient);
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        assertThat(first.client()).isNotSameAs(second.client());
+
+        var third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThatThrownBy(() -> third.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        pool.release(first, false);
+        assertThat(third.get(5, TimeUnit.SECONDS).client()).isSameAs(first.client());
+        assertThat(created).hasSize(2);
+    }
+
+    @Test
+    void broken_and_dead_connections_are_replaced() throws Exception {
+        var pool = FTPClientPool.of(config("broken", 1), this::newClient);
+
+        var broken = pool.borrow();
+        pool.release(broken, true);
+        verify(broken.client()).disconnect();
+
+        var dead = pool.borrow();
+        pool.release(dead, false);
+        when(dead.client().noop()).thenThrow(new IOException("connection reset"));
+
+        assertThat(pool.borrow().client()).isNotSameAs(dead.client());
+        assertThat(created).hasSize(3);
+    }
+
+    @Test
+    void failed_login_releases_the_slot() throws Exception {
+        var pool = FTPClientPool.of(config("denied", 1), () -> {
+            var client = newClient();
+            try {
+                when(client.login(any(), any())).thenReturn(false);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return client;
+        });
+
+        assertThatThrownBy(pool::borrow).isInstanceOf(IOException.class).hasMessageContaining("login");
+        assertThatThrownBy(pool::borrow).isInstanceOf(IOException.class).hasMessageContaining("login");
+    }
+
+    @Test
+    void changed_settings_replace_the_pool() throws Exception {
+        var pool = FTPClientPool.of(config("reload", 2), this::newClient);
+        assertThat(FTPClientPool.of(config("reload", 2), this::newClient)).isSameAs(pool);
+
+        var idle = pool.borrow();
+        var borrowed = pool.borrow();
+        pool.release(idle, false);
+
+        var reloaded = FTPClientPool.of(config("reload", 3), this::newClient);
+        assertThat(reloaded).isNotSameAs(pool);
+        verify(idle.client()).disconnect();
+
+        // released to the old pool, closed instead of kept
+        pool.release(borrowed, false);
+        verify(borrowed.client()).disconnect();
+
+        assertThat(reloaded.borrow().client()).isNotIn(idle.client(), borrowed.client());
+        assertThat(created).hasSize(3);
+    }
+
+    private FTPClient newClient() {
+        FTPClient client = mock(FTPClient.class);
+        try {
+            when(client.isConnected()).thenReturn(true);
+            when(client.login(any(), any())).thenReturn(true);
+            when(client.noop()).thenReturn(200);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        created.add(client);
+        return client;
+    }
+
+    private static Map<String, Object> config(String username, int connections) {
+        return Map.of("host", "localhost", "port", 21, "username", username, "password", "secret",
+                "connections", connections);
+    }
+}
@@ -0,0 +1,183 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FTPResumeTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void interrupted_upload_is_resumed() throws Exception {
+        byte[] data = new byte[300_000];
+        new Random(19).nextBytes(data);
+        Path file = Files.write(tempDir.resolve("sites.tar.gz"), data);
+        var server = new InMemoryFtpClient();
+
+        // the link breaks after 200000 bytes
+        server.failAfter = 200_000;
+        assertThatThrownBy(() -> FTPUpload.store(server, file, "sites.tar.gz", true, Throttle.NONE))
+                .isInstanceOf(IOException.class);
+        assertThat(server.files).containsOnlyKeys("sites.tar.gz.part");
+        assertThat(server.files.get("sites.tar.gz.part")).hasSize(200_000);
+
+        server.failAfter = -1;
+        FTPUpload.store(server, file, "sites.tar.gz", true, Throttle.NONE);
+
+        assertThat(server.appended).isEqualTo(100_000);
+        assertThat(server.files).containsOnlyKeys("sites.tar.gz");
+        assertThat(server.files.get("sites.tar.gz")).isEqualTo(data);
+    }
+
+    @Test
+    void complete_part_is_only_renamed() throws Exception {
+        byte[] data = "complete".getBytes();
+        Path file = Files.write(tempDir.resolve("sites.tar.gz"), data);
+        var server = new InMemoryFtpClient();
+        server.files.put("sites.tar.gz.part", data.clone());
+        server.files.put("sites.tar.gz", "old".getBytes());
+
+        FTPUpload.store(server, file, "sites.tar.gz", true, Throttle.NONE);
+
+        assertThat(server.stored).isZero();
+        assertThat(server.files).containsOnlyKeys("sites.tar.gz");
+        assertThat(server.files.get("sites.tar.gz")).isEqualTo(data);
+    }
+
+    @Test
+    void bigger_remote_file_is_replaced() throws Exception {
+        byte[] data = "new".getBytes();
+        Path file = Files.write(tempDir.resolve("sites.tar.gz"), data);
+        var server = new InMemoryFtpClient();
+        server.files.put("sites.tar.gz", "much longer old content".getBytes());
+
+        FTPUpload.store(server, file, "sites.tar.gz", false, Throttle.NONE);
+
+        assertThat(server.files.get("sites.tar.gz")).isEqualTo(data);
+    }
+
+    @Test
+    void server_without_size_gets_the_whole_file() throws Exception {
+        byte[] data = new byte[50_000];
+        new Random(23).nextBytes(data);
+        Path file = Files.write(tempDir.resolve("sites.tar.gz"), data);
+        var server = new InMemoryFtpClient() {
+            @Override
+            public String getSize(String pathname) {
+                return null;
+            }
+        };
+        server.files.put("sites.tar.gz.part", new byte[10_000]);
+
+        FTPUpload.store(server, file, "sites.tar.gz", true, Throttle.NONE);
+
+        assertThat(server.appended).isZero();
+        assertThat(server.stored).isEqualTo(50_000);
+        assertThat(server.files).containsOnlyKeys("sites.tar.gz");
+        assertThat(server.files.get("sites.tar.gz")).isEqualTo(data);
+    }
+
+    /**
+     * Stands in for an ftp server: files in memory, a transfer can break
+     * after a number of bytes.
+     */
+    static class InMemoryFtpClient extends FTPClient {
+
+        final Map<String, byte[]> files = new HashMap<>();
+        long failAfter = -1;
+        long stored;
+        long appended;
+
+        @Override
+        public String getSize(String pathname) {
+            byte[] content = files.get(pathname);
+            return content != null ? Integer.toString(content.length) : null;
+        }
+
+        @Override
+        public boolean storeFile(String remote, InputStream local) throws IOException {
+            files.put(remote, new byte[0]);
+            stored += transfer(remote, local);
+            return true;
+        }
+
+        @Override
+        public boolean appendFile(String remote, InputStream local) throws IOException {
+            files.putIfAbsent(remote, new byte[0]);
+            appended += transfer(remote, local);
+            return true;
+        }
+
+        @Override
+        public boolean rename(String from, String to) {
+            byte[] content = files.remove(from);
+            if (content == null) {
+                return false;
+            }
+            files.put(to, content);
+            return true;
+        }
+
+        @Override
+        public boolean deleteFile(String pathname) {
+            return files.remove(pathname) != null;
+        }
+
+        private long transfer(String remote, InputStream local) throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            content.writeBytes(files.get(remote));
+            byte[] buffer = new byte[8192];
+            long transferred = 0;
+            int read;
+            try {
+                while ((read = local.read(buffer)) > 0) {
+                    if (failAfter >= 0 && content.size() + read > failAfter) {
+                        content.write(buffer, 0, (int) (failAfter - content.size()));
+                        throw new IOException("connection reset");
+                    }
+                    content.write(buffer, 0, read);
+                    transferred += read;
+                }
+            } finally {
+                files.put(remote, content.toByteArray());
+            }
+            return transferred;
+        }
+    }
+}
@@ -47,6 +47,13 @@ public class FTPUploadTest {
         FTPClient mockFtp = Mockito.mock(FTPClient.class);
         when(mockFtp.storeFile(any(String.class), any())).thenReturn(true);
         when(mockFtp.isConnected()).thenReturn(true);
+        when(mockFtp.login(any(), any())).thenReturn(true);
+        when(mockFtp.changeWorkingDirectory(any())).thenReturn(true);
+        when(mockFtp.noop()).thenReturn(200);
+        // nichts hochgeladen, dann die komplette Datei
+        String size = Long.toString(Files.size(tempFile));
+        when(mockFtp.getSize(any())).thenReturn(null, size, null, size);
+        when(mockFtp.rename(any(), any())).thenReturn(true);
 
         // --- ActionContext mocken ---
         ActionContext<Object> mockCtx = Mockito.mock(ActionContext.class);
@@ -82,18 +89,126 @@ public class FTPUploadTest {
             mockedLoader.when(ConfigLoader::load).thenReturn(Optional.of(backupConfig));
 
             FTPUpload uploader = new FTPUpload();
-            uploader.setFtpClient(mockFtp);
+            uploader.setClientFactory(() -> mockFtp);
 
             // ---- Test durchführen ----
             uploader.ftp_upload(mockCtx);
+            // die Verbindung wird wiederverwendet
+            uploader.ftp_upload(mockCtx);
 
             // ---- Überprüfen ----
             verify(mockFtp).connect("localhost", 21);
             verify(mockFtp).login("user", "pass");
-            verify(mockFtp).changeWorkingDirectory("/upload");
-            verify(mockFtp).storeFile(eq(tempFile.getFileName().toString()), any());
+            verify(mockFtp).setBufferSize(FTPClientPool.DEFAULT_BUFFER_SIZE);
+            verify(mockFtp, times(2)).changeWorkingDirectory("/upload");
+            String remoteName = tempFile.getFileName().toString();
+            verify(mockFtp, times(2)).storeFile(eq(remoteName + FTPUpload.PART_SUFFIX), any());
+            verify(mockFtp, times(2)).rename(remoteName + FTPUpload.PART_SUFFIX, remoteName);
+            verify(mockFtp, never()).logout();
+
+            FTPClientPool.closeAll();
             verify(mockFtp).logout();
             verify(mockFtp).disconnect();
         }
     }
+
+    @Test
+    void failed_login_is_retried() throws Exception {
+        Path tempFile = Files.createTempFile("backup-test", ".zip");
+        Files.writeString(tempFile, "dummy content");
+        String size = Long.toString(Files.size(tempFile));
+
+        FTPClient mockFtp = Mockito.mock(FTPClient.class);
+        when(mockFtp.isConnected()).thenReturn(true);
+        when(mockFtp.login(any(), any())).thenReturn(false, true);
+        when(mockFtp.storeFile(any(String.class), any())).thenReturn(true);
+        when(mockFtp.getSize(any())).thenReturn(null, size);
+        when(mockFtp.rename(any(), any())).thenReturn(true);
+
+        Map<String, Object> ftpConfig = new HashMap<>();
+        ftpConfig.put("enabled", true);
+        ftpConfig.put("host", "localhost");
+        ftpConfig.put("port", 21);
+        ftpConfig.put("username", "retry");
+        ftpConfig.put("password", "pass");
+        ftpConfig.put("retries", 1);
+
+        try (MockedStatic<ConfigLoader> mockedLoader = Mockito.mockStatic(ConfigLoader.class)) {
+            mockedLoader.when(ConfigLoader::load).thenReturn(Optional.of(config("retryBackup", ftpConfig)));
+
+            FTPUpload uploader = new FTPUpload();
+            uploader.setClientFactory(() -> mockFtp);
+            uploader.ftp_upload(context(tempFile, "retryBackup"));
+
+            verify(mockFtp, times(2)).login("retry", "pass");
+            verify(mockFtp).storeFile(eq(tempFile.getFileName() + FTPUpload.PART_SUFFIX), any());
+        } finally {
+            FTPClientPool.closeAll();
+        }
+    }
+
+    @Test
+    void relative_folder_is_resolved_against_home() throws Exception {
+        Path tempFile = Files.createTempFile("backup-test", ".zip");
+        Files.writeString(tempFile, "dummy content");
+        String size = Long.toString(Files.size(tempFile));
+
+        FTPClient mockFtp = Mockito.mock(FTPClient.class);
+        when(mockFtp.isConnected()).thenReturn(true);
+        when(mockFtp.login(any(), any())).thenReturn(true);
+        when(mockFtp.noop()).thenReturn(200);
+        when(mockFtp.printWorkingDirectory()).thenReturn("/home/backup");
+        when(mockFtp.changeWorkingDirectory(any())).thenReturn(true);
+        when(mockFtp.storeFile(any(String.class), any())).thenReturn(true);
+        when(mockFtp.getSize(any())).thenReturn(null, size, null, size);
+        when(mockFtp.rename(any(), any())).thenReturn(true);
+
+        Map<String, Object> ftpConfig = new HashMap<>();
+        ftpConfig.put("enabled", true);
+        ftpConfig.put("host", "localhost");
+        ftpConfig.put("port", 21);
+        ftpConfig.put("username", "relative");
+        ftpConfig.put("password", "pass");
+        ftpConfig.put("folder", "backups");
+
+        try (MockedStatic<ConfigLoader> mockedLoader = Mockito.mockStatic(ConfigLoader.class)) {
+            mockedLoader.when(ConfigLoader::load).thenReturn(Optional.of(config("relativeBackup", ftpConfig)));
+
+            FTPUpload uploader = new FTPUpload();
+            uploader.setClientFactory(() -> mockFtp);
+            // two uploads on the same pooled connection
+            uploader.ftp_upload(context(tempFile, "relativeBackup"));
+            uploader.ftp_upload(context(tempFile, "relativeBackup"));
+
+            verify(mockFtp).connect("localhost", 21);
+            verify(mockFtp, times(2)).changeWorkingDirectory("/home/backup/backups");
+            verify(mockFtp, times(2)).rename(any(), any());
+        } finally {
+            FTPClientPool.closeAll();
+        }
+    }
+
+    private static ActionContext<Object> context(Path file, String name) {
+        ActionContext<Object> mockCtx = Mockito.mock(ActionContext.class);
+        Map<String, Object> args = new HashMap<>();
+        args.put("file", file.toString());
+        args.put("name", name);
+        when(mockCtx.arguments()).thenReturn(args);
+        return mockCtx;
+    }
+
+    private static Configuration config(String name, Map<String, Object> ftpConfig) {
+        Configuration.PostProcessing ftpProcessing = new Configuration.PostProcessing();
+        ftpProcessing.setType("ftp");
+        ftpProcessing.setEnabled(true);
+        ftpProcessing.setConfig(ftpConfig);
+
+        Configuration.Backup backup = new Configuration.Backup();
+        backup.setName(name);
+        backup.setPost_processing(Collections.singletonList(ftpProcessing));
+
+        Configuration backupConfig = new Configuration();
+        backupConfig.setBackups(Collections.singletonList(backup));
+        return backupConfig;
+    }
 }
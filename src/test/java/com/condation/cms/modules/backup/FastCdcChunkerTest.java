@@ -0,0 +1,103 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FastCdcChunkerTest {
+
+    private final FastCdcChunker chunker = new FastCdcChunker(8 * 1024);
+
+    @Test
+    void chunks_cover_the_input_within_the_size_limits() throws Exception {
+        byte[] data = random(1, 1024 * 1024);
+        List<byte[]> chunks = split(data);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            joined.write(chunk);
+            assertThat(chunk.length).isLessThanOrEqualTo(chunker.getMaxSize());
+            if (i < chunks.size() - 1) {
+                assertThat(chunk.length).isGreaterThan(chunker.getMinSize());
+            }
+        }
+        assertThat(joined.toByteArray()).isEqualTo(data);
+        // normalized chunking keeps the average close to the configured size
+        assertThat(data.length / chunks.size()).isBetween(chunker.getAverageSize() / 2, chunker.getAverageSize() * 2);
+    }
+
+    @Test
+    void cut_points_survive_an_insert() throws Exception {
+        byte[] data = random(2, 512 * 1024);
+        byte[] shifted = new byte[data.length + 100];
+        System.arraycopy(data, 0, shifted, 0, 1000);
+        System.arraycopy(data, 1000, shifted, 1100, data.length - 1000);
+
+        Set<String> before = digests(split(data));
+        Set<String> after = digests(split(shifted));
+        after.retainAll(before);
+
+        assertThat(after.size()).isGreaterThanOrEqualTo(before.size() - 2);
+    }
+
+    @Test
+    void small_input_is_one_chunk() throws Exception {
+        assertThat(split(new byte[100])).hasSize(1);
+        assertThat(split(new byte[0])).isEmpty();
+    }
+
+    private List<byte[]> split(byte[] data) throws Exception {
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.split(new ByteArrayInputStream(data), (buffer, offset, length) -> {
+            byte[] chunk = new byte[length];
+            System.arraycopy(buffer, offset, chunk, 0, length);
+            chunks.add(chunk);
+        });
+        return chunks;
+    }
+
+    private static Set<String> digests(List<byte[]> chunks) throws Exception {
+        Set<String> digests = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            digests.add(BackupUtil.bytesToHex(ChunkRepository.sha256(chunk)));
+        }
+        return digests;
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
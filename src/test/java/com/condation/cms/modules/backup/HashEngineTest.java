@@ -0,0 +1,106 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sha256_of_mapped_file_matches_message_digest() throws Exception {
+        // bigger than the heap threshold, read through mapped windows
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17);
+        Path file = Files.write(tempDir.resolve("large.bin"), data);
+
+        String expected = BackupUtil.bytesToHex(MessageDigest.getInstance("SHA-256").digest(data));
+
+        assertThat(HashEngine.sha256().hashHex(file)).isEqualTo(expected);
+        assertThat(BackupUtil.calculateSHA256(file)).isEqualTo(expected);
+    }
+
+    @Test
+    void tree_hash_is_hash_over_leaf_hashes() throws Exception {
+        byte[] data = randomBytes(2 * 1024 * 1024 + 5);
+        Path file = Files.write(tempDir.resolve("tree.bin"), data);
+        int leafSize = 1024 * 1024;
+
+        MessageDigest root = MessageDigest.getInstance("SHA-256");
+        for (int offset = 0; offset < data.length; offset += leafSize) {
+            MessageDigest leaf = MessageDigest.getInstance("SHA-256");
+            leaf.update(data, offset, Math.min(leafSize, data.length - offset));
+            root.update(leaf.digest());
+        }
+        root.update(ByteBuffer.allocate(Long.BYTES).putLong(data.length).array());
+
+        var engine = new HashEngine(HashAlgorithm.SHA256, 0, leafSize);
+        assertThat(engine.hash(file)).isEqualTo(root.digest());
+        assertThat(engine.hashHex(file)).isNotEqualTo(HashEngine.sha256().hashHex(file));
+    }
+
+    @Test
+    void xxhash_of_empty_file() throws Exception {
+        Path file = Files.write(tempDir.resolve("empty.bin"), new byte[0]);
+
+        // XXH64 of no data with seed 0
+        assertThat(HashEngine.of(HashAlgorithm.XXHASH64, false).hashHex(file)).isEqualTo("ef46db3751d8e999");
+    }
+
+    @Test
+    void xxhash_of_mapped_and_heap_read_files() throws Exception {
+        byte[] data = randomBytes(2 * 1024 * 1024);
+        Path large = Files.write(tempDir.resolve("large.bin"), data);
+        // up to the threshold the file is read into the heap
+        Path small = Files.write(tempDir.resolve("small.bin"), Arrays.copyOf(data, 1024 * 1024));
+
+        var xxhash = XXHashFactory.fastestInstance().hash64();
+        List<byte[]> hashes = HashEngine.of(HashAlgorithm.XXHASH64, false).hashAll(List.of(large, small));
+
+        assertThat(hashes.get(0)).isEqualTo(toBytes(xxhash.hash(data, 0, data.length, 0)));
+        assertThat(hashes.get(1)).isEqualTo(toBytes(xxhash.hash(data, 0, 1024 * 1024, 0)));
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,127 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelGzipOutputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void output_is_a_single_standard_gzip_member() throws Exception {
+        byte[] data = testData(1_000_000);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, 64 * 1024, Deflater.DEFAULT_COMPRESSION)) {
+            // write in odd sized pieces to cross block boundaries
+            for (int offset = 0; offset < data.length; offset += 10_007) {
+                out.write(data, offset, Math.min(10_007, data.length - offset));
+            }
+        }
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+        try (InputStream in = new GzipCompressorInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void empty_stream() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2, 64 * 1024, Deflater.DEFAULT_COMPRESSION).close();
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertThat(in.readAllBytes()).isEmpty();
+        }
+    }
+
+    @Test
+    void parallel_packer_creates_readable_archive() throws Exception {
+        Files.createDirectories(tempDir.resolve("hosts"));
+        Path project = Files.createDirectories(tempDir.resolve("project"));
+        Map<String, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] content = testData(20_000 * (i + 1));
+            Files.write(project.resolve("file" + i + ".bin"), content);
+            expected.put("project/file" + i + ".bin", content);
+        }
+
+        PackerOptions options = new PackerOptions();
+        options.setCompressionThreads(4);
+        options.setCompressionBlockSize(64 * 1024);
+
+        File parallelArchive = tempDir.resolve("parallel.tar.gz").toFile();
+        TarGzPacker.Result parallel = TarGzPacker.createTarGz(tempDir, parallelArchive, List.of(project), options);
+        TarGzPacker.Result single = TarGzPacker.createTarGz(tempDir, tempDir.resolve("single.tar.gz").toFile(), List.of(project));
+
+        // same tar content, only the compression differs
+        assertThat(parallel.tarHash()).isEqualTo(single.tarHash());
+
+        Map<String, byte[]> actual = new HashMap<>();
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(
+                new GzipCompressorInputStream(new FileInputStream(parallelArchive)))) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    actual.put(entry.getName(), tais.readAllBytes());
+                }
+            }
+        }
+        assertThat(actual).containsOnlyKeys(expected.keySet());
+        expected.forEach((name, content) -> assertThat(actual.get(name)).isEqualTo(content));
+    }
+
+    private static byte[] testData(int size) {
+        // compressible, but not trivially
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,175 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostProcessingExecutorTest {
+
+    @AfterEach
+    void tearDown() {
+        PostProcessingExecutor.shutdown();
+    }
+
+    @Test
+    void targets_run_in_parallel() throws Exception {
+        CountDownLatch ftpStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        PostProcessingExecutor.submit("ftp", 1, "sites", "a.tar.gz", () -> {
+            ftpStarted.countDown();
+            release.await();
+        });
+        assertThat(ftpStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // s3 is not blocked by the running ftp upload
+        CountDownLatch s3Done = new CountDownLatch(1);
+        PostProcessingExecutor.submit("s3", 2, "sites", "a.tar.gz", s3Done::countDown);
+        assertThat(s3Done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(PostProcessingExecutor.status("sites", "ftp"))
+                .hasValueSatisfying(status -> assertThat(status.state()).isEqualTo(PostProcessingExecutor.State.RUNNING));
+        release.countDown();
+        awaitState("sites", "ftp", PostProcessingExecutor.State.DONE);
+        awaitState("sites", "s3", PostProcessingExecutor.State.DONE);
+        assertThat(PostProcessingExecutor.status("sites")).hasSize(2);
+    }
+
+    @Test
+    void servers_of_a_target_get_their_own_pool() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(3);
+
+        // the first backup uses one connection, the second server three
+        PostProcessingExecutor.submit("ftp", "ftp-one", 1, "small", "f.tar.gz", () -> {
+            started.countDown();
+            release.await();
+        });
+        for (int i = 0; i < 2; i++) {
+            PostProcessingExecutor.submit("ftp", "ftp-two", 3, "large", "g" + i + ".tar.gz", () -> {
+                started.countDown();
+                release.await();
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        release.countDown();
+        awaitState("small", "ftp", PostProcessingExecutor.State.DONE);
+        awaitState("large", "ftp", PostProcessingExecutor.State.DONE);
+    }
+
+    @Test
+    void failed_task_keeps_error() throws Exception {
+        PostProcessingExecutor.submit("s3", 1, "failing", "b.tar.gz", () -> {
+            throw new IOException("bucket not found");
+        });
+
+        var status = awaitState("failing", "s3", PostProcessingExecutor.State.FAILED);
+        assertThat(status.error()).isEqualTo("bucket not found");
+        assertThat(status.file()).isEqualTo("b.tar.gz");
+    }
+
+    @Test
+    void full_queue_blocks_the_caller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // one running, the queue full
+        for (int i = 0; i <= PostProcessingExecutor.DEFAULT_QUEUE_SIZE; i++) {
+            PostProcessingExecutor.submit("slow", 1, "queued", "c.tar.gz", release::await);
+        }
+
+        Thread caller = Thread.ofPlatform().start(
+                () -> PostProcessingExecutor.submit("slow", 1, "queued", "d.tar.gz", () -> {
+                }));
+        caller.join(300);
+        assertThat(caller.isAlive()).isTrue();
+
+        release.countDown();
+        caller.join(5000);
+        assertThat(caller.isAlive()).isFalse();
+    }
+
+    @Test
+    void waiting_task_is_rejected_after_shutdown() throws Exception {
+        List<PostProcessingExecutor.Status> reported = new CopyOnWriteArrayList<>();
+        MetricsSink sink = new MetricsSink() {
+            @Override
+            public void status(PostProcessingExecutor.Status status) {
+                reported.add(status);
+            }
+        };
+        BackupMetrics.register(sink);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i <= PostProcessingExecutor.DEFAULT_QUEUE_SIZE; i++) {
+            PostProcessingExecutor.submit("closing", 1, "closed", "e.tar.gz", release::await);
+        }
+        AtomicReference<Throwable> rejected = new AtomicReference<>();
+        Thread caller = Thread.ofPlatform().start(() -> {
+            try {
+                PostProcessingExecutor.submit("closing", 1, "closed", "late.tar.gz", () -> {
+                });
+            } catch (RuntimeException e) {
+                rejected.set(e);
+            }
+        });
+        caller.join(300);
+        assertThat(caller.isAlive()).isTrue();
+
+        // the shutdown starts while the caller waits for a slot
+        Thread stopping = Thread.ofPlatform().start(PostProcessingExecutor::shutdown);
+        Thread.sleep(100);
+        release.countDown();
+        caller.join(5000);
+        stopping.join(5000);
+
+        assertThat(rejected.get()).isInstanceOf(RejectedExecutionException.class);
+        assertThat(PostProcessingExecutor.activeFiles()).doesNotContain("late.tar.gz", "e.tar.gz");
+        BackupMetrics.unregister(sink);
+        // the queued tasks still run after the shutdown, so the late one is not the last status
+        assertThat(reported).anySatisfy(status -> {
+            assertThat(status.file()).isEqualTo("late.tar.gz");
+            assertThat(status.state()).isEqualTo(PostProcessingExecutor.State.FAILED);
+        });
+    }
+
+    private static PostProcessingExecutor.Status awaitState(String backup, String target, PostProcessingExecutor.State state) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            var status = PostProcessingExecutor.status(backup, target);
+            if (status.isPresent() && status.get().state() == state) {
+                return status.get();
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("%s/%s did not reach %s".formatted(backup, target, state));
+    }
+}
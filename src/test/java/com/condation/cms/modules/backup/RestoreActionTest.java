@@ -0,0 +1,83 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+import com.condation.cms.api.hooks.ActionContext;
+import com.condation.cms.api.utils.ServerUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RestoreActionTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path home;
+    private Path archive;
+
+    @BeforeEach
+    void pack() throws Exception {
+        home = Files.createDirectories(tempDir.resolve("home"));
+        Files.createDirectories(home.resolve("hosts"));
+        Path content = Files.createDirectories(home.resolve("content"));
+        Files.writeString(content.resolve("index.md"), "# Index");
+        archive = tempDir.resolve("sites.tar.gz");
+        TarGzPacker.createTarGz(home, archive.toFile(), List.of(content));
+    }
+
+    @Test
+    void restores_inside_the_server_home() {
+        restore("restore");
+
+        assertThat(home.resolve("restore/content/index.md")).hasContent("# Index");
+    }
+
+    @Test
+    void target_outside_the_server_home_is_rejected() {
+        restore(tempDir.resolve("outside").toString());
+        restore("../escaped");
+
+        assertThat(tempDir.resolve("outside")).doesNotExist();
+        assertThat(tempDir.resolve("escaped")).doesNotExist();
+    }
+
+    private void restore(String target) {
+        ActionContext<Object> context = mock(ActionContext.class);
+        when(context.arguments()).thenReturn(Map.of("file", archive.toString(), "target", target));
+        try (MockedStatic<ServerUtil> serverUtil = Mockito.mockStatic(ServerUtil.class)) {
+            serverUtil.when(ServerUtil::getHome).thenReturn(home);
+            new RestoreAction().restore(context);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetentionPolicyTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 2, 0);
+
+    @Test
+    void keeps_last_archives() {
+        var archives = daily(10, BackupMode.FULL);
+
+        var keep = new RetentionPolicy(3, 0, 0, 0, 0).select(archives);
+
+        assertThat(keep).containsExactlyInAnyOrderElementsOf(archives.subList(7, 10));
+    }
+
+    @Test
+    void keeps_newest_archive_of_each_period() {
+        List<ArchiveIndex.Entry> archives = new ArrayList<>();
+        // four runs a day for 60 days
+        for (int day = 0; day < 60; day++) {
+            for (int hour = 0; hour < 24; hour += 6) {
+                archives.add(entry(START.plusDays(day).withHour(hour), BackupMode.FULL));
+            }
+        }
+
+        var keep = new RetentionPolicy(0, 0, 7, 4, 2).select(archives);
+
+        var newest = archives.get(archives.size() - 1);
+        assertThat(keep).contains(newest);
+        // the last run of each day, week (ending sunday) and month
+        assertThat(keep).allMatch(archive -> archive.created().getHour() == 18);
+        assertThat(keep).extracting(archive -> archive.created().toLocalDate().toString())
+                .containsExactlyInAnyOrder(
+                        "2026-02-23", "2026-02-24", "2026-02-25", "2026-02-26", "2026-02-27", "2026-02-28", "2026-03-01",
+                        "2026-02-22", "2026-02-15", "2026-02-08");
+    }
+
+    @Test
+    void incremental_archives_keep_their_chain() {
+        List<ArchiveIndex.Entry> archives = new ArrayList<>();
+        archives.add(entry(START, BackupMode.FULL));
+        archives.add(entry(START.plusDays(1), BackupMode.INCREMENTAL));
+        archives.add(entry(START.plusDays(2), BackupMode.INCREMENTAL));
+        archives.add(entry(START.plusDays(3), BackupMode.FULL));
+        archives.add(entry(START.plusDays(4), BackupMode.DIFFERENTIAL));
+        archives.add(entry(START.plusDays(5), BackupMode.DIFFERENTIAL));
+
+        assertThat(new RetentionPolicy(1, 0, 0, 0, 0).select(archives))
+                .containsExactlyInAnyOrder(archives.get(5), archives.get(3));
+
+        archives.subList(3, 6).clear();
+        assertThat(new RetentionPolicy(1, 0, 0, 0, 0).select(archives))
+                .containsExactlyInAnyOrderElementsOf(archives);
+    }
+
+    @Test
+    void missing_or_empty_retention_is_disabled() {
+        assertThat(RetentionPolicy.of(null)).isNull();
+        assertThat(RetentionPolicy.of(new Configuration.Retention())).isNull();
+    }
+
+    private static List<ArchiveIndex.Entry> daily(int days, BackupMode mode) {
+        List<ArchiveIndex.Entry> archives = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            archives.add(entry(START.plusDays(day), mode));
+        }
+        return archives;
+    }
+
+    private static ArchiveIndex.Entry entry(LocalDateTime created, BackupMode mode) {
+        return new ArchiveIndex.Entry(created, mode, 1, "sites-" + created + ".tar.gz");
+    }
+}
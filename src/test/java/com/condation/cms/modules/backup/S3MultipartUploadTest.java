@@ -0,0 +1,234 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3MultipartUploadTest {
+
+    private static final int PART_SIZE = (int) S3MultipartUpload.MIN_PART_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private final S3Client s3 = mock(S3Client.class);
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+
+    @Test
+    void uploads_parts_in_parallel_and_completes() throws Exception {
+        byte[] data = random(PART_SIZE * 2 + 1000);
+        Path file = write(data);
+        mockMultipart(new AtomicInteger(0));
+
+        new S3MultipartUpload(s3, "backups", PART_SIZE, 3, 0).upload(file, "backup.tar.gz");
+
+        var complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().uploadId()).isEqualTo("upload-1");
+        assertThat(complete.getValue().multipartUpload().parts())
+                .extracting(CompletedPart::partNumber)
+                .containsExactly(1, 2, 3);
+        assertThat(joinParts()).isEqualTo(data);
+        verify(s3, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void failed_part_is_retried() throws Exception {
+        byte[] data = random(PART_SIZE + 10);
+        Path file = write(data);
+        mockMultipart(new AtomicInteger(2));
+
+        new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 3).upload(file, "backup.tar.gz");
+
+        verify(s3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertThat(joinParts()).isEqualTo(data);
+    }
+
+    @Test
+    void upload_is_aborted_when_a_part_fails() throws Exception {
+        Path file = write(random(PART_SIZE + 10));
+        mockMultipart(new AtomicInteger(Integer.MAX_VALUE));
+
+        assertThatThrownBy(() -> new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 1).upload(file, "backup.tar.gz"))
+                .isInstanceOf(IOException.class);
+
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void client_errors_are_not_retried() throws Exception {
+        Path file = write(random(100));
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).message("denied").build());
+
+        assertThatThrownBy(() -> new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 3).upload(file, "small.tar.gz"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("after 1 attempts");
+    }
+
+    @Test
+    void small_file_uses_single_put() throws Exception {
+        Path file = write(random(100));
+
+        new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 0).upload(file, "small.tar.gz");
+
+        verify(s3).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void stream_uploads_full_parts_while_writing() throws Exception {
+        byte[] data = random(PART_SIZE * 3 + 500);
+        mockMultipart(new AtomicInteger(0));
+
+        var upload = new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 0);
+        try (var out = upload.openStream("backup.tar.gz")) {
+            for (int offset = 0; offset < data.length; offset += 100_000) {
+                out.write(data, offset, Math.min(100_000, data.length - offset));
+            }
+        }
+
+        var complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        assertThat(complete.getValue().multipartUpload().parts()).hasSize(4);
+        assertThat(joinParts()).isEqualTo(data);
+    }
+
+    @Test
+    void stream_receives_packed_archive() throws Exception {
+        Path root = Files.createDirectories(tempDir.resolve("server"));
+        Files.createDirectories(root.resolve("hosts"));
+        Files.write(Files.createDirectories(root.resolve("content")).resolve("image.bin"), random(PART_SIZE + 1000));
+        Files.writeString(root.resolve("content/index.md"), "# Hello");
+        var entries = SourceScanner.scan(root, List.of(root.resolve("content")));
+        mockMultipart(new AtomicInteger(0));
+
+        var options = PackerOptions.defaults();
+        options.setCompressionLevel(0);
+        var out = new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 0).openStream("backup.tar.gz");
+        var streamed = TarGzPacker.pack(entries, Map.of(), out, options);
+        out.close();
+
+        Path file = tempDir.resolve("local.tar.gz");
+        var local = TarGzPacker.pack(entries, Map.of(), file.toFile(), options);
+
+        assertThat(streamed.archiveHash()).isEqualTo(local.archiveHash());
+        assertThat(joinParts()).isEqualTo(Files.readAllBytes(file));
+    }
+
+    @Test
+    void small_stream_uses_single_put() throws Exception {
+        var out = new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 0).openStream("small.tar.gz");
+        out.write(random(100));
+        out.close();
+
+        verify(s3).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void aborted_stream_removes_parts() throws Exception {
+        mockMultipart(new AtomicInteger(0));
+
+        var out = new S3MultipartUpload(s3, "backups", PART_SIZE, 2, 0).openStream("backup.tar.gz");
+        out.write(random(PART_SIZE + 10));
+        out.abort();
+        out.close();
+
+        verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(s3, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    /**
+     * @param failures number of part uploads failing before they succeed
+     */
+    private void mockMultipart(AtomicInteger failures) {
+        when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            if (failures.getAndDecrement() > 0) {
+                throw SdkClientException.create("connection reset");
+            }
+            UploadPartRequest request = invocation.getArgument(0);
+            RequestBody body = invocation.getArgument(1);
+            try (var in = body.contentStreamProvider().newStream()) {
+                uploadedParts.put(request.partNumber(), in.readAllBytes());
+            }
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        });
+    }
+
+    private byte[] joinParts() throws IOException {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int part = 1; part <= uploadedParts.size(); part++) {
+            joined.write(uploadedParts.get(part));
+        }
+        return joined.toByteArray();
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path file = tempDir.resolve("backup.tar.gz");
+        Files.write(file, data);
+        return file;
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
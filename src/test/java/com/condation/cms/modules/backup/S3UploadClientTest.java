@@ -0,0 +1,85 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3UploadClientTest {
+
+    @AfterEach
+    void tearDown() {
+        S3Upload.closeClients();
+    }
+
+    @Test
+    void client_is_reused_for_the_same_endpoint() {
+        var first = S3Upload.client(config("http://localhost:9090", true));
+        var second = S3Upload.client(config("http://localhost:9090", true));
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void different_settings_get_different_clients() {
+        var client = S3Upload.client(config("http://localhost:9090", true));
+
+        assertThat(S3Upload.client(config("http://localhost:9091", true))).isNotSameAs(client);
+        assertThat(S3Upload.client(config("http://localhost:9090", false))).isNotSameAs(client);
+
+        var otherRegion = config("http://localhost:9090", true);
+        otherRegion.put("region", "us-east-1");
+        assertThat(S3Upload.client(otherRegion)).isNotSameAs(client);
+    }
+
+    @Test
+    void closed_clients_are_recreated() {
+        var client = S3Upload.client(config("http://localhost:9090", true));
+
+        S3Upload.closeClients();
+
+        assertThat(S3Upload.client(config("http://localhost:9090", true))).isNotSameAs(client);
+    }
+
+    @Test
+    void configured_profile_is_used_for_the_credentials() {
+        assertThat(S3Upload.credentials("backup")).isInstanceOf(ProfileCredentialsProvider.class);
+        assertThat(S3Upload.credentials("-none-")).isInstanceOf(DefaultCredentialsProvider.class);
+    }
+
+    private static Map<String, Object> config(String endpoint, boolean pathStyle) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("endpoint", endpoint);
+        config.put("profile", "default");
+        config.put("pathStyle", pathStyle);
+        return config;
+    }
+}
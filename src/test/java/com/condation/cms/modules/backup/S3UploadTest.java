@@ -45,6 +45,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 
 @ExtendWith(MockitoExtension.class)
 @Testcontainers
@@ -124,4 +125,55 @@ public class S3UploadTest {
 			}
 		}
 	}
+
+	@Test
+	void testS3MultipartUpload() throws Exception {
+		Path tempFile = Files.createTempFile("backup-multipart", ".tar.gz");
+		byte[] data = new byte[12 * 1024 * 1024 + 123];
+		new java.util.Random(42).nextBytes(data);
+		Files.write(tempFile, data);
+
+		ActionContext<Object> ctx = Mockito.mock(ActionContext.class);
+		when(ctx.arguments()).thenReturn(Map.of("file", tempFile.toString(), "name", "testBackup"));
+
+		Map<String, Object> s3Config = new HashMap<>();
+		s3Config.put("enabled", true);
+		s3Config.put("bucket", "backups");
+		s3Config.put("endpoint", s3Container.getHttpEndpoint());
+		s3Config.put("profile", "default");
+		s3Config.put("pathStyle", true);
+		s3Config.put("part_size", "5MB");
+		s3Config.put("concurrency", 3);
+
+		Configuration.PostProcessing post = new Configuration.PostProcessing();
+		post.setType("s3");
+		post.setEnabled(true);
+		post.setConfig(s3Config);
+
+		Configuration.Backup backup = new Configuration.Backup();
+		backup.setName("testBackup");
+		backup.setPost_processing(Collections.singletonList(post));
+
+		Configuration backupConfig = new Configuration();
+		backupConfig.setBackups(Collections.singletonList(backup));
+
+		try (MockedStatic<ConfigLoader> loaderMock = Mockito.mockStatic(ConfigLoader.class);
+				S3Client s3 = S3Client.builder()
+						.region(Region.EU_CENTRAL_1)
+						.credentialsProvider(AnonymousCredentialsProvider.create())
+						.endpointOverride(URI.create(s3Container.getHttpEndpoint()))
+						.serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+						.build()) {
+			loaderMock.when(ConfigLoader::load).thenReturn(java.util.Optional.of(backupConfig));
+			s3.createBucket(CreateBucketRequest.builder().bucket("backups").build());
+
+			new S3Upload().s3_upload(ctx);
+
+			byte[] uploaded = s3.getObjectAsBytes(GetObjectRequest.builder()
+					.bucket("backups")
+					.key(tempFile.getFileName().toString())
+					.build()).asByteArray();
+			assertThat(uploaded).isEqualTo(data);
+		}
+	}
 }
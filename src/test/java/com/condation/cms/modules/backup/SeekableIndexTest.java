@@ -0,0 +1,120 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SeekableIndexTest {
+
+    @TempDir
+    Path root;
+
+    private List<SourceEntry> entries;
+
+    @BeforeEach
+    void createSources() throws IOException {
+        Files.createDirectories(root.resolve("hosts"));
+        Random random = new Random(9);
+        for (String site : List.of("demo", "shop", "blog")) {
+            Path content = Files.createDirectories(root.resolve("project").resolve(site));
+            for (int i = 0; i < 30; i++) {
+                byte[] data = new byte[random.nextInt(20_000)];
+                random.nextBytes(data);
+                Files.write(content.resolve("file" + i + ".bin"), data);
+            }
+        }
+        entries = SourceScanner.scan(root, List.of(root.resolve("project")));
+    }
+
+    @Test
+    void every_entry_is_read_from_its_frame() throws Exception {
+        PackerOptions options = PackerOptions.defaults();
+        options.setSeekable(true);
+        options.setFrameSize(64 * 1024);
+        Path archive = root.resolve("sites.tar.gz");
+        TarGzPacker.pack(entries, Map.of(), archive.toFile(), options);
+
+        var index = SeekableIndex.find(archive).orElseThrow();
+        assertThat(index.getCodec()).isEqualTo(CompressionCodec.GZIP);
+        assertThat(index.entries()).hasSize(entries.size());
+        assertThat(index.entries().stream().map(SeekableIndex.Entry::frameOffset).distinct().count()).isGreaterThan(10);
+
+        for (SourceEntry entry : entries) {
+            if (!entry.directory()) {
+                var indexed = index.entries().stream().filter(e -> e.name().equals(entry.name())).findFirst().orElseThrow();
+                assertThat(index.read(archive, indexed)).isEqualTo(Files.readAllBytes(entry.path()));
+            }
+        }
+
+        // the frames are a normal multi member gzip
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(CompressionCodec.GZIP.decompress(Files.newInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertThat(names).containsExactlyElementsOf(index.entries().stream().map(SeekableIndex.Entry::name).toList());
+    }
+
+    @Test
+    void restores_a_single_file_of_split_seekable_archive() throws Exception {
+        PackerOptions options = PackerOptions.defaults();
+        options.setCodec(CompressionCodec.ZSTD);
+        options.setSeekable(true);
+        options.setFrameSize(32 * 1024);
+        options.setChecksums(true);
+        options.setMaxVolumeSize(100_000);
+        Path archive = root.resolve("sites.tar.zst");
+        TarGzPacker.pack(entries, Map.of(), archive.toFile(), options);
+        Path descriptor = ArchiveVolumes.descriptor(archive);
+
+        assertThat(ArchiveRestorer.list(descriptor))
+                .contains("project/shop/file17.bin", TarGzPacker.CHECKSUMS_ENTRY);
+
+        RestoreOptions restoreOptions = RestoreOptions.defaults();
+        restoreOptions.setPaths(List.of("project/shop/file17.bin", "project/blog/file2*.bin"));
+        Path target = root.resolve("restore");
+        var result = ArchiveRestorer.restore(descriptor, target, restoreOptions);
+
+        assertThat(result.files()).isEqualTo(12);
+        assertThat(result.verified()).isEqualTo(12);
+        assertThat(result.isValid()).isTrue();
+        assertThat(target.resolve("project/shop/file17.bin")).hasSameBinaryContentAs(root.resolve("project/shop/file17.bin"));
+        assertThat(target.resolve("project/demo")).doesNotExist();
+    }
+}
@@ -0,0 +1,116 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceFingerprintTest {
+
+    @TempDir
+    Path root;
+
+    private Path content;
+    private Path assets;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(root.resolve("hosts"));
+        content = Files.createDirectories(root.resolve("content"));
+        assets = Files.createDirectories(root.resolve("assets/css"));
+        Files.writeString(content.resolve("index.md"), "# Hello");
+        Files.writeString(assets.resolve("site.css"), "body {}");
+    }
+
+    @Test
+    void unchanged_sources_have_the_same_fingerprint() throws Exception {
+        assertThat(fingerprint(false)).isEqualTo(fingerprint(false));
+    }
+
+    @Test
+    void detects_changed_source() throws Exception {
+        SourceFingerprint before = fingerprint(false);
+
+        Files.writeString(assets.resolve("site.css"), "body { color: red; }");
+
+        SourceFingerprint after = fingerprint(false);
+        assertThat(after.root()).isNotEqualTo(before.root());
+        assertThat(after.changedSources(before)).containsExactly("assets");
+    }
+
+    @Test
+    void detects_new_file() throws Exception {
+        SourceFingerprint before = fingerprint(false);
+
+        Files.writeString(content.resolve("about.md"), "# About");
+
+        assertThat(fingerprint(false).changedSources(before)).containsExactly("content");
+    }
+
+    @Test
+    void strict_mode_detects_content_change_with_same_size_and_mtime() throws Exception {
+        Path file = content.resolve("index.md");
+        FileTime mtime = Files.getLastModifiedTime(file);
+        SourceFingerprint metadata = fingerprint(false);
+        SourceFingerprint strict = fingerprint(true);
+
+        Files.writeString(file, "# Hallo");
+        Files.setLastModifiedTime(file, mtime);
+
+        assertThat(fingerprint(false)).isEqualTo(metadata);
+        assertThat(fingerprint(true)).isNotEqualTo(strict);
+    }
+
+    @Test
+    void changed_settings_change_the_fingerprint() throws Exception {
+        SourceFingerprint gzip = fingerprint(false).withSettings("compression=gzip", "compression_level=6");
+        SourceFingerprint zstd = fingerprint(false).withSettings("compression=zstd", "compression_level=6");
+
+        assertThat(gzip).isEqualTo(fingerprint(false).withSettings("compression=gzip", "compression_level=6"));
+        assertThat(gzip).isNotEqualTo(zstd);
+        assertThat(gzip.changedSources(zstd)).containsExactly(SourceFingerprint.SETTINGS);
+    }
+
+    @Test
+    void save_and_load() throws Exception {
+        SourceFingerprint fingerprint = fingerprint(false);
+        Path file = root.resolve("test.fingerprint");
+
+        fingerprint.save(file);
+
+        assertThat(SourceFingerprint.load(file)).contains(fingerprint);
+        assertThat(SourceFingerprint.load(root.resolve("missing.fingerprint"))).isEmpty();
+    }
+
+    private SourceFingerprint fingerprint(boolean strict) throws Exception {
+        return SourceFingerprint.compute(SourceScanner.scan(root, List.of(content, root.resolve("assets"))), strict);
+    }
+}
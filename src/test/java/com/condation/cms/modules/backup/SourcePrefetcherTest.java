@@ -0,0 +1,67 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourcePrefetcherTest {
+
+    private static final int BUDGET = 64 * 1024;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void taken_contents_are_not_retained() throws Exception {
+        Files.createDirectories(root.resolve("hosts"));
+        Path site = Files.createDirectories(root.resolve("site"));
+        Random random = new Random(11);
+        // 40 files of 8KB, five times the budget
+        for (int i = 0; i < 40; i++) {
+            byte[] data = new byte[8 * 1024];
+            random.nextBytes(data);
+            Files.write(site.resolve("file" + i + ".bin"), data);
+        }
+        List<SourceEntry> entries = SourceScanner.scan(root, List.of(site));
+
+        long taken = 0;
+        try (SourcePrefetcher prefetcher = new SourcePrefetcher(entries, 4, BUDGET, Throttle.NONE)) {
+            for (int i = 0; i < entries.size(); i++) {
+                byte[] content = prefetcher.take(i);
+                taken += content != null ? content.length : 0;
+                prefetcher.release(i);
+                assertThat(prefetcher.retainedBytes()).isLessThanOrEqualTo(BUDGET);
+            }
+            assertThat(prefetcher.retainedBytes()).isZero();
+        }
+        assertThat(taken).isEqualTo(40 * 8 * 1024);
+    }
+}
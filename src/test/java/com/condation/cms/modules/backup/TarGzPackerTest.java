@@ -29,6 +29,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.*;
 import java.nio.file.*;
+import java.security.MessageDigest;
 import java.util.*;
 import org.assertj.core.api.Assertions;
 
@@ -52,7 +53,7 @@ class TarGzPackerTest {
 				root,
                 outputArchive,
                 List.of(folder1, file2)
-        );
+        ).tarHash();
 		
 		File outputArchive2 = root.resolve("archive2.tar.gz").toFile();
         // Packen
@@ -60,7 +61,7 @@ class TarGzPackerTest {
 				root,
                 outputArchive2,
                 List.of(folder1, file2)
-        );
+        ).tarHash();
 		
 		Assertions.assertThat(hash).isEqualTo(hash2);
 
@@ -89,4 +90,93 @@ class TarGzPackerTest {
         assertThat(entryNames)
                 .containsExactlyInAnyOrderElementsOf(expected);
     }
+
+    @Test
+    void test_archive_hash_matches_written_file() throws Exception {
+        Path root = Files.createTempDirectory("testRoot");
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Files.writeString(project.resolve("file.txt"), "Hello World");
+
+        File outputArchive = root.resolve("archive.tar.gz").toFile();
+        TarGzPacker.Result result = TarGzPacker.createTarGz(root, outputArchive, List.of(project));
+
+        // archive hash is calculated while writing, it has to match a hash of the file on disk
+        assertThat(result.archiveHash())
+                .isEqualTo(BackupUtil.calculateSHA256(outputArchive.toPath()));
+
+        // tar hash is calculated over the uncompressed stream
+        try (InputStream in = new GzipCompressorInputStream(new FileInputStream(outputArchive))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(in.readAllBytes());
+            assertThat(result.tarHash()).isEqualTo(BackupUtil.bytesToHex(digest.digest()));
+        }
+    }
+
+    @Test
+    void test_prefetch_keeps_archive_identical() throws Exception {
+        Path root = Files.createTempDirectory("testRoot");
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[random.nextInt(20_000)];
+            random.nextBytes(data);
+            Files.write(Files.createDirectories(project.resolve("dir" + (i % 7))).resolve("file" + i + ".bin"), data);
+        }
+        // bigger than a quarter of the budget, read by the writer
+        byte[] large = new byte[100_000];
+        random.nextBytes(large);
+        Files.write(project.resolve("large.bin"), large);
+        List<SourceEntry> entries = SourceScanner.scan(root, List.of(project));
+
+        PackerOptions sequential = PackerOptions.defaults();
+        sequential.setPrefetchThreads(0);
+        sequential.setEntryHashes(true);
+        TarGzPacker.Result expected = TarGzPacker.pack(entries, Map.of(), root.resolve("sequential.tar.gz").toFile(), sequential);
+
+        PackerOptions prefetch = PackerOptions.defaults();
+        prefetch.setPrefetchThreads(4);
+        // smaller than the tree, the readers have to wait for the writer
+        prefetch.setPrefetchBuffer(64 * 1024);
+        prefetch.setEntryHashes(true);
+        TarGzPacker.Result result = TarGzPacker.pack(entries, Map.of(), root.resolve("prefetch.tar.gz").toFile(), prefetch);
+
+        assertThat(result.archiveHash()).isEqualTo(expected.archiveHash());
+        assertThat(result.entryHashes()).isEqualTo(expected.entryHashes()).hasSize(201);
+    }
+
+    @Test
+    void test_zero_copy_tar_is_identical_to_streamed_tar() throws Exception {
+        Path root = Files.createTempDirectory("testRoot");
+        Files.createDirectories(root.resolve("hosts"));
+        Path project = Files.createDirectories(root.resolve("project"));
+        Random random = new Random(11);
+        for (int i = 0; i < 20; i++) {
+            byte[] data = new byte[random.nextInt(5_000)];
+            random.nextBytes(data);
+            Files.write(project.resolve("file" + i + ".bin"), data);
+        }
+        // longer than 100 characters, written as GNU long name
+        Path deep = Files.createDirectories(project.resolve("a".repeat(60)).resolve("b".repeat(60)));
+        Files.writeString(deep.resolve("long.txt"), "long name");
+        Files.write(project.resolve("empty.bin"), new byte[0]);
+        List<SourceEntry> entries = SourceScanner.scan(root, List.of(project));
+        Map<String, byte[]> generated = Map.of(".backup/deletions.txt", "deleted.txt".getBytes());
+
+        PackerOptions streamed = PackerOptions.defaults();
+        streamed.setCodec(CompressionCodec.NONE);
+        // entry hashes need the streamed path
+        streamed.setEntryHashes(true);
+        Path expected = root.resolve("streamed.tar");
+        TarGzPacker.pack(entries, generated, expected.toFile(), streamed);
+
+        PackerOptions zeroCopy = PackerOptions.defaults();
+        zeroCopy.setCodec(CompressionCodec.NONE);
+        Path actual = root.resolve("zerocopy.tar");
+        TarGzPacker.Result result = TarGzPacker.pack(entries, generated, actual.toFile(), zeroCopy);
+
+        assertThat(result.archiveHash()).isNull();
+        assertThat(Files.readAllBytes(actual)).isEqualTo(Files.readAllBytes(expected));
+    }
 }
@@ -0,0 +1,100 @@
+package com.condation.cms.modules.backup;
+
+/*-
+ * #%L
+ * backup-server-module
+ * %%
+ * Copyright (C) 2025 CondationCMS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThrottleTest {
+
+    private static final int KB = 1024;
+
+    @AfterEach
+    void tearDown() {
+        Throttle.configure(new Configuration());
+    }
+
+    @Test
+    void limits_reads_of_the_backup() throws Exception {
+        Throttle.configure(config("throttled", Map.of("read", "256KB")));
+        var throttle = Throttle.of(Throttle.READ, "throttled");
+
+        long start = System.nanoTime();
+        try (InputStream in = throttle.wrap(new ByteArrayInputStream(new byte[768 * KB]))) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        // the first 256KB pass at once, the rest at 256KB/s
+        assertThat(millisSince(start)).isGreaterThanOrEqualTo(1500);
+    }
+
+    @Test
+    void reconfigure_lifts_the_limit() {
+        Throttle.configure(config("lifted", Map.of("read", "1KB")));
+        var throttle = Throttle.of(Throttle.READ, "lifted");
+        throttle.acquire(KB);
+
+        Throttle.configure(config("lifted", null));
+
+        long start = System.nanoTime();
+        throttle.acquire(100 * KB);
+        assertThat(millisSince(start)).isLessThan(500);
+    }
+
+    @Test
+    void other_backups_are_not_limited() {
+        Throttle.configure(config("slow", Map.of("write", "1KB")));
+        Throttle.of(Throttle.WRITE, "slow").acquire(KB);
+
+        long start = System.nanoTime();
+        Throttle.of(Throttle.WRITE, "fast").acquire(100 * KB);
+        assertThat(millisSince(start)).isLessThan(500);
+    }
+
+    @Test
+    void invalid_limit_is_rejected() {
+        assertThatThrownBy(() -> Throttle.rates(Map.of("read", "fast"), ""))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Configuration config(String name, Map<String, Object> limits) {
+        var backup = new Configuration.Backup();
+        backup.setName(name);
+        backup.setLimits(limits);
+        var configuration = new Configuration();
+        configuration.setBackups(List.of(backup));
+        return configuration;
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}